@@ -41,11 +41,31 @@ public abstract class Arguments {
     //log options  
     public final static String LOG_FILE = "-log-file";
 
+    public final static String FROM_ZXID = "-from-zxid";
+
+    public final static String TO_ZXID = "-to-zxid";
+
+    public final static String THREADS = "-threads";
+
+    public final static String SESSION = "-session";
+
+    public final static String PATH_PREFIX = "-path-prefix";
+
+    public final static String FROM_TIME = "-from-time";
+
+    public final static String LAST = "-last";
+
+    //shared log and snapshot options
+    public final static String TO_TIME = "-to-time";
+
     //log flags
     public final static String FOLLOW = "--follow";
 
     public final static String START_WITH_LAST_TRANSACTION = "--start-with-last-transaction";
 
+    //log follow options
+    public final static String CHECKPOINT_FILE = "-checkpoint-file";
+
     //snapshot options
     public final static String ZXID = "-zxid";
 
@@ -53,4 +73,7 @@ public abstract class Arguments {
 
     public final static String SNAP_FILE = "-snap-file";
 
+    //snapshot flags
+    public final static String STATS = "--stats";
+
 }
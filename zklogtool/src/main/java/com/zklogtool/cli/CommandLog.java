@@ -19,17 +19,23 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.zklogtool.data.DataDirTransactionLogFileList;
 import com.zklogtool.data.Transaction;
+import com.zklogtool.data.TransactionFilter;
 import com.zklogtool.data.TransactionIterator;
 import com.zklogtool.data.TransactionLog;
 import com.zklogtool.data.TransactionLogFileList;
 import com.zklogtool.data.TransactionState;
+import com.zklogtool.monitor.CheckpointStore;
 import com.zklogtool.monitor.TransactionListener;
 import com.zklogtool.monitor.TransactionMonitor;
+import com.zklogtool.monitor.WatchWakeUpStrategy;
 import com.zklogtool.printer.DataDecoder;
 import com.zklogtool.printer.TransactionPrinter;
 import com.zklogtool.printer.UnicodeDecoder;
 import com.zklogtool.reader.TransactionLogReaderFactory;
 import com.zklogtool.util.PropertiesReader;
+import static com.zklogtool.util.Util.parseTime;
+import static com.zklogtool.util.Util.parseZxid;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import static java.lang.System.exit;
@@ -60,6 +66,15 @@ public class CommandLog {
     @Parameter(names = Arguments.START_WITH_LAST_TRANSACTION, description = "Start printout from last written transaction. Can only be used with follow option")
     public boolean startWithLastTransaction = false;
 
+    /**
+     * When <code>Arguments.FOLLOW</code> option is used, position of last
+     * printed transaction is stored in this file and printout resumes behind
+     * it when zklogtool is started again with same file.
+     *
+     */
+    @Parameter(names = Arguments.CHECKPOINT_FILE, description = "File where position of last printed transaction is stored. Printout resumes behind it on next start. Can only be used with follow option")
+    public String checkpointFile;
+
     /**
      * Directory that holds Zookeeper transaction log files.
      *
@@ -93,6 +108,77 @@ public class CommandLog {
     @Parameter(names = Arguments.DATA_DECODER, description = "Decoder used to display znode's data byte array")
     public String dataDecoder = "UnicodeDecoder";
 
+    /**
+     * Zxid of first transaction to display. Transaction log files that end
+     * before it are not read at all.
+     *
+     */
+    @Parameter(names = Arguments.FROM_ZXID, description = "Display transactions starting from this zxid (hex with 0x prefix or decimal). Can not be used with follow option")
+    public String fromZxid;
+
+    /**
+     * Zxid of last transaction to display. Transaction log files that start
+     * after it are not read at all.
+     *
+     */
+    @Parameter(names = Arguments.TO_ZXID, description = "Display transactions up to this zxid (hex with 0x prefix or decimal). Can not be used with follow option")
+    public String toZxid;
+
+    /**
+     * Number of threads that validate and deserialize transactions while
+     * transaction log is read. When transaction log directory is given, that
+     * many transaction log files are read at the same time. With one thread
+     * everything is done on main thread.
+     *
+     */
+    @Parameter(names = Arguments.THREADS, description = "Number of threads used to decode transactions. Can not be used with follow option")
+    public int threads = 1;
+
+    /**
+     * Only transactions of this session are displayed. Other transactions are
+     * skipped before they are deserialized.
+     *
+     */
+    @Parameter(names = Arguments.SESSION, description = "Display only transactions of this session id (hex with 0x prefix or decimal). Can not be used with follow and threads options")
+    public String session;
+
+    /**
+     * Only transactions on znodes whose path starts with this prefix are
+     * displayed. Other transactions are skipped before their data is
+     * deserialized.
+     *
+     */
+    @Parameter(names = Arguments.PATH_PREFIX, description = "Display only transactions on znodes whose path starts with this prefix. Can not be used with follow and threads options")
+    public String pathPrefix;
+
+    /**
+     * Only this many most recent transactions are displayed. Transaction log
+     * is not read from beginning, so this takes same time no matter how many
+     * transactions were written before. With <code>Arguments.FOLLOW</code>
+     * printout continues with new transactions.
+     *
+     */
+    @Parameter(names = Arguments.LAST, description = "Display only this many most recent transactions. Can be used with follow option")
+    public Integer last;
+
+    /**
+     * Only transactions written at or after this time are displayed.
+     * Transaction log files and parts of them written before it are skipped
+     * using time ranges stored in index.
+     *
+     */
+    @Parameter(names = Arguments.FROM_TIME, description = "Display transactions starting from this time (yyyy-MM-dd HH:mm:ss or milliseconds). Can not be used with follow and threads options")
+    public String fromTime;
+
+    /**
+     * Only transactions written at or before this time are displayed.
+     * Transaction log files and parts of them written after it are skipped
+     * using time ranges stored in index.
+     *
+     */
+    @Parameter(names = Arguments.TO_TIME, description = "Display transactions up to this time (yyyy-MM-dd HH:mm:ss or milliseconds). Can not be used with follow and threads options")
+    public String toTime;
+
     /**
      * Holds logic for <b>log</b> command execution.
      *
@@ -101,7 +187,8 @@ public class CommandLog {
     public void execute() throws InterruptedException {
 
         TransactionLog transactionLog = null;
-        TransactionLogReaderFactory factory = new TransactionLogReaderFactory();
+        File transactionLogDir = null;
+        TransactionLogReaderFactory factory = new TransactionLogReaderFactory(true);
         final StringBuilder print = new StringBuilder();
         DataDecoder decoder = null;
 
@@ -117,7 +204,7 @@ public class CommandLog {
 
         if (dataLogDir != null) {
 
-            File transactionLogDir = new File(dataLogDir);
+            transactionLogDir = new File(dataLogDir);
 
             if (!checkDirectoryValid(transactionLogDir)) {
                 exit(1);
@@ -137,6 +224,7 @@ public class CommandLog {
             }
 
             transactionLog = new TransactionLog(transactionLogFile, factory);
+            transactionLogDir = transactionLogFile.getAbsoluteFile().getParentFile();
 
         } else if (propertiesFile != null) {
 
@@ -164,7 +252,7 @@ public class CommandLog {
 
             }
 
-            File transactionLogDir = new File(transactionLogDirPath);
+            transactionLogDir = new File(transactionLogDirPath);
 
             if (!checkDirectoryValid(transactionLogDir)) {
                 exit(1);
@@ -179,15 +267,14 @@ public class CommandLog {
         if (follow) {
 
             TransactionMonitor ts = new TransactionMonitor(transactionLog);
+            ts.setWakeUpStrategy(new WatchWakeUpStrategy(transactionLogDir));
 
             ts.addListener(new TransactionListener() {
 
                 @Override
                 public void onTransaction(Transaction t) {
 
-                    printer.print(t);
-                    System.out.println(print);
-                    print.setLength(0);
+                    printTransaction(t, printer, print);
 
                 }
 
@@ -208,7 +295,38 @@ public class CommandLog {
 
             });
 
-            if (startWithLastTransaction) {
+            if (checkpointFile != null) {
+
+                final CheckpointStore store = new CheckpointStore(new File(checkpointFile));
+
+                try {
+                    ts.startAtCheckpoint(store);
+                } catch (IOException e) {
+                    System.err.println("Problem with reading checkpoint file: " + checkpointFile);
+                    exit(1);
+                }
+
+                //store position of last printed transaction on exit
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+
+                    @Override
+                    public void run() {
+
+                        try {
+                            store.flush();
+                        } catch (IOException e) {
+                            System.err.println("Problem with writing checkpoint file: " + checkpointFile);
+                        }
+
+                    }
+
+                });
+
+            } else if (last != null) {
+
+                ts.startBeforeLastTransactions(last);
+
+            } else if (startWithLastTransaction) {
 
                 ts.startAtLastTransaction();
 
@@ -228,15 +346,57 @@ public class CommandLog {
 
         } else {
 
-            TransactionIterator transactionIterator = transactionLog.iterator();
+            long fromZxidLong = Long.MIN_VALUE;
+            long toZxidLong = Long.MAX_VALUE;
+            TransactionFilter filter = null;
+
+            try {
+
+                if (fromZxid != null) {
+                    fromZxidLong = parseZxid(fromZxid);
+                }
+                if (toZxid != null) {
+                    toZxidLong = parseZxid(toZxid);
+                }
+
+                if (session != null || pathPrefix != null || fromTime != null || toTime != null) {
+
+                    filter = new TransactionFilter();
+                    filter.setZxidRange(fromZxidLong, toZxidLong);
+                    filter.setPathPrefix(pathPrefix);
+                    filter.setTimeRange(fromTime != null ? parseTime(fromTime) : Long.MIN_VALUE,
+                            toTime != null ? parseTime(toTime) : Long.MAX_VALUE);
+
+                    if (session != null) {
+                        filter.setClientIds(parseZxid(session));
+                    }
+
+                }
+
+            } catch (NumberFormatException e) {
+                System.err.println("Problem with parsing zxid, session id or time: " + e.getMessage());
+                exit(1);
+            }
+
+            TransactionIterator transactionIterator;
+
+            if (last != null) {
+                transactionIterator = transactionLog.iteratorLast(last);
+            } else if (filter != null) {
+                transactionIterator = transactionLog.iterator(filter);
+            } else if (threads > 1 && logFile == null) {
+                transactionIterator = transactionLog.parallelIterator(fromZxidLong, toZxidLong, threads);
+            } else if (threads > 1) {
+                transactionIterator = transactionLog.pipelinedIterator(fromZxidLong, toZxidLong, threads);
+            } else {
+                transactionIterator = transactionLog.iterator(fromZxidLong, toZxidLong);
+            }
 
             while (transactionIterator.nextTransactionState() == TransactionState.OK) {
 
                 Transaction t = transactionIterator.next();
 
-                printer.print(t);
-                System.out.println(print);
-                print.setLength(0);
+                printTransaction(t, printer, print);
 
             }
 
@@ -248,12 +408,42 @@ public class CommandLog {
                 exit(1);
             }
 
+            if (transactionIterator instanceof Closeable) {
+
+                try {
+                    ((Closeable) transactionIterator).close();
+                } catch (IOException e) {
+                    //only threads are stopped
+                }
+
+            }
+
             exit(0);
 
         }
 
     }
 
+    /*
+
+     Record is deserialized only when transaction is printed, so record that
+     can not be deserialized is reported same as corrupted transaction.
+
+     */
+    private void printTransaction(Transaction t, TransactionPrinter printer, StringBuilder print) {
+
+        try {
+            printer.print(t);
+        } catch (IllegalStateException e) {
+            System.err.println("Data corruption");
+            exit(1);
+        }
+
+        System.out.println(print);
+        print.setLength(0);
+
+    }
+
     private boolean checkFileValid(File file) {
 
         if (file.isDirectory()) {
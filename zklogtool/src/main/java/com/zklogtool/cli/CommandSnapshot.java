@@ -19,22 +19,24 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.zklogtool.data.DataDirTransactionLogFileList;
 import com.zklogtool.data.DataState;
-import com.zklogtool.data.Transaction;
-import com.zklogtool.data.TransactionIterator;
 import com.zklogtool.data.TransactionLog;
 import com.zklogtool.data.TransactionLogFileList;
-import com.zklogtool.data.TransactionState;
 import com.zklogtool.printer.DataDecoder;
 import com.zklogtool.printer.DataNodePrinter;
+import com.zklogtool.printer.SnapshotSummaryPrinter;
 import com.zklogtool.printer.UnicodeDecoder;
 import com.zklogtool.reader.SnapshotFileReader;
+import com.zklogtool.reader.SnapshotSummary;
 import com.zklogtool.reader.TransactionLogReaderFactory;
 import com.zklogtool.util.DataDirHelper;
 import com.zklogtool.util.PropertiesReader;
-import static com.zklogtool.util.Util.getZxidFromName;
+import com.zklogtool.util.SnapshotPlanner;
+import static com.zklogtool.util.Util.longToHexString;
+import static com.zklogtool.util.Util.parseTime;
+import static com.zklogtool.util.Util.parseZxid;
+import static com.zklogtool.util.Util.readData;
 import java.io.File;
 import java.io.IOException;
-import static java.lang.Long.parseLong;
 import static java.lang.System.exit;
 import static java.text.Collator.getInstance;
 import java.util.Collection;
@@ -70,6 +72,15 @@ public class CommandSnapshot {
     @Parameter(names = Arguments.ZXID, description = "Hex value of last commited zxid. Strings first and last can also be used")
     public String zxid = "last";
 
+    /**
+     * Time up to which data tree should be restored. It is translated into
+     * zxid of last transaction written at or before it, using time ranges
+     * stored in index so only small part of transaction log is read.
+     *
+     */
+    @Parameter(names = Arguments.TO_TIME, description = "Restore data tree as it was at this time (yyyy-MM-dd HH:mm:ss or milliseconds). Can not be used with zxid option")
+    public String toTime;
+
     /**
      * Directory where snapshot and transaction log files are stored. If
      * snapshot and transaction log files are not stored in same directory use
@@ -117,6 +128,17 @@ public class CommandSnapshot {
     @Parameter(names = Arguments.DATA_DECODER, description = "Decoder used to display znode's data byte array")
     public String dataDecoder = "UnicodeDecoder";
 
+    /**
+     * Print statistics of data tree instead of data nodes: number of sessions,
+     * data nodes and ephemeral nodes, data size, deepest path, largest data
+     * nodes and data size under each top level data node. With
+     * <code>Arguments.SNAP_FILE</code> snapshot file is only streamed, data
+     * tree is not built.
+     *
+     */
+    @Parameter(names = Arguments.STATS, description = "Print data tree statistics instead of data nodes")
+    public boolean stats = false;
+
     /**
      * Holds logic for <b>snapshot</b> command execution.
      *
@@ -145,6 +167,24 @@ public class CommandSnapshot {
             }
 
             SnapshotFileReader reader = new SnapshotFileReader(snapshotFile, 0);
+            reader.setPrefetch(true);
+
+            if (stats) {
+
+                SnapshotSummary summary = new SnapshotSummary();
+
+                try {
+                    reader.readSnapshot(summary);
+                } catch (IOException ex) {
+                    System.err.println("Problem while reading file or corruption: " + snapshotFile.getAbsolutePath());
+                    exit(1);
+                }
+
+                printSummary(summary);
+                return;
+
+            }
+
             try {
                 dataState = reader.readFuzzySnapshot();
             } catch (IOException ex) {
@@ -155,19 +195,15 @@ public class CommandSnapshot {
         } else {
 
             TransactionLog transactionLog = null;
-            TransactionLogReaderFactory factory = new TransactionLogReaderFactory();
+            TransactionLogReaderFactory factory = new TransactionLogReaderFactory(true);
             File transactionLogDir = null;
             File snapshotDir = null;
             long zxidLong = 0;
 
             if (zxid != null && !(zxid.contentEquals("last") || zxid.contentEquals("first"))) {
-                
-                if(zxid.startsWith("0x")){
-                    zxidLong = parseLong(zxid.substring(2),16);
-                }else{
-                    zxidLong = parseLong(zxid);
-                }
-                
+
+                zxidLong = parseZxid(zxid);
+
             }
 
             if (dataDir != null) {
@@ -219,92 +255,80 @@ public class CommandSnapshot {
             TransactionLogFileList l = new DataDirTransactionLogFileList(transactionLogDir);
             transactionLog = new TransactionLog(l, factory);
 
-            if (snapshots.isEmpty()) {
-                System.err.println("No snapshot files found");
-                exit(1);
-            }
+            if (toTime != null) {
 
-            //determine what snapshot file to read
-            File snapFile = null;
+                long toTimeLong = 0;
 
-            if (zxid.contentEquals("first")) {
-                snapFile = snapshots.get(0);
-            } else if (zxid.contentEquals("last")) {
-                if (snapshots.size() >= 2) {
-                    snapFile = snapshots.get(snapshots.size() - 2);
-                } else {
-                    snapFile = snapshots.get(0);
+                try {
+                    toTimeLong = parseTime(toTime);
+                } catch (NumberFormatException e) {
+                    System.err.println("Problem with parsing time: " + e.getMessage());
+                    exit(1);
                 }
-            } else {
-
-                int i = snapshots.size() - 1;
-                while (i >= 0) {
-
-                    long snapZxid = getZxidFromName(snapshots.get(i).getName());
 
-                    if (snapZxid <= zxidLong) {
-
-                        if (i == 0) {
-                            snapFile = snapshots.get(0);
-                        } else {
-                            snapFile = snapshots.get(i - 1);
-                        }
-
-                        break;
-
-                    }
-
-                    i--;
+                zxidLong = transactionLog.findLastZxidAt(toTimeLong);
 
+                if (zxidLong == -1) {
+                    System.err.println("No transactions written at or before " + toTime);
+                    exit(1);
                 }
 
+                zxid = longToHexString(zxidLong);
+
             }
 
-            if(snapFile==null){
-                System.err.println("Not enough data to reconstruct data tree.");
+            if (snapshots.isEmpty()) {
+                System.err.println("No snapshot files found");
                 exit(1);
             }
-            long TS = getZxidFromName(snapFile.getName());
 
-            
-            SnapshotFileReader snapReader = new SnapshotFileReader(snapFile, TS);
+            //determine what snapshot file to read
+            SnapshotPlanner planner = new SnapshotPlanner(transactionLogDir, snapshotDir);
+            SnapshotPlanner.Plan plan;
 
-            try {
-                dataState = snapReader.restoreDataState(transactionLog.iterator());
-            } catch (Exception ex) {
-                System.err.println("Problem while reading transaction log: " + ex.getMessage());
+            if (zxid.contentEquals("first")) {
+                plan = planner.planFirst();
+            } else if (zxid.contentEquals("last")) {
+                plan = planner.plan(Long.MAX_VALUE);
+            } else {
+                plan = planner.plan(zxidLong);
+            }
+
+            if (plan == null) {
+                System.err.println("Not enough data to reconstruct data tree.");
                 exit(1);
             }
 
-            //set iterator to last zxid
-            TransactionIterator iterator = transactionLog.iterator();
-            Transaction t;
+            File snapFile = plan.getSnapshot();
+            long TS = plan.getSnapshotZxid();
 
-            do {
+            SnapshotFileReader snapReader = new SnapshotFileReader(snapFile, TS);
+            snapReader.setPrefetch(true);
 
-                t = iterator.next();
-                //treba i provjera next transaction state
-            } while (t.getTxnHeader().getZxid() < TS);
+            //first data tree state is snapshot with transactions in between only
+            long targetZxid = -1;
 
-            
-            
-            
-            //rewind
             if (zxid.contentEquals("last")) {
-                while (iterator.nextTransactionState() == TransactionState.OK) {
-                    dataState.processTransaction(iterator.next());
-                }
-
+                targetZxid = Long.MAX_VALUE;
             } else if (!zxid.contentEquals("first")) {
+                targetZxid = zxidLong;
+            }
 
-                while (iterator.nextTransactionState() == TransactionState.OK && dataState.getLastZxid() < zxidLong) {
-                    dataState.processTransaction(iterator.next());
-                }
+            try {
+                dataState = snapReader.restoreDataState(transactionLog.iteratorFrom(TS + 1), targetZxid);
+            } catch (Exception ex) {
+                System.err.println("Problem while reading transaction log: " + ex.getMessage());
+                exit(1);
             }
 
             //check if null
         }
 
+        if (stats) {
+            printSummary(summarize(dataState));
+            return;
+        }
+
         //print dataState lexicograph ordering
         Map<String, DataNode> nodes = dataState.getNodes();
 
@@ -345,6 +369,44 @@ public class CommandSnapshot {
 
     }
 
+    private void printSummary(SnapshotSummary summary) {
+
+        StringBuilder print = new StringBuilder();
+
+        new SnapshotSummaryPrinter(print).printSummary(summary);
+        System.out.print(print);
+
+    }
+
+    /*
+
+     Restored data state is summarized from data tree, since transactions
+     applied after snapshot change it.
+
+     */
+    private SnapshotSummary summarize(DataState dataState) {
+
+        SnapshotSummary summary = new SnapshotSummary();
+
+        for (Map.Entry<Long, Integer> entry : dataState.getSessions().entrySet()) {
+            summary.visitSession(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, DataNode> entry : dataState.getNodes().entrySet()) {
+
+            //data tree also keeps root under "/"
+            if (entry.getKey().equals("/")) {
+                continue;
+            }
+
+            summary.visitNode(entry.getKey(), entry.getValue().stat, -1, readData(entry.getValue()));
+
+        }
+
+        return summary;
+
+    }
+
     private boolean checkFileValid(File file) {
 
         if (file.isDirectory()) {
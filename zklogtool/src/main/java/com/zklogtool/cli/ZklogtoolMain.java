@@ -163,6 +163,62 @@ public class ZklogtoolMain {
             exit(1);
         }
         
+        if(commandLog.checkpointFile!=null && (commandLog.follow==false || commandLog.startWithLastTransaction==true)){
+            System.err.println(Arguments.CHECKPOINT_FILE + " option can only be used with "+Arguments.FOLLOW+" flag and not with "+Arguments.START_WITH_LAST_TRANSACTION+" flag");
+            exit(1);
+        }
+        
+        if((commandLog.fromZxid!=null || commandLog.toZxid!=null) && commandLog.follow==true){
+            System.err.println(Arguments.FROM_ZXID + " and " + Arguments.TO_ZXID + " options can not be used with "+Arguments.FOLLOW+" flag");
+            exit(1);
+        }
+        
+        if(commandLog.threads!=1 && commandLog.follow==true){
+            System.err.println(Arguments.THREADS + " option can not be used with "+Arguments.FOLLOW+" flag");
+            exit(1);
+        }
+        
+        if((commandLog.fromTime!=null || commandLog.toTime!=null) && commandLog.follow==true){
+            System.err.println(Arguments.FROM_TIME + " and " + Arguments.TO_TIME + " options can not be used with "+Arguments.FOLLOW+" flag");
+            exit(1);
+        }
+        
+        if((commandLog.fromTime!=null || commandLog.toTime!=null) && commandLog.threads!=1){
+            System.err.println(Arguments.FROM_TIME + " and " + Arguments.TO_TIME + " options can not be used with "+Arguments.THREADS+" option");
+            exit(1);
+        }
+        
+        if((commandLog.session!=null || commandLog.pathPrefix!=null) && commandLog.follow==true){
+            System.err.println(Arguments.SESSION + " and " + Arguments.PATH_PREFIX + " options can not be used with "+Arguments.FOLLOW+" flag");
+            exit(1);
+        }
+        
+        if((commandLog.session!=null || commandLog.pathPrefix!=null) && commandLog.threads!=1){
+            System.err.println(Arguments.SESSION + " and " + Arguments.PATH_PREFIX + " options can not be used with "+Arguments.THREADS+" option");
+            exit(1);
+        }
+        
+        if(commandLog.last!=null && commandLog.last<1){
+            System.err.println(Arguments.LAST + " option must be positive");
+            exit(1);
+        }
+        
+        if(commandLog.last!=null && (commandLog.startWithLastTransaction==true || commandLog.checkpointFile!=null)){
+            System.err.println(Arguments.LAST + " option can not be used with "+Arguments.START_WITH_LAST_TRANSACTION+" flag or "+Arguments.CHECKPOINT_FILE+" option");
+            exit(1);
+        }
+        
+        if(commandLog.last!=null && (commandLog.fromZxid!=null || commandLog.toZxid!=null || commandLog.fromTime!=null || commandLog.toTime!=null
+                || commandLog.session!=null || commandLog.pathPrefix!=null || commandLog.threads!=1)){
+            System.err.println(Arguments.LAST + " option can not be used with zxid, time, session, path and threads options");
+            exit(1);
+        }
+        
+        if(commandLog.threads<1){
+            System.err.println(Arguments.THREADS + " option must be positive");
+            exit(1);
+        }
+        
         if(commandLog.dataLogDir!=null && commandLog.logFile!=null){
             System.err.println(Arguments.DATA_LOG_DIR + " option can not be used with "+Arguments.LOG_FILE+" option");
             exit(1);
@@ -205,6 +261,11 @@ public class ZklogtoolMain {
             exit(1);
         }
         
+        if(commandSnapshot.toTime!=null && (commandSnapshot.snapFile!=null || !commandSnapshot.zxid.contentEquals("last"))){
+            System.err.println(Arguments.TO_TIME+" option can not be used with "+Arguments.SNAP_FILE+" or "+Arguments.ZXID+" options");
+            exit(1);
+        }
+        
         if(commandSnapshot.dataDir==null && commandSnapshot.dataLogDir!=null){
             System.err.println(Arguments.DATA_LOG_DIR+" option can not be used without "+Arguments.DATA_DIR+" option");
             exit(1);
@@ -0,0 +1,99 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>TransactionIterator</code> over transactions of
+ * <code>TransactionCursor</code>. <code>Transaction</code> is constructed
+ * from copy of cursor buffer only when it is returned.
+ *
+ */
+class CursorTransactionIterator implements TransactionIterator, Closeable {
+
+    private final TransactionCursor cursor;
+    private Transaction t;
+
+    CursorTransactionIterator(TransactionCursor cursor) {
+
+        this.cursor = cursor;
+
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        return nextTransactionState() == TransactionState.OK;
+
+    }
+
+    @Override
+    public Transaction next() {
+
+        if (hasNext()) {
+
+            Transaction temp = t;
+
+            t = null;
+
+            return temp;
+
+        } else {
+            throw new NoSuchElementException("No such element");
+        }
+
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        t = null;
+        cursor.close();
+
+    }
+
+    @Override
+    public TransactionState nextTransactionState() {
+
+        if (t != null) {
+            return TransactionState.OK;
+        }
+
+        TransactionState s = cursor.advance();
+
+        if (s == TransactionState.OK) {
+
+            try {
+                t = cursor.toTransaction();
+            } catch (IOException ex) {
+                return TransactionState.CORRUPTION;
+            }
+
+        }
+
+        return s;
+
+    }
+
+}
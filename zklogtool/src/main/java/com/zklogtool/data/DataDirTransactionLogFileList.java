@@ -15,9 +15,9 @@
  */
 package com.zklogtool.data;
 
-import com.zklogtool.util.DataDirHelper;
+import com.zklogtool.util.DataDirCatalog;
+import static com.zklogtool.util.Util.getZxidFromName;
 import java.io.File;
-import java.util.List;
 
 /**
  * Implementation of <code>TransactionLogFileList</code> interface for Zookeeper
@@ -26,12 +26,15 @@ import java.util.List;
  * zxid of first transaction written to that file. Zookeeper uses this naming
  * convention on default so this implementation works for untampered Zookeeper
  * data log directory.
+ * <br>
+ * Files are looked up in <code>DataDirCatalog</code> of directory, so moving
+ * to next file does not list directory.
  *
  */
 public class DataDirTransactionLogFileList implements TransactionLogFileList {
 
     private File dataDir;
-    private DataDirHelper dataDirHelper;
+    private DataDirCatalog catalog;
 
     /**
      *
@@ -39,7 +42,7 @@ public class DataDirTransactionLogFileList implements TransactionLogFileList {
      */
     public DataDirTransactionLogFileList(File dataDir) {
         this.dataDir = dataDir;
-        dataDirHelper = new DataDirHelper(dataDir, null);
+        catalog = DataDirCatalog.getCatalog(dataDir);
     }
 
     /**
@@ -54,10 +57,10 @@ public class DataDirTransactionLogFileList implements TransactionLogFileList {
     @Override
     public File getFirstTransactionLog() throws NoFileException {
 
-        List<File> transactionLogs = dataDirHelper.getSortedLogList();
+        File transactionLog = catalog.getFirstTransactionLog();
 
-        if (!transactionLogs.isEmpty()) {
-            return transactionLogs.get(0);
+        if (transactionLog != null) {
+            return transactionLog;
         } else {
             throw new NoFileException("No transaction log found in " + dataDir.getAbsolutePath());
         }
@@ -79,18 +82,20 @@ public class DataDirTransactionLogFileList implements TransactionLogFileList {
     @Override
     public File getNextTransactionLog(File previousTransactionLog) throws NoFileException {
 
-        List<File> transactionLogs = dataDirHelper.getSortedLogList();
+        long zxid = getZxidFromName(previousTransactionLog.getName());
 
-        for (int i = 0; i < transactionLogs.size() - 1; i++) {
+        if (zxid != -1) {
 
-            if (previousTransactionLog.getAbsolutePath().contentEquals(transactionLogs.get(i).getAbsolutePath())) {
-                return transactionLogs.get(i + 1);
+            File transactionLog = catalog.getTransactionLogAfter(zxid);
+
+            if (transactionLog != null) {
+                return transactionLog;
             }
 
         }
 
         throw new NoFileException("No transaction log found in " + dataDir.getAbsolutePath() 
-                + "that succeeds" + previousTransactionLog.toString());
+                + " that succeeds " + previousTransactionLog.toString());
 
     }
 
@@ -0,0 +1,493 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.CRCValidationException;
+import com.zklogtool.reader.IncompleteTransactionException;
+import com.zklogtool.reader.TransactionLogFileReader;
+import static com.zklogtool.util.Util.closeQuietly;
+import static com.zklogtool.util.Util.getZxidFromName;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * <code>TransactionIterator</code> that reads multiple transaction log files
+ * at the same time. Every transaction log file starts with its own header and
+ * holds complete transactions, so files can be read and decoded independently.
+ * Each file is read on its own thread into bounded queue, and queues are
+ * merged into one stream ordered by zxid.
+ * <br>
+ * Transaction log files are merged lazily. File is added to merge only when
+ * zxid from its name is reached, so files with disjoint zxid ranges are simply
+ * concatenated, while overlapping files are still merged in zxid order. Up to
+ * <code>threads</code> files are read ahead of merge.
+ * <br>
+ * Files are listed when iterator is created. When all of them are merged, or
+ * when file that reached head of merge ended with partial or corrupted
+ * transaction, iteration continues with serial iterator behind last returned
+ * transaction. That way problem is reported at its position in zxid order,
+ * with same <code>TransactionState</code> as from
+ * <code>TransactionLog.iterator()</code>, and transactions written later are
+ * returned as well.
+ *
+ */
+public class ParallelTransactionIterator implements TransactionIterator, Closeable {
+
+    /**
+     * Default maximum number of transactions read ahead in one file.
+     */
+    public final static int DEFAULT_READ_AHEAD = 1024;
+
+    private final static long OFFER_TIMEOUT = 100;
+
+    private final TransactionLog transactionLog;
+    private final long fromZxid;
+    private final long toZxid;
+    private final int threads;
+    private final int readAhead;
+    private final ExecutorService readers;
+
+    private final List<FileScan> files = new ArrayList<>();
+    private final PriorityQueue<FileScan> merge;
+    private int nextToStart;
+    private int nextToAdmit;
+    private int finishedCount;
+    private FileScan pending;
+    private volatile boolean stopped;
+
+    private Transaction t;
+    private Transaction last;
+    private TransactionIterator serial;
+
+    ParallelTransactionIterator(TransactionLog transactionLog, TransactionLog.Position start, long fromZxid, long toZxid, int threads, int readAhead) {
+
+        if (threads < 1 || readAhead < 1) {
+            throw new IllegalArgumentException("Number of threads and read ahead must be positive");
+        }
+
+        this.transactionLog = transactionLog;
+        this.fromZxid = fromZxid;
+        this.toZxid = toZxid;
+        this.threads = threads;
+        this.readAhead = readAhead;
+
+        File file = start.file;
+
+        while (file != null) {
+
+            long nameZxid = getZxidFromName(file.getName());
+
+            if (!files.isEmpty() && nameZxid > toZxid) {
+                break;
+            }
+
+            files.add(new FileScan(file, files.isEmpty() ? start.offset : 0, nameZxid, files.size()));
+
+            try {
+                file = transactionLog.transactionLogList.getNextTransactionLog(file);
+            } catch (NoFileException ex) {
+                file = null;
+            }
+
+        }
+
+        merge = new PriorityQueue<>(Math.max(files.size(), 1), new Comparator<FileScan>() {
+
+            @Override
+            public int compare(FileScan a, FileScan b) {
+
+                int c = Long.compare(a.key(), b.key());
+
+                if (c == 0) {
+                    //problem in file is reported after transactions with same zxid
+                    c = Boolean.compare(a.head.transaction == null, b.head.transaction == null);
+                }
+
+                return c != 0 ? c : Integer.compare(a.order, b.order);
+
+            }
+
+        });
+
+        readers = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, "transaction-log-reader");
+                thread.setDaemon(true);
+
+                return thread;
+
+            }
+
+        });
+
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        return nextTransactionState() == TransactionState.OK;
+
+    }
+
+    @Override
+    public Transaction next() {
+
+        if (nextTransactionState() != TransactionState.OK) {
+            throw new NoSuchElementException("No such element");
+        }
+
+        if (serial != null) {
+            return serial.next();
+        }
+
+        last = t;
+        t = null;
+
+        return last;
+
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    /**
+     *
+     * @return TransactionState of the next <code>Transaction</code> in
+     * iteration.
+     */
+    @Override
+    public TransactionState nextTransactionState() {
+
+        if (serial != null) {
+            return serial.nextTransactionState();
+        }
+
+        if (t != null) {
+            return TransactionState.OK;
+        }
+
+        return merge();
+
+    }
+
+    /**
+     * Stops threads that read transaction log files and closes serial
+     * iterator, if iteration was handed over to it.
+     *
+     */
+    @Override
+    public void close() {
+
+        stopScans();
+
+        if (serial instanceof Closeable) {
+            closeQuietly((Closeable) serial);
+        }
+
+    }
+
+    private void stopScans() {
+
+        stopped = true;
+
+        for (int i = 0; i < nextToStart; i++) {
+            files.get(i).queue.clear();
+        }
+
+        readers.shutdown();
+
+    }
+
+    private TransactionState merge() {
+
+        if (pending != null) {
+
+            //file of last returned transaction is advanced only now, so reading overlaps with consumer
+            if (pending.advance()) {
+                merge.add(pending);
+            }
+
+            pending = null;
+
+        }
+
+        admit();
+
+        FileScan top = merge.poll();
+
+        if (top == null || top.head.transaction == null) {
+            return handOff();
+        }
+
+        t = top.head.transaction;
+        top.lastZxid = t.getTxnHeader().getZxid();
+        pending = top;
+
+        return TransactionState.OK;
+
+    }
+
+    /*
+
+     Adds files to merge while their first zxid might be lower than zxid at
+     head of merge, and starts reading files ahead.
+
+     */
+    private void admit() {
+
+        while (nextToAdmit < files.size()) {
+
+            FileScan file = files.get(nextToAdmit);
+            FileScan top = merge.peek();
+
+            if (top != null && file.nameZxid != -1 && top.key() < file.nameZxid) {
+                break;
+            }
+
+            while (nextToStart <= nextToAdmit) {
+                start();
+            }
+
+            if (file.advance()) {
+                merge.add(file);
+            }
+
+            nextToAdmit++;
+
+        }
+
+        while (nextToStart < files.size() && nextToStart - finishedCount < threads) {
+            start();
+        }
+
+    }
+
+    private void start() {
+
+        FileScan file = files.get(nextToStart++);
+
+        file.queue = new ArrayBlockingQueue<>(readAhead);
+        readers.execute(file);
+
+    }
+
+    private TransactionState handOff() {
+
+        stopScans();
+
+        if (last != null) {
+            serial = transactionLog.iteratorAfter(last.getTransactionLogFile(), last.getNextOffset(), last.getTxnHeader().getZxid(), toZxid);
+        } else {
+            serial = transactionLog.iterator(fromZxid, toZxid);
+        }
+
+        return serial.nextTransactionState();
+
+    }
+
+    private static class Entry {
+
+        final Transaction transaction;
+        final TransactionState state;
+
+        Entry(Transaction transaction, TransactionState state) {
+
+            this.transaction = transaction;
+            this.state = state;
+
+        }
+
+    }
+
+    private class FileScan implements Runnable {
+
+        final File file;
+        final long startOffset;
+        final long nameZxid;
+        final int order;
+        BlockingQueue<Entry> queue;
+
+        //used by merging thread only
+        Entry head;
+        long lastZxid;
+
+        FileScan(File file, long startOffset, long nameZxid, int order) {
+
+            this.file = file;
+            this.startOffset = startOffset;
+            this.nameZxid = nameZxid;
+            this.order = order;
+            this.lastZxid = nameZxid != -1 ? nameZxid - 1 : Long.MIN_VALUE;
+
+        }
+
+        /*
+
+         Transaction at head, or zxid of last transaction taken from file if
+         file ended with a problem, which is where problem is in zxid order.
+
+         */
+        long key() {
+            return head.transaction != null ? head.transaction.getTxnHeader().getZxid() : lastZxid;
+        }
+
+        /*
+
+         Takes next entry from queue. Returns false if file ended without
+         problem and should leave merge.
+
+         */
+        boolean advance() {
+
+            try {
+
+                head = queue.take();
+
+            } catch (InterruptedException ex) {
+
+                Thread.currentThread().interrupt();
+                head = new Entry(null, TransactionState.INCOMPLETE);
+
+            }
+
+            if (head.transaction != null) {
+                return true;
+            }
+
+            finishedCount++;
+
+            return head.state != TransactionState.EMPTY;
+
+        }
+
+        @Override
+        public void run() {
+
+            TransactionState end = TransactionState.CORRUPTION;
+
+            try {
+
+                try (TransactionLogFileReader reader = transactionLog.factory.getReader(file)) {
+
+                    if (startOffset > 0) {
+                        reader.seek(startOffset);
+                    }
+
+                    end = scan(reader);
+
+                }
+
+            } catch (IncompleteTransactionException ex) {
+
+                end = TransactionState.INCOMPLETE;
+
+            } catch (CRCValidationException ex) {
+
+                end = TransactionState.CORRUPTION;
+
+            } catch (IOException ex) {
+
+                end = TransactionState.CORRUPTION;
+
+            } finally {
+
+                if (end != null) {
+                    offer(new Entry(null, end));
+                }
+
+            }
+
+        }
+
+        /*
+
+         Returns state in which file ended, or null if reading was stopped.
+
+         */
+        private TransactionState scan(TransactionLogFileReader reader) throws IOException {
+
+            Transaction transaction;
+
+            while ((transaction = reader.getNextTransaction()) != null) {
+
+                long zxid = transaction.getTxnHeader().getZxid();
+
+                if (zxid < fromZxid) {
+                    continue;
+                }
+
+                if (zxid > toZxid) {
+                    return TransactionState.EMPTY;
+                }
+
+                transaction.setPosition(file, reader.getPosition());
+
+                try {
+                    transaction.getTxnRecord();
+                } catch (IllegalStateException ex) {
+                    //reported when record is accessed, same as with serial iterator
+                }
+
+                if (!offer(new Entry(transaction, TransactionState.OK))) {
+                    return null;
+                }
+
+            }
+
+            return TransactionState.EMPTY;
+
+        }
+
+        private boolean offer(Entry entry) {
+
+            try {
+
+                while (!stopped) {
+
+                    if (queue.offer(entry, OFFER_TIMEOUT, MILLISECONDS)) {
+                        return true;
+                    }
+
+                }
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            return false;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,528 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.CRCValidationException;
+import com.zklogtool.reader.IncompleteTransactionException;
+import com.zklogtool.reader.TransactionBuffer;
+import com.zklogtool.reader.TransactionLogFileReader;
+import static com.zklogtool.util.Util.closeQuietly;
+import static com.zklogtool.util.Util.getZxidFromName;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * <code>TransactionIterator</code> that decodes transactions on multiple
+ * threads. Work is split in three stages:
+ * <ul>
+ * <li>framing thread reads transaction log files sequentially and cuts them
+ * into serialized transactions, without validating them</li>
+ * <li>pool of decoding threads validates CRC of each transaction and
+ * deserializes its <code>TxnHeader</code> and <code>Record</code></li>
+ * <li>iterator hands out decoded transactions in same order in which they
+ * were framed, which is order of zxids</li>
+ * </ul>
+ * Iterator returns same transactions and reports same
+ * <code>TransactionState</code>s as iterator returned by
+ * <code>TransactionLog.iterator()</code>. When state is not
+ * <code>TransactionState.OK</code> pipeline is stopped in front of
+ * transaction that caused it, and it is started again from there on next
+ * <code>nextTransactionState()</code> call, so iteration can continue when
+ * more transactions are written.
+ * <br>
+ * Pipeline reads ahead of consumer up to fixed number of transactions. It
+ * pays off for long iterations like dumping or replaying whole transaction
+ * log. <code>close()</code> should be called when iterator is no longer
+ * needed, though idle threads are daemons and do not prevent JVM from
+ * exiting.
+ *
+ */
+public class PipelinedTransactionIterator implements TransactionIterator, Closeable {
+
+    private final static int READ_AHEAD_PER_THREAD = 256;
+    private final static long OFFER_TIMEOUT = 100;
+
+    private final TransactionLog transactionLog;
+    private final long fromZxid;
+    private final long toZxid;
+    private final ExecutorService decoders;
+    private final BlockingQueue<Future<Decoded>> queue;
+
+    //position behind last returned transaction, pipeline restarts from here
+    private File resumeFile;
+    private long resumeOffset;
+
+    //used by framing thread only while it runs
+    private TransactionLogFileReader reader;
+
+    private Thread framer;
+    private volatile boolean stopped;
+    private boolean finished;
+
+    private Transaction t;
+    private TransactionState s = TransactionState.EMPTY;
+
+    PipelinedTransactionIterator(TransactionLog transactionLog, File startFile, long startOffset, long fromZxid, long toZxid, int threads) {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+
+        this.transactionLog = transactionLog;
+        this.resumeFile = startFile;
+        this.resumeOffset = startOffset;
+        this.fromZxid = fromZxid;
+        this.toZxid = toZxid;
+
+        queue = new ArrayBlockingQueue<>(threads * READ_AHEAD_PER_THREAD);
+        decoders = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, "transaction-decoder");
+                thread.setDaemon(true);
+
+                return thread;
+
+            }
+
+        });
+
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        return nextTransactionState() == TransactionState.OK;
+
+    }
+
+    @Override
+    public Transaction next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException("No such element");
+        }
+
+        Transaction temp = t;
+
+        resumeFile = temp.getTransactionLogFile();
+        resumeOffset = temp.getNextOffset();
+        t = null;
+        s = TransactionState.EMPTY;
+
+        return temp;
+
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    /**
+     *
+     * @return TransactionState of the next <code>Transaction</code> in
+     * iteration.
+     */
+    @Override
+    public TransactionState nextTransactionState() {
+
+        if (t != null) {
+            return TransactionState.OK;
+        }
+
+        if (finished) {
+            //range is exhausted, no need to read anything
+            return TransactionState.EMPTY;
+        }
+
+        if (framer == null) {
+            start();
+        }
+
+        Decoded d;
+
+        try {
+
+            d = queue.take().get();
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            d = new Decoded(null, TransactionState.EMPTY);
+
+        } catch (ExecutionException ex) {
+
+            d = new Decoded(null, TransactionState.CORRUPTION);
+
+        }
+
+        if (d.state == TransactionState.OK) {
+
+            t = d.transaction;
+            s = TransactionState.OK;
+
+            return s;
+
+        }
+
+        //transactions behind this one are dropped and read again on restart
+        stop();
+
+        finished = d.rangeEnd;
+        s = d.state;
+
+        return s;
+
+    }
+
+    /**
+     * Stops framing thread and decoding threads and closes reader of current
+     * transaction log file.
+     *
+     */
+    @Override
+    public void close() {
+
+        stop();
+        decoders.shutdown();
+        closeQuietly(reader);
+        reader = null;
+
+    }
+
+    private void start() {
+
+        if (reader != null) {
+
+            //continue with same reader if it is in right file
+            if (resumeFile == null || !resumeFile.equals(reader.getTransactionLogFile())) {
+                closeQuietly(reader);
+                reader = null;
+            } else if (reader.getPosition() != resumeOffset) {
+
+                try {
+                    reader.seek(resumeOffset);
+                } catch (IOException ex) {
+                    closeQuietly(reader);
+                    reader = null;
+                }
+
+            }
+
+        }
+
+        stopped = false;
+        framer = new Thread(new Framer(), "transaction-framer");
+        framer.setDaemon(true);
+        framer.start();
+
+    }
+
+    /*
+
+     Framing thread is not interrupted, as interrupt would close channel of
+     memory mapped reader. It notices stop flag while queue is drained.
+
+     */
+    private void stop() {
+
+        if (framer == null) {
+            return;
+        }
+
+        stopped = true;
+
+        boolean interrupted = false;
+
+        while (framer.isAlive()) {
+
+            drain();
+
+            try {
+                framer.join(OFFER_TIMEOUT);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+
+        }
+
+        drain();
+        framer = null;
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    private void drain() {
+
+        Future<Decoded> f;
+
+        while ((f = queue.poll()) != null) {
+            f.cancel(false);
+        }
+
+    }
+
+    private static class Decoded {
+
+        final Transaction transaction;
+        final TransactionState state;
+        boolean rangeEnd;
+
+        Decoded(Transaction transaction, TransactionState state) {
+
+            this.transaction = transaction;
+            this.state = state;
+
+        }
+
+    }
+
+    private static class Decoder implements Callable<Decoded> {
+
+        private final TransactionBuffer buffer;
+        private final File transactionLogFile;
+        private final long nextOffset;
+
+        Decoder(TransactionBuffer buffer, File transactionLogFile, long nextOffset) {
+
+            this.buffer = buffer;
+            this.transactionLogFile = transactionLogFile;
+            this.nextOffset = nextOffset;
+
+        }
+
+        @Override
+        public Decoded call() {
+
+            if (!buffer.isValid()) {
+                return new Decoded(null, TransactionState.CORRUPTION);
+            }
+
+            Transaction t;
+
+            try {
+                t = new Transaction(buffer.getBytes());
+            } catch (IOException ex) {
+                return new Decoded(null, TransactionState.CORRUPTION);
+            }
+
+            t.setPosition(transactionLogFile, nextOffset);
+
+            try {
+                t.getTxnRecord();
+            } catch (IllegalStateException ex) {
+                //reported when record is accessed, same as with serial iterator
+            }
+
+            return new Decoded(t, TransactionState.OK);
+
+        }
+
+    }
+
+    private class Framer implements Runnable {
+
+        @Override
+        public void run() {
+
+            Decoded end = new Decoded(null, TransactionState.CORRUPTION);
+
+            try {
+
+                end = frame();
+
+            } catch (IncompleteTransactionException ex) {
+
+                end = new Decoded(null, TransactionState.INCOMPLETE);
+
+            } catch (CRCValidationException ex) {
+
+                end = new Decoded(null, TransactionState.CORRUPTION);
+
+            } catch (IOException ex) {
+
+                end = new Decoded(null, TransactionState.CORRUPTION);
+
+            } catch (NoFileException ex) {
+
+                end = new Decoded(null, TransactionState.EMPTY);
+
+            } finally {
+
+                if (end != null) {
+
+                    FutureTask<Decoded> f = new FutureTask<>(new Constant(end));
+                    f.run();
+                    offer(f);
+
+                }
+
+            }
+
+        }
+
+        /*
+
+         Returns state in which framing ended, or null if it was stopped.
+
+         */
+        private Decoded frame() throws IOException, NoFileException {
+
+            if (reader == null) {
+
+                reader = transactionLog.factory.getReader(resumeFile != null ? resumeFile : transactionLog.transactionLogList.getFirstTransactionLog());
+
+                if (resumeOffset > 0) {
+                    reader.seek(resumeOffset);
+                }
+
+                if (resumeFile == null) {
+                    //nothing returned yet, restart from here if needed
+                    resumeFile = reader.getTransactionLogFile();
+                    resumeOffset = reader.getPosition();
+                }
+
+            }
+
+            while (true) {
+
+                //empty buffer grows to exact transaction length, so bytes can be handed over
+                TransactionBuffer buffer = new TransactionBuffer(0);
+
+                if (reader.readNextFrame(buffer)) {
+
+                    long zxid = buffer.getLength() >= Transaction.TXN_HEADER_SIZE ? ByteBuffer.wrap(buffer.getBytes()).getLong(12) : fromZxid;
+
+                    if (zxid < fromZxid || zxid > toZxid) {
+
+                        //transactions outside of range are validated here, same as in serial iterator
+                        if (!buffer.isValid()) {
+                            throw new CRCValidationException("Transaction CRC validation failed");
+                        }
+
+                        if (zxid < fromZxid) {
+                            continue;
+                        }
+
+                        return rangeEnd();
+
+                    }
+
+                    if (!offer(decoders.submit(new Decoder(buffer, reader.getTransactionLogFile(), reader.getPosition())))) {
+                        return null;
+                    }
+
+                    continue;
+
+                }
+
+                File next;
+
+                try {
+
+                    next = transactionLog.transactionLogList.getNextTransactionLog(reader.getTransactionLogFile());
+
+                } catch (NoFileException ex) {
+                    // there is no next file so stick with current file
+                    return new Decoded(null, TransactionState.EMPTY);
+                }
+
+                if (getZxidFromName(next.getName()) > toZxid) {
+                    return rangeEnd();
+                }
+
+                TransactionLogFileReader nextReader = transactionLog.factory.getReader(next);
+
+                closeQuietly(reader);
+                reader = nextReader;
+
+            }
+
+        }
+
+        private Decoded rangeEnd() {
+
+            Decoded d = new Decoded(null, TransactionState.EMPTY);
+            d.rangeEnd = true;
+
+            return d;
+
+        }
+
+        /*
+
+         Returns false if pipeline was stopped before f was queued.
+
+         */
+        private boolean offer(Future<Decoded> f) {
+
+            try {
+
+                while (!stopped) {
+
+                    if (queue.offer(f, OFFER_TIMEOUT, MILLISECONDS)) {
+                        return true;
+                    }
+
+                }
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            f.cancel(false);
+
+            return false;
+
+        }
+
+    }
+
+    private static class Constant implements Callable<Decoded> {
+
+        private final Decoded decoded;
+
+        Constant(Decoded decoded) {
+            this.decoded = decoded;
+        }
+
+        @Override
+        public Decoded call() {
+            return decoded;
+        }
+
+    }
+
+}
@@ -15,7 +15,13 @@
  */
 package com.zklogtool.data;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import static org.apache.zookeeper.server.util.SerializeUtils.deserializeTxn;
 import org.apache.zookeeper.txn.TxnHeader;
 
 /**
@@ -121,12 +127,28 @@ import org.apache.zookeeper.txn.TxnHeader;
  * </td>
  * </tr>
  * </table>
+ * <br>
+ * <code>Transaction</code> read from transaction log file keeps serialized
+ * bytes of transaction and decodes only <code>TxnHeader</code> up front.
+ * <code>Record</code> is deserialized on first <code>getTxnRecord()</code>
+ * call, so code that only looks at header fields never pays for decoding
+ * data, ACL lists or multi operations.
+ * <br>
+ * <code>Transaction</code> returned by <code>TransactionLog</code> iterator
+ * also knows transaction log file it was read from and offset right behind it,
+ * so reading can later be resumed behind it with
+ * <code>TransactionLog.iteratorAfter()</code>.
  *
  */
 public class Transaction {
 
+    final static int TXN_HEADER_SIZE = 32;
+
     private TxnHeader txnHeader;
     private Record txnRecord;
+    private byte[] txnBytes;
+    private File transactionLogFile;
+    private long nextOffset = -1;
 
     public Transaction(TxnHeader txnHeader, Record txnRecord) {
         super();
@@ -134,6 +156,36 @@ public class Transaction {
         this.txnRecord = txnRecord;
     }
 
+    /**
+     * Constructs <code>Transaction</code> from serialized transaction bytes as
+     * they are written in transaction log file. Only <code>TxnHeader</code> is
+     * decoded, <code>Record</code> gets deserialized on first access. Type
+     * from <code>TxnHeader</code> is checked right away, so transaction that
+     * could never be deserialized is rejected here as it was when whole
+     * transaction was decoded up front.
+     *
+     * @param txnBytes Serialized <code>TxnHeader</code> followed by serialized
+     * <code>Record</code>. CRC of bytes should already be validated.
+     * @throws IOException Thrown if <code>TxnHeader</code> is not complete or
+     * transaction type is not supported.
+     */
+    public Transaction(byte[] txnBytes) throws IOException {
+
+        if (txnBytes.length < TXN_HEADER_SIZE) {
+            throw new EOFException("Transaction header not complete");
+        }
+
+        //TxnHeader is serialized as clientId, cxid, zxid, time and type
+        ByteBuffer buffer = ByteBuffer.wrap(txnBytes);
+        this.txnHeader = new TxnHeader(buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getInt());
+        this.txnBytes = txnBytes;
+
+        if (!isSupportedType(txnHeader.getType())) {
+            throw new IOException("Unsupported Txn with type=" + txnHeader.getType());
+        }
+
+    }
+
     public TxnHeader getTxnHeader() {
         return txnHeader;
     }
@@ -142,12 +194,80 @@ public class Transaction {
         this.txnHeader = txnHeader;
     }
 
-    public Record getTxnRecord() {
+    /**
+     * Returns <code>Record</code> of this transaction. If transaction was
+     * constructed from serialized bytes, <code>Record</code> is deserialized
+     * on first call.
+     *
+     * @return <code>Record</code> of this transaction. It is <code>null</code>
+     * for transaction types that do not have one, such as closeSession.
+     * @throws IllegalStateException Thrown if <code>Record</code> can not be
+     * deserialized.
+     */
+    public synchronized Record getTxnRecord() {
+
+        if (txnBytes != null) {
+
+            try {
+                txnRecord = deserializeTxn(txnBytes, new TxnHeader());
+            } catch (IOException e) {
+                throw new IllegalStateException("Problem while deserializing transaction record", e);
+            }
+
+            txnBytes = null;
+
+        }
+
         return txnRecord;
     }
 
-    public void setTxnRecord(Record txnRecord) {
+    public synchronized void setTxnRecord(Record txnRecord) {
         this.txnRecord = txnRecord;
+        this.txnBytes = null;
+    }
+
+    //types deserializeTxn() has Record for
+    private static boolean isSupportedType(int type) {
+
+        switch (type) {
+
+            case OpCode.createSession:
+            case OpCode.closeSession:
+            case OpCode.create:
+            case OpCode.delete:
+            case OpCode.setData:
+            case OpCode.setACL:
+            case OpCode.error:
+            case OpCode.multi:
+                return true;
+            default:
+                return false;
+
+        }
+
+    }
+
+    void setPosition(File transactionLogFile, long nextOffset) {
+        this.transactionLogFile = transactionLogFile;
+        this.nextOffset = nextOffset;
+    }
+
+    /**
+     *
+     * @return Transaction log file transaction was read from, or
+     * <code>null</code> if it is not known.
+     */
+    public File getTransactionLogFile() {
+        return transactionLogFile;
+    }
+
+    /**
+     *
+     * @return Offset in transaction log file right behind this transaction, or
+     * -1 if it is not known.
+     */
+    public long getNextOffset() {
+        return nextOffset;
     }
 
 }
@@ -0,0 +1,377 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import static com.zklogtool.data.Transaction.TXN_HEADER_SIZE;
+import com.zklogtool.reader.CRCValidationException;
+import com.zklogtool.reader.IncompleteTransactionException;
+import com.zklogtool.reader.TransactionBuffer;
+import com.zklogtool.reader.TransactionLogFileReader;
+import static com.zklogtool.util.Util.closeQuietly;
+import static com.zklogtool.util.Util.getZxidFromName;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.util.Arrays.copyOf;
+import org.apache.zookeeper.txn.TxnHeader;
+
+/**
+ * <code>TransactionCursor</code> walks over transactions in
+ * <code>TransactionLog</code> without constructing object per transaction.
+ * Each transaction is read into one reused <code>TransactionBuffer</code> and
+ * its header fields are read directly from buffer, so passes over many
+ * transactions that only need header fields or raw bytes do not allocate
+ * memory once buffer has grown to size of largest transaction.
+ * <br>
+ * <code>advance()</code> moves cursor to next transaction and returns its
+ * <code>TransactionState</code>, with same meaning as
+ * <code>TransactionIterator.nextTransactionState()</code>. If state is not
+ * <code>TransactionState.OK</code> cursor does not move, and
+ * <code>advance()</code> can be called again later when more transactions are
+ * written. Accessors describe current transaction and can only be used while
+ * last <code>advance()</code> returned <code>TransactionState.OK</code>,
+ * otherwise they throw <code>IllegalStateException</code>. Values they return,
+ * including byte array and <code>TxnHeader</code>, are overwritten by next
+ * <code>advance()</code>.
+ * <code>toTransaction()</code> makes independent copy.
+ * <br>
+ * Cursor created with <code>TransactionFilter</code> moves only to
+ * transactions that pass filter. Filter is evaluated on buffer, so skipped
+ * transactions are only read and validated.
+ * <br>
+ * Cursor is not thread safe. Reader of current transaction log file is
+ * closed by <code>close()</code>.
+ *
+ */
+public class TransactionCursor implements Closeable {
+
+    private final TransactionLog transactionLog;
+    private final TransactionBuffer buffer = new TransactionBuffer();
+    private final TxnHeader txnHeader = new TxnHeader();
+    private ByteBuffer view;
+    private boolean txnHeaderLoaded;
+
+    private TransactionLogFileReader reader;
+    private File startFile;
+    private long startPosition;
+    private final long fromZxid;
+    private final long toZxid;
+    private final TransactionFilter filter;
+    private boolean finished;
+    private boolean positioned;
+
+    TransactionCursor(TransactionLog transactionLog, File startFile, long startPosition, long fromZxid, long toZxid) {
+
+        this(transactionLog, startFile, startPosition, fromZxid, toZxid, null);
+
+    }
+
+    TransactionCursor(TransactionLog transactionLog, File startFile, long startPosition, long fromZxid, long toZxid, TransactionFilter filter) {
+
+        this.transactionLog = transactionLog;
+        this.startFile = startFile;
+        this.startPosition = startPosition;
+        this.fromZxid = fromZxid;
+        this.toZxid = toZxid;
+        this.filter = filter;
+
+    }
+
+    /**
+     * Moves cursor to next transaction. Transaction log files are switched in
+     * same way as in <code>TransactionLog</code> iterator.
+     *
+     * @return <code>TransactionState.OK</code> if cursor moved to next
+     * transaction, otherwise state that tells why there is no next
+     * transaction.
+     */
+    public TransactionState advance() {
+
+        if (finished) {
+            //range is exhausted, no need to read anything
+            positioned = false;
+            return TransactionState.EMPTY;
+        }
+
+        try {
+
+            if (reader == null) {
+
+                reader = transactionLog.factory.getReader(startFile != null ? startFile : transactionLog.transactionLogList.getFirstTransactionLog());
+
+                if (startPosition > 0) {
+                    reader.seek(startPosition);
+                }
+
+            }
+
+            while (true) {
+
+                boolean read;
+
+                do {
+                    read = readTransaction();
+                } while (read && !accept());
+
+                if (read && getZxid() > toZxid) {
+                    read = false;
+                    positioned = false;
+                    finished = true;
+                }
+
+                if (read) {
+                    return TransactionState.OK;
+                }
+
+                if (finished) {
+                    return TransactionState.EMPTY;
+                }
+
+                File next;
+
+                try {
+
+                    next = transactionLog.transactionLogList.getNextTransactionLog(reader.getTransactionLogFile());
+
+                } catch (NoFileException ex) {
+                    // there is no next file so stick with current file
+                    return TransactionState.EMPTY;
+                }
+
+                if (getZxidFromName(next.getName()) > toZxid) {
+                    finished = true;
+                    return TransactionState.EMPTY;
+                }
+
+                TransactionLogFileReader nextReader = transactionLog.factory.getReader(next);
+
+                closeQuietly(reader);
+                reader = nextReader;
+
+            }
+
+        } catch (IncompleteTransactionException ex) {
+
+            return TransactionState.INCOMPLETE;
+
+        } catch (CRCValidationException ex) {
+
+            return TransactionState.CORRUPTION;
+
+        } catch (IOException ex) {
+
+            return TransactionState.CORRUPTION;
+
+        } catch (NoFileException ex) {
+
+            return TransactionState.EMPTY;
+
+        }
+
+    }
+
+    /*
+
+     Transactions after range are accepted so that advance() can finish.
+
+     */
+    private boolean accept() {
+
+        long zxid = getZxid();
+
+        if (zxid > toZxid) {
+            return true;
+        }
+
+        return zxid >= fromZxid && (filter == null || filter.accept(this));
+
+    }
+
+    /**
+     * Closes reader of current transaction log file. Cursor can not be used
+     * after this.
+     *
+     * @throws IOException Thrown if there is a problem with closing reader.
+     */
+    @Override
+    public void close() throws IOException {
+
+        finished = true;
+        positioned = false;
+
+        if (reader != null) {
+            reader.close();
+        }
+
+    }
+
+    private boolean readTransaction() throws IOException {
+
+        positioned = false;
+
+        if (!reader.readNextTransaction(buffer)) {
+            return false;
+        }
+
+        if (buffer.getLength() < TXN_HEADER_SIZE) {
+            throw new CRCValidationException("Transaction header not complete");
+        }
+
+        //view is wrapped again only when buffer grows
+        if (view == null || view.array() != buffer.getBytes()) {
+            view = ByteBuffer.wrap(buffer.getBytes());
+        }
+
+        txnHeaderLoaded = false;
+        positioned = true;
+
+        return true;
+
+    }
+
+    //TxnHeader is serialized as clientId, cxid, zxid, time and type
+    public long getClientId() {
+        return current().getLong(0);
+    }
+
+    public int getCxid() {
+        return current().getInt(8);
+    }
+
+    public long getZxid() {
+        return current().getLong(12);
+    }
+
+    public long getTime() {
+        return current().getLong(20);
+    }
+
+    public int getType() {
+        return current().getInt(28);
+    }
+
+    /**
+     * Returns <code>TxnHeader</code> of current transaction. Same object is
+     * returned for all transactions of this cursor.
+     *
+     * @return <code>TxnHeader</code> of current transaction.
+     */
+    public TxnHeader getTxnHeader() {
+
+        if (!txnHeaderLoaded) {
+
+            txnHeader.setClientId(getClientId());
+            txnHeader.setCxid(getCxid());
+            txnHeader.setZxid(getZxid());
+            txnHeader.setTime(getTime());
+            txnHeader.setType(getType());
+            txnHeaderLoaded = true;
+
+        }
+
+        return txnHeader;
+
+    }
+
+    /**
+     * Returns serialized bytes of current transaction, <code>TxnHeader</code>
+     * followed by <code>Record</code>, as they are written in transaction log
+     * file. Array is shared with cursor and may be longer than transaction.
+     *
+     * @return Array holding transaction bytes from index 0 to
+     * <code>getTxnLength()</code>.
+     */
+    public byte[] getTxnBytes() {
+
+        current();
+
+        return buffer.getBytes();
+
+    }
+
+    /**
+     *
+     * @return Length of serialized bytes of current transaction.
+     */
+    public int getTxnLength() {
+
+        current();
+
+        return buffer.getLength();
+
+    }
+
+    /**
+     *
+     * @return Offset in <code>getTxnBytes()</code> at which serialized
+     * <code>Record</code> starts.
+     */
+    public int getRecordOffset() {
+        return TXN_HEADER_SIZE;
+    }
+
+    /**
+     *
+     * @return Transaction log file of current transaction.
+     */
+    public File getTransactionLogFile() {
+
+        current();
+
+        return reader.getTransactionLogFile();
+
+    }
+
+    /**
+     *
+     * @return Offset right behind current transaction.
+     */
+    public long getNextOffset() {
+
+        current();
+
+        return reader.getPosition();
+
+    }
+
+    /**
+     * Constructs <code>Transaction</code> from copy of current transaction
+     * bytes. It stays valid after cursor moves on.
+     *
+     * @return Current transaction.
+     * @throws IOException Thrown if transaction can not be constructed.
+     */
+    public Transaction toTransaction() throws IOException {
+
+        Transaction t = new Transaction(copyOf(getTxnBytes(), getTxnLength()));
+        t.setPosition(getTransactionLogFile(), getNextOffset());
+
+        return t;
+
+    }
+
+    private ByteBuffer current() {
+
+        if (!positioned) {
+            throw new IllegalStateException("Cursor is not positioned on transaction");
+        }
+
+        return view;
+
+    }
+
+}
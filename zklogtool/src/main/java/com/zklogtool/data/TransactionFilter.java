@@ -0,0 +1,376 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.txn.CheckVersionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+
+/**
+ * Selects transactions by their type, session, zxid, time and path.
+ * Conditions that are not set match all transactions, and transaction must
+ * match all conditions that are set.
+ * <br>
+ * Filter is evaluated as early as possible when used with
+ * <code>TransactionLog.iterator(TransactionFilter)</code> or
+ * <code>TransactionLog.cursor(TransactionFilter)</code>. Zxid range, and time
+ * range translated into zxid range through index, is used to skip transaction
+ * log files and to seek within them. Header fields are
+ * compared on serialized transaction before anything is decoded. Path is the
+ * first field of every record that has one, so it is compared directly on
+ * serialized record, without decoding data and ACLs. Only transactions that
+ * pass filter are turned into <code>Transaction</code> objects.
+ * <br>
+ * Path condition is matched by transactions with path: create, delete,
+ * setData, setACL and check, and multi transactions in which at least one
+ * operation matches.
+ *
+ */
+public class TransactionFilter {
+
+    private int[] types;
+    private long[] clientIds;
+    private long fromZxid = Long.MIN_VALUE;
+    private long toZxid = Long.MAX_VALUE;
+    private long fromTime = Long.MIN_VALUE;
+    private long toTime = Long.MAX_VALUE;
+    private byte[] pathPrefix;
+    private Pattern pathPattern;
+
+    /**
+     *
+     * @param types Transaction types, constants from
+     * <code>org.apache.zookeeper.ZooDefs.OpCode</code>, that match filter.
+     */
+    public void setTypes(int... types) {
+
+        this.types = types.clone();
+        Arrays.sort(this.types);
+
+    }
+
+    /**
+     *
+     * @param clientIds Session ids whose transactions match filter.
+     */
+    public void setClientIds(long... clientIds) {
+
+        this.clientIds = clientIds.clone();
+        Arrays.sort(this.clientIds);
+
+    }
+
+    /**
+     *
+     * @param fromZxid Lowest matching zxid.
+     * @param toZxid Highest matching zxid.
+     */
+    public void setZxidRange(long fromZxid, long toZxid) {
+
+        this.fromZxid = fromZxid;
+        this.toZxid = toZxid;
+
+    }
+
+    /**
+     *
+     * @param fromTime Lowest matching transaction time in milliseconds.
+     * @param toTime Highest matching transaction time in milliseconds.
+     */
+    public void setTimeRange(long fromTime, long toTime) {
+
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+
+    }
+
+    /**
+     *
+     * @param pathPrefix Transactions whose path starts with
+     * <code>pathPrefix</code> match filter.
+     */
+    public void setPathPrefix(String pathPrefix) {
+
+        this.pathPrefix = pathPrefix != null ? pathPrefix.getBytes(UTF_8) : null;
+
+    }
+
+    /**
+     *
+     * @param pathPattern Transactions whose whole path matches
+     * <code>pathPattern</code> match filter.
+     */
+    public void setPathPattern(Pattern pathPattern) {
+
+        this.pathPattern = pathPattern;
+
+    }
+
+    public long getFromZxid() {
+        return fromZxid;
+    }
+
+    public long getToZxid() {
+        return toZxid;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+    /**
+     *
+     * @return <code>true</code> if filter has path condition, so record must be
+     * looked at.
+     */
+    public boolean hasPathCondition() {
+        return pathPrefix != null || pathPattern != null;
+    }
+
+    /**
+     * Evaluates conditions on header fields only.
+     *
+     * @param clientId Session id.
+     * @param zxid Zxid.
+     * @param time Time.
+     * @param type Type.
+     * @return <code>true</code> if header fields match filter.
+     */
+    public boolean acceptHeader(long clientId, long zxid, long time, int type) {
+
+        return zxid >= fromZxid && zxid <= toZxid
+                && time >= fromTime && time <= toTime
+                && (types == null || Arrays.binarySearch(types, type) >= 0)
+                && (clientIds == null || Arrays.binarySearch(clientIds, clientId) >= 0);
+
+    }
+
+    /**
+     * Evaluates path condition on serialized record.
+     *
+     * @param type Transaction type.
+     * @param bytes Array holding serialized record.
+     * @param offset Offset of record in <code>bytes</code>.
+     * @param end Offset right behind record in <code>bytes</code>.
+     * @return <code>true</code> if there is no path condition or record has
+     * matching path.
+     */
+    public boolean acceptRecord(int type, byte[] bytes, int offset, int end) {
+
+        if (!hasPathCondition()) {
+            return true;
+        }
+
+        if (type == OpCode.multi) {
+            return acceptMulti(bytes, offset, end);
+        }
+
+        return hasPath(type) && acceptPath(bytes, offset, end);
+
+    }
+
+    /**
+     * Evaluates all conditions on <code>Transaction</code>. Record is decoded
+     * only if there is path condition and header matches.
+     *
+     * @param t Transaction.
+     * @return <code>true</code> if transaction matches filter.
+     */
+    public boolean accept(Transaction t) {
+
+        if (!acceptHeader(t.getTxnHeader().getClientId(), t.getTxnHeader().getZxid(), t.getTxnHeader().getTime(), t.getTxnHeader().getType())) {
+            return false;
+        }
+
+        if (!hasPathCondition()) {
+            return true;
+        }
+
+        Record record = t.getTxnRecord();
+
+        if (record instanceof MultiTxn) {
+
+            for (Txn txn : ((MultiTxn) record).getTxns()) {
+
+                if (hasPath(txn.getType()) && acceptPath(txn.getData(), 0, txn.getData().length)) {
+                    return true;
+                }
+
+            }
+
+            return false;
+
+        }
+
+        String path = getPath(record);
+
+        return path != null && acceptPath(path);
+
+    }
+
+    boolean accept(TransactionCursor cursor) {
+
+        int type = cursor.getType();
+
+        return acceptHeader(cursor.getClientId(), cursor.getZxid(), cursor.getTime(), type)
+                && acceptRecord(type, cursor.getTxnBytes(), cursor.getRecordOffset(), cursor.getTxnLength());
+
+    }
+
+    /*
+
+     Multi transaction is serialized as number of operations followed by type
+     and length prefixed serialized record of each operation.
+
+     */
+    private boolean acceptMulti(byte[] bytes, int offset, int end) {
+
+        if (offset + 4 > end) {
+            return false;
+        }
+
+        int count = readInt(bytes, offset);
+        offset += 4;
+
+        for (int i = 0; i < count && offset + 8 <= end; i++) {
+
+            int type = readInt(bytes, offset);
+            int length = readInt(bytes, offset + 4);
+            offset += 8;
+
+            if (length < 0 || offset + length > end) {
+                return false;
+            }
+
+            if (hasPath(type) && acceptPath(bytes, offset, offset + length)) {
+                return true;
+            }
+
+            offset += length;
+
+        }
+
+        return false;
+
+    }
+
+    /*
+
+     Path is serialized as length followed by UTF-8 bytes. Prefix is compared
+     on bytes, String is made only for pattern.
+
+     */
+    private boolean acceptPath(byte[] bytes, int offset, int end) {
+
+        if (offset + 4 > end) {
+            return false;
+        }
+
+        int length = readInt(bytes, offset);
+        offset += 4;
+
+        if (length < 0 || offset + length > end) {
+            return false;
+        }
+
+        if (pathPrefix != null) {
+
+            if (length < pathPrefix.length) {
+                return false;
+            }
+
+            for (int i = 0; i < pathPrefix.length; i++) {
+
+                if (bytes[offset + i] != pathPrefix[i]) {
+                    return false;
+                }
+
+            }
+
+        }
+
+        return pathPattern == null || pathPattern.matcher(new String(bytes, offset, length, UTF_8)).matches();
+
+    }
+
+    private boolean acceptPath(String path) {
+
+        byte[] bytes = path.getBytes(UTF_8);
+        byte[] serialized = new byte[bytes.length + 4];
+
+        serialized[0] = (byte) (bytes.length >>> 24);
+        serialized[1] = (byte) (bytes.length >>> 16);
+        serialized[2] = (byte) (bytes.length >>> 8);
+        serialized[3] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, serialized, 4, bytes.length);
+
+        return acceptPath(serialized, 0, serialized.length);
+
+    }
+
+    private static boolean hasPath(int type) {
+
+        switch (type) {
+            case OpCode.create:
+            case OpCode.delete:
+            case OpCode.setData:
+            case OpCode.setACL:
+            case OpCode.check:
+                return true;
+            default:
+                return false;
+        }
+
+    }
+
+    private static String getPath(Record record) {
+
+        if (record instanceof CreateTxn) {
+            return ((CreateTxn) record).getPath();
+        } else if (record instanceof DeleteTxn) {
+            return ((DeleteTxn) record).getPath();
+        } else if (record instanceof SetDataTxn) {
+            return ((SetDataTxn) record).getPath();
+        } else if (record instanceof SetACLTxn) {
+            return ((SetACLTxn) record).getPath();
+        } else if (record instanceof CheckVersionTxn) {
+            return ((CheckVersionTxn) record).getPath();
+        }
+
+        return null;
+
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+
+    }
+
+}
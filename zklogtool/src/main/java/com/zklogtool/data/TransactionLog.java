@@ -15,13 +15,25 @@
  */
 package com.zklogtool.data;
 
+import com.zklogtool.index.TransactionLogIndex;
+import com.zklogtool.index.TransactionLogIndexer;
 import com.zklogtool.reader.CRCValidationException;
 import com.zklogtool.reader.IncompleteTransactionException;
+import com.zklogtool.reader.TransactionBuffer;
 import com.zklogtool.reader.TransactionLogFileReader;
 import com.zklogtool.reader.TransactionLogReaderFactory;
+import static com.zklogtool.util.Util.closeQuietly;
+import static com.zklogtool.util.Util.getZxidFromName;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import static java.util.Arrays.copyOf;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <code>TransactionLog</code> represents one or multiple Zookeeper transaction
@@ -32,12 +44,44 @@ import java.util.NoSuchElementException;
  * Zookeeper transactions are appended to last transaction log file, and from
  * time to time new file gets created. <code>TransactionLog</code> covers both
  * cases and seamlessly switches over to new file when needed.
+ * <br>
+ * <code>tailIterator()</code> starts at end of transaction log, without reading
+ * transactions written before, and <code>iteratorLast()</code> starts few
+ * transactions before end.
+ * <br>
+ * Iteration can also be limited to range of zxids using
+ * <code>iterator(fromZxid, toZxid)</code> or <code>iteratorFrom()</code>.
+ * Zxid of first transaction written in transaction log file name is used to
+ * skip whole files in front of range and to stop before files after range.
+ * Within file <code>TransactionLogIndexer</code> is used to seek close to
+ * first zxid instead of reading all transactions in front of it.
+ * <br>
+ * <code>cursor()</code> provides <code>TransactionCursor</code>, which reads
+ * transactions into reused buffer instead of constructing
+ * <code>Transaction</code> objects, for passes over many transactions that
+ * only look at header fields or raw bytes.
+ * <br>
+ * <code>iterator(TransactionFilter)</code> and
+ * <code>cursor(TransactionFilter)</code> select transactions by type, session,
+ * zxid, time and path before they are deserialized. Time range is translated
+ * into zxid range through time ranges kept in index checkpoints, so files
+ * outside of it are not read.
+ * <br>
+ * <code>pipelinedIterator()</code> spreads CRC validation and deserialization
+ * of transactions over multiple threads for long iterations, and
+ * <code>parallelIterator()</code> reads multiple transaction log files at the
+ * same time.
+ * <br>
+ * <code>stream()</code> and <code>parallelStream()</code> cover transaction
+ * log files that exist when they are called. Parallel stream splits work on
+ * file boundaries and on index checkpoints.
  *
  */
 public class TransactionLog implements Iterable<Transaction> {
 
     final TransactionLogFileList transactionLogList;
     final TransactionLogReaderFactory factory;
+    TransactionLogIndexer indexer = new TransactionLogIndexer();
 
     /**
      * Constructs <code>TransactionLog</code> that provides iterator over
@@ -89,25 +133,770 @@ public class TransactionLog implements Iterable<Transaction> {
     @Override
     public TransactionIterator iterator() {
 
-        return new TransactionLogIterator(transactionLogList, factory);
+        return new TransactionLogIterator(null, 0, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns <code>TransactionSpliterator</code> over transaction log files
+     * that exist at the time of call.
+     *
+     * @return Spliterator over all transactions.
+     */
+    @Override
+    public Spliterator<Transaction> spliterator() {
+
+        List<File> files = new ArrayList<>();
+
+        try {
+
+            File file = transactionLogList.getFirstTransactionLog();
+
+            while (true) {
+
+                files.add(file);
+                file = transactionLogList.getNextTransactionLog(file);
+
+            }
+
+        } catch (NoFileException ex) {
+            //all files are listed
+        }
+
+        return new TransactionSpliterator(this, files, 0, 0, files.size() - 1, Long.MAX_VALUE);
+
+    }
+
+    /**
+     * Returns sequential stream of transactions. Stream throws
+     * <code>TransactionStateException</code> if it reaches corrupted or
+     * partially written transaction.
+     *
+     * @return Stream of all transactions.
+     */
+    public Stream<Transaction> stream() {
+
+        return StreamSupport.stream(spliterator(), false);
+
+    }
+
+    /**
+     * Returns parallel stream of transactions. Stream throws
+     * <code>TransactionStateException</code> if it reaches corrupted or
+     * partially written transaction.
+     *
+     * @return Parallel stream of all transactions.
+     */
+    public Stream<Transaction> parallelStream() {
+
+        return StreamSupport.stream(spliterator(), true);
+
+    }
+
+    /**
+     * Returns iterator that starts at first transaction with zxid greater or
+     * equal to <code>zxid</code>. Same as
+     * <code>iterator(zxid, Long.MAX_VALUE)</code>.
+     *
+     * @param zxid Zxid of first transaction in iteration.
+     * @return Iterator that starts at first transaction with zxid greater or
+     * equal to <code>zxid</code>.
+     */
+    public TransactionIterator iteratorFrom(long zxid) {
+
+        return iterator(zxid, Long.MAX_VALUE);
+
+    }
+
+    /**
+     * Returns iterator over transactions with zxid in range from
+     * <code>fromZxid</code> to <code>toZxid</code>, both inclusive. Transaction
+     * log files whose successor starts at or before <code>fromZxid</code> are
+     * skipped without being opened, and index is used to seek close to
+     * <code>fromZxid</code> within first file. Once transaction after
+     * <code>toZxid</code> is reached, or next transaction log file starts after
+     * <code>toZxid</code>, iterator stays in <code>TransactionState.EMPTY</code>
+     * state and no more files are opened. If indexes can not be used, iterator
+     * reads all transactions in front of <code>fromZxid</code> and skips them.
+     *
+     * @param fromZxid Zxid of first transaction in iteration.
+     * @param toZxid Zxid of last transaction in iteration.
+     * @return Iterator over transactions with zxid in range.
+     */
+    public TransactionIterator iterator(long fromZxid, long toZxid) {
+
+        Position start = findPosition(fromZxid);
+
+        return new TransactionLogIterator(start.file, start.offset, fromZxid, toZxid);
+
+    }
+
+    /**
+     * Returns iterator that resumes behind transaction with <code>zxid</code>
+     * that ended at <code>offset</code> in <code>transactionLogFile</code>,
+     * as returned by <code>Transaction.getTransactionLogFile()</code> and
+     * <code>Transaction.getNextOffset()</code>. Reading starts with direct seek
+     * to <code>offset</code>. If file no longer exists or is shorter than
+     * <code>offset</code>, for example because it was purged, iterator starts
+     * at first transaction after <code>zxid</code> instead.
+     *
+     * @param transactionLogFile Transaction log file of last read transaction.
+     * @param offset Offset right behind last read transaction.
+     * @param zxid Zxid of last read transaction.
+     * @return Iterator that starts with first transaction after
+     * <code>zxid</code>.
+     */
+    public TransactionIterator iteratorAfter(File transactionLogFile, long offset, long zxid) {
+
+        return iteratorAfter(transactionLogFile, offset, zxid, Long.MAX_VALUE);
+
+    }
+
+    TransactionIterator iteratorAfter(File transactionLogFile, long offset, long zxid, long toZxid) {
+
+        if (transactionLogFile == null || !transactionLogFile.isFile() || offset <= 0 || transactionLogFile.length() < offset) {
+            return iterator(zxid + 1, toZxid);
+        }
+
+        return new TransactionLogIterator(transactionLogFile, offset, zxid + 1, toZxid);
+
+    }
+
+    /**
+     * Returns <code>TransactionCursor</code> over all transactions.
+     *
+     * @return Cursor positioned in front of first transaction.
+     */
+    public TransactionCursor cursor() {
+
+        return new TransactionCursor(this, null, 0, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    }
+
+    /**
+     * Returns <code>TransactionCursor</code> over transactions with zxid in
+     * range from <code>fromZxid</code> to <code>toZxid</code>, both inclusive.
+     * Files are skipped and index is used same way as in
+     * <code>iterator(fromZxid, toZxid)</code>.
+     *
+     * @param fromZxid Zxid of first transaction.
+     * @param toZxid Zxid of last transaction.
+     * @return Cursor positioned in front of first transaction in range.
+     */
+    public TransactionCursor cursor(long fromZxid, long toZxid) {
+
+        Position start = findPosition(fromZxid);
+
+        return new TransactionCursor(this, start.file, start.offset, fromZxid, toZxid);
+
+    }
+
+    /**
+     * Returns <code>TransactionCursor</code> that moves only to transactions
+     * that pass <code>filter</code>. Zxid range of filter is used to skip
+     * files and to seek same way as in <code>iterator(fromZxid, toZxid)</code>.
+     *
+     * @param filter Filter that selects transactions.
+     * @return Cursor positioned in front of first transaction that passes
+     * filter.
+     */
+    public TransactionCursor cursor(TransactionFilter filter) {
+
+        long fromZxid = filter.getFromZxid();
+        long toZxid = filter.getToZxid();
+
+        if (filter.getFromTime() != Long.MIN_VALUE || filter.getToTime() != Long.MAX_VALUE) {
+
+            ZxidRange range = findZxidRange(filter.getFromTime(), filter.getToTime());
+
+            fromZxid = Math.max(fromZxid, range.fromZxid);
+            toZxid = Math.min(toZxid, range.toZxid);
+
+        }
+
+        Position start = findPosition(fromZxid);
+
+        return new TransactionCursor(this, start.file, start.offset, fromZxid, toZxid, filter);
+
+    }
+
+    /**
+     * Returns zxid of last transaction with time lower or equal to
+     * <code>time</code>, which is last transaction of data state at that
+     * time. Only transactions between two index checkpoints are read.
+     *
+     * @param time Time in milliseconds.
+     * @return Zxid of last transaction at or before <code>time</code>, or -1
+     * if there is no such transaction.
+     */
+    public long findLastZxidAt(long time) {
+
+        ZxidRange range = findZxidRange(Long.MIN_VALUE, time);
+
+        if (range.toCheckpointZxid == Long.MIN_VALUE) {
+            return -1;
+        }
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setZxidRange(range.toCheckpointZxid, range.toZxid);
+        filter.setTimeRange(Long.MIN_VALUE, time);
+
+        Position start = findPosition(range.toCheckpointZxid);
+        TransactionCursor cursor = new TransactionCursor(this, start.file, start.offset, range.toCheckpointZxid, range.toZxid, filter);
+        long zxid = -1;
+
+        while (cursor.advance() == TransactionState.OK) {
+            zxid = cursor.getZxid();
+        }
+
+        return zxid;
+
+    }
+
+    /**
+     * Returns iterator over transactions that pass <code>filter</code>.
+     * Filter is evaluated on serialized transactions, so
+     * <code>Transaction</code> objects are constructed only for transactions
+     * that pass it.
+     *
+     * @param filter Filter that selects transactions.
+     * @return Iterator over transactions that pass filter.
+     */
+    public TransactionIterator iterator(TransactionFilter filter) {
+
+        return new CursorTransactionIterator(cursor(filter));
+
+    }
+
+    /**
+     * Returns iterator over transactions with zxid in range from
+     * <code>fromZxid</code> to <code>toZxid</code> that validates and
+     * deserializes transactions on <code>threads</code> threads while
+     * transaction log files are read on another thread. Transactions are
+     * returned in same order and with same <code>TransactionState</code>s as
+     * from <code>iterator(fromZxid, toZxid)</code>.
+     *
+     * @param fromZxid Zxid of first transaction in iteration.
+     * @param toZxid Zxid of last transaction in iteration.
+     * @param threads Number of decoding threads.
+     * @return Iterator over transactions with zxid in range. It should be
+     * closed after use.
+     */
+    public PipelinedTransactionIterator pipelinedIterator(long fromZxid, long toZxid, int threads) {
+
+        Position start = findPosition(fromZxid);
+
+        return new PipelinedTransactionIterator(this, start.file, start.offset, fromZxid, toZxid, threads);
+
+    }
+
+    /**
+     * Returns iterator over transactions with zxid in range from
+     * <code>fromZxid</code> to <code>toZxid</code> that reads up to
+     * <code>threads</code> transaction log files at the same time and merges
+     * them into one stream ordered by zxid. Transactions are returned with
+     * same <code>TransactionState</code>s as from
+     * <code>iterator(fromZxid, toZxid)</code>.
+     *
+     * @param fromZxid Zxid of first transaction in iteration.
+     * @param toZxid Zxid of last transaction in iteration.
+     * @param threads Number of transaction log files read at the same time.
+     * @return Iterator over transactions with zxid in range. It should be
+     * closed after use.
+     */
+    public ParallelTransactionIterator parallelIterator(long fromZxid, long toZxid, int threads) {
+
+        return new ParallelTransactionIterator(this, findPosition(fromZxid), fromZxid, toZxid, threads, ParallelTransactionIterator.DEFAULT_READ_AHEAD);
+
+    }
+
+    /**
+     * Returns iterator that starts behind last completely written transaction,
+     * so it only returns transactions written after this call. Only newest
+     * transaction log file is opened, and transactions in it are skipped
+     * without being validated or deserialized, so this takes same time no
+     * matter how many transactions were written before.
+     *
+     * @return Iterator positioned at end of transaction log.
+     */
+    public TransactionIterator tailIterator() {
+
+        File transactionLogFile;
+
+        try {
+
+            transactionLogFile = transactionLogList.getFirstTransactionLog();
+
+        } catch (NoFileException ex) {
+
+            //nothing written yet, first transaction will be in first file
+            return iterator();
+
+        }
+
+        while (true) {
+
+            try {
+                transactionLogFile = transactionLogList.getNextTransactionLog(transactionLogFile);
+            } catch (NoFileException ex) {
+                break;
+            }
+
+        }
+
+        TransactionLogFileReader reader;
+
+        try {
+
+            reader = factory.getReader(transactionLogFile);
+
+        } catch (IOException ex) {
+
+            //file header is not written yet so there are no transactions in file
+            return new TransactionLogIterator(transactionLogFile, 0, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        }
+
+        try {
+            reader.skipToEnd();
+        } catch (IOException ex) {
+            //iteration starts where skipping stopped
+        }
+
+        return new TransactionLogIterator(reader, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    }
+
+    /**
+     * Returns iterator that starts at <code>count</code>-th transaction from
+     * end of transaction log and continues with transactions written after
+     * this call. Transaction log files are visited from newest to oldest.
+     * Only up to date stored indexes are used, indexes are never built. File
+     * with stored index is skipped using its transaction count, and if
+     * iteration starts in it frames are read from nearby index checkpoint.
+     * File without stored index, which is usually newest file that is still
+     * written to, has its frames read from beginning. Frames are never
+     * validated or deserialized, so cost is one pass over frame headers of
+     * files without index.
+     *
+     * @param count Number of most recent transactions to start with.
+     * @return Iterator positioned in front of <code>count</code>-th transaction
+     * from end, or in front of first transaction if there are fewer
+     * transactions.
+     */
+    public TransactionIterator iteratorLast(int count) {
+
+        if (count <= 0) {
+            return tailIterator();
+        }
+
+        List<File> transactionLogFiles = new ArrayList<File>();
+
+        try {
+
+            File transactionLogFile = transactionLogList.getFirstTransactionLog();
+
+            while (true) {
+
+                transactionLogFiles.add(transactionLogFile);
+
+                try {
+                    transactionLogFile = transactionLogList.getNextTransactionLog(transactionLogFile);
+                } catch (NoFileException ex) {
+                    break;
+                }
+
+            }
+
+        } catch (NoFileException ex) {
+
+            //nothing written yet, first transaction will be in first file
+            return iterator();
+
+        }
+
+        int remaining = count;
+
+        for (int i = transactionLogFiles.size() - 1; i >= 0; i--) {
+
+            File transactionLogFile = transactionLogFiles.get(i);
+
+            try {
+
+                TransactionLogIndex index = indexer.getStoredIndex(transactionLogFile);
+                long transactionCount;
+
+                if (index != null) {
+
+                    if (index.getTransactionCount() >= remaining) {
+                        return new TransactionLogIterator(transactionLogFile, findOffsetOfLast(transactionLogFile, index, remaining), Long.MIN_VALUE, Long.MAX_VALUE);
+                    }
+
+                    transactionCount = index.getTransactionCount();
+
+                } else {
+
+                    LastFrames last;
+
+                    try (TransactionLogFileReader reader = factory.getReader(transactionLogFile)) {
+                        last = readLastFrames(reader, reader.getPosition(), Long.MAX_VALUE, remaining);
+                    }
+
+                    if (last.isFull()) {
+                        return new TransactionLogIterator(transactionLogFile, last.getOffsetOfFirst(), Long.MIN_VALUE, Long.MAX_VALUE);
+                    }
+
+                    transactionCount = last.getRead();
+
+                }
+
+                remaining -= transactionCount;
+
+            } catch (IOException ex) {
+                //file without header has no transactions, and iteration reports other problems when it gets there
+            }
+
+        }
+
+        return new TransactionLogIterator(transactionLogFiles.get(0), 0, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    }
+
+    /*
+
+     Returns offset of count-th transaction from end of indexed part of file.
+     Checkpoints are taken every interval transactions, so reading starts at
+     checkpoint in front of it. If index was built with different interval
+     there may not be enough frames behind checkpoint, and file is read from
+     first checkpoint instead.
+
+     */
+    private long findOffsetOfLast(File transactionLogFile, TransactionLogIndex index, int count) throws IOException {
+
+        long skip = index.getTransactionCount() - count;
+        int checkpoint = (int) Math.min(skip / indexer.getInterval(), index.getCheckpointCount() - 1);
+
+        try (TransactionLogFileReader reader = factory.getReader(transactionLogFile)) {
+
+            while (true) {
+
+                LastFrames last = readLastFrames(reader, index.getCheckpointOffset(checkpoint), index.getEndOffset(), count);
+
+                if (last.isFull()) {
+                    return last.getOffsetOfFirst();
+                }
+
+                if (checkpoint == 0) {
+                    return index.getCheckpointOffset(0);
+                }
+
+                checkpoint = 0;
+
+            }
+
+        }
+
+    }
+
+    /*
+
+     Reads frames from offset up to endOffset or up to first frame that can
+     not be read, keeping offsets of last count frames.
+
+     */
+    private LastFrames readLastFrames(TransactionLogFileReader reader, long offset, long endOffset, int count) throws IOException {
+
+        TransactionBuffer buffer = new TransactionBuffer();
+        LastFrames last = new LastFrames(count);
+
+        reader.seek(offset);
+
+        try {
+
+            while (reader.getPosition() < endOffset) {
+
+                long position = reader.getPosition();
+
+                if (!reader.readNextFrame(buffer)) {
+                    break;
+                }
+
+                last.add(position);
+
+            }
+
+        } catch (IncompleteTransactionException | CRCValidationException ex) {
+            //iteration reports it when it gets there
+        }
+
+        return last;
+
+    }
+
+    /*
+
+     Ring of offsets of last count frames. Ring grows with number of frames
+     read, so it is never larger than file being read.
+
+     */
+    private static class LastFrames {
+
+        private final int count;
+        private long[] offsets;
+        private long read;
+
+        LastFrames(int count) {
+
+            this.count = count;
+            offsets = new long[Math.min(count, 16)];
+
+        }
+
+        void add(long offset) {
+
+            //ring did not wrap around before it reaches count
+            if (read == offsets.length && offsets.length < count) {
+                offsets = copyOf(offsets, (int) Math.min(offsets.length * 2L, count));
+            }
+
+            offsets[(int) (read % offsets.length)] = offset;
+            read++;
+
+        }
+
+        boolean isFull() {
+            return read >= count;
+        }
+
+        long getOffsetOfFirst() {
+            return offsets[(int) (read % count)];
+        }
+
+        long getRead() {
+            return read;
+        }
+
+    }
+
+    /*
+
+     Returns transaction log file and offset from which reading should start
+     to reach fromZxid. Null file means that reading starts at first file
+     whenever it appears.
+
+     */
+    Position findPosition(long fromZxid) {
+
+        try {
+
+            File transactionLogFile = findTransactionLog(fromZxid);
+
+            if (fromZxid == Long.MIN_VALUE) {
+                return new Position(transactionLogFile, 0);
+            }
+
+            while (true) {
+
+                TransactionLogIndex index = indexer.getIndex(transactionLogFile, factory);
+
+                if (index.getLastZxid() >= fromZxid || index.getEndState() != TransactionState.EMPTY) {
+                    return new Position(transactionLogFile, index.getOffset(fromZxid));
+                }
+
+                try {
+                    transactionLogFile = transactionLogList.getNextTransactionLog(transactionLogFile);
+                } catch (NoFileException ex) {
+                    return new Position(transactionLogFile, index.getEndOffset());
+                }
+
+            }
+
+        } catch (NoFileException | IOException ex) {
+
+            return new Position(null, 0);
+
+        }
+
+    }
+
+    /*
+
+     Translates time range into zxid range using time ranges of index
+     checkpoints. Range starts at first checkpoint that has transactions at or
+     after fromTime and ends at end of last checkpoint that has transactions at
+     or before toTime. If indexes can not be read range is not narrowed.
+
+     */
+    ZxidRange findZxidRange(long fromTime, long toTime) {
+
+        ZxidRange range = new ZxidRange();
+        boolean fromFound = false;
+        range.toZxid = Long.MIN_VALUE;
+        long lastZxid = -1;
+
+        try {
+
+            File transactionLogFile = transactionLogList.getFirstTransactionLog();
+
+            while (true) {
+
+                TransactionLogIndex index = indexer.getIndex(transactionLogFile, factory);
+
+                for (int i = 0; i < index.getCheckpointCount(); i++) {
+
+                    if (!fromFound && index.getCheckpointMaxTime(i) >= fromTime) {
+                        range.fromZxid = index.getCheckpointZxid(i);
+                        fromFound = true;
+                    }
+
+                    if (index.getCheckpointMinTime(i) <= toTime) {
+                        range.toZxid = index.getCheckpointLastZxid(i);
+                        range.toCheckpointZxid = index.getCheckpointZxid(i);
+                    }
+
+                }
+
+                lastZxid = Math.max(lastZxid, index.getLastZxid());
+
+                if (fromFound && toTime == Long.MAX_VALUE) {
+                    break;
+                }
+
+                try {
+                    transactionLogFile = transactionLogList.getNextTransactionLog(transactionLogFile);
+                } catch (NoFileException ex) {
+                    break;
+                }
+
+            }
+
+        } catch (NoFileException ex) {
+
+            //no transactions yet, so only later ones can be in range
+            return new ZxidRange();
+
+        } catch (IOException ex) {
+
+            return new ZxidRange();
+
+        }
+
+        if (!fromFound) {
+            //transactions written later can still be in range
+            range.fromZxid = lastZxid + 1;
+        }
+
+        if (toTime == Long.MAX_VALUE) {
+            range.toZxid = Long.MAX_VALUE;
+        }
+
+        return range;
+
+    }
+
+    /*
+
+     Returns last transaction log file whose name says it starts at or before
+     zxid. Files whose names do not follow Zookeeper naming convention are never
+     skipped.
+
+     */
+    private File findTransactionLog(long zxid) throws NoFileException {
+
+        File transactionLogFile = transactionLogList.getFirstTransactionLog();
+
+        while (true) {
+
+            File next;
+
+            try {
+                next = transactionLogList.getNextTransactionLog(transactionLogFile);
+            } catch (NoFileException ex) {
+                return transactionLogFile;
+            }
+
+            long nextZxid = getZxidFromName(next.getName());
+
+            if (nextZxid == -1 || nextZxid > zxid) {
+                return transactionLogFile;
+            }
+
+            transactionLogFile = next;
+
+        }
+
+    }
+
+    public TransactionLogIndexer getTransactionLogIndexer() {
+        return indexer;
+    }
+
+    /**
+     *
+     * @param indexer <code>TransactionLogIndexer</code> used by
+     * <code>iteratorFrom()</code>.
+     */
+    public void setTransactionLogIndexer(TransactionLogIndexer indexer) {
+        this.indexer = indexer;
+    }
+
+    static class ZxidRange {
+
+        long fromZxid = Long.MIN_VALUE;
+        long toZxid = Long.MAX_VALUE;
+        long toCheckpointZxid = Long.MIN_VALUE;
+
+    }
+
+    static class Position {
+
+        final File file;
+        final long offset;
+
+        Position(File file, long offset) {
+
+            this.file = file;
+            this.offset = offset;
+
+        }
+
     }
 
     /**
      * Implements <code>TransactionIterator</code>. Remove operation is not
-     * supported.
+     * supported. Reader of previous transaction log file is closed when
+     * iteration moves to next file, and reader of current file is closed by
+     * <code>close()</code>.
      *
      */
-    public class TransactionLogIterator implements TransactionIterator {
+    public class TransactionLogIterator implements TransactionIterator, Closeable {
 
         private TransactionLogFileReader reader;
-        private TransactionLogFileList transactionLogList;
+        private File startFile;
+        private long startPosition;
+        private final long fromZxid;
+        private final long toZxid;
+        private boolean finished;
 
         private Transaction t;
         private TransactionState s;
 
-        private TransactionLogIterator(TransactionLogFileList transactionLogFileList, TransactionLogReaderFactory factory) {
+        private TransactionLogIterator(TransactionLogFileReader reader, long fromZxid, long toZxid) {
+
+            this.reader = reader;
+            this.startFile = reader.getTransactionLogFile();
+            this.fromZxid = fromZxid;
+            this.toZxid = toZxid;
+
+            loadNextTransaction();
+
+        }
+
+        private TransactionLogIterator(File startFile, long startPosition, long fromZxid, long toZxid) {
 
-            this.transactionLogList = transactionLogFileList;
+            this.startFile = startFile;
+            this.startPosition = startPosition;
+            this.fromZxid = fromZxid;
+            this.toZxid = toZxid;
 
             loadNextTransaction();
 
@@ -146,6 +935,26 @@ public class TransactionLog implements Iterable<Transaction> {
             throw new UnsupportedOperationException("Not supported");
         }
 
+        /**
+         * Closes reader of current transaction log file. Iteration can not
+         * continue after this.
+         *
+         * @throws IOException Thrown if there is a problem with closing
+         * reader.
+         */
+        @Override
+        public void close() throws IOException {
+
+            finished = true;
+            t = null;
+            s = TransactionState.EMPTY;
+
+            if (reader != null) {
+                reader.close();
+            }
+
+        }
+
         /**
          *
          * @return TransactionState of the next <code>Transaction</code> in
@@ -163,28 +972,70 @@ public class TransactionLog implements Iterable<Transaction> {
 
         private void loadNextTransaction() {
 
+            if (finished) {
+                //range is exhausted, no need to read anything
+                t = null;
+                s = TransactionState.EMPTY;
+                return;
+            }
+
             try {
 
                 if (reader == null) {
 
-                    reader = factory.getReader(transactionLogList.getFirstTransactionLog());
+                    reader = factory.getReader(startFile != null ? startFile : transactionLogList.getFirstTransactionLog());
+
+                    if (startPosition > 0) {
+                        reader.seek(startPosition);
+                    }
 
                 }
 
-                t = reader.getNextTransaction();
+                while (true) {
+
+                    do {
+                        t = reader.getNextTransaction();
+                    } while (t != null && t.getTxnHeader().getZxid() < fromZxid);
+
+                    if (t != null && t.getTxnHeader().getZxid() > toZxid) {
+                        t = null;
+                        finished = true;
+                    }
+
+                    if (t != null) {
+                        t.setPosition(reader.getTransactionLogFile(), reader.getPosition());
+                        s = TransactionState.OK;
+                        break;
+                    }
 
-                if (t != null) {
-                    s = TransactionState.OK;
-                } else {
                     s = TransactionState.EMPTY;
 
+                    if (finished) {
+                        break;
+                    }
+
+                    File next;
+
                     try {
 
-                        reader = factory.getReader(transactionLogList.getNextTransactionLog(reader.getTransactionLogFile()));
+                        next = transactionLogList.getNextTransactionLog(reader.getTransactionLogFile());
 
                     } catch (NoFileException ex) {
                         // this is ok, there is no next file so default behaviour is to stick with current file
+                        break;
+                    }
+
+                    if (getZxidFromName(next.getName()) > toZxid) {
+                        finished = true;
+                        break;
                     }
+
+                    //continue with next file right away, it may already hold transactions
+                    TransactionLogFileReader nextReader = factory.getReader(next);
+
+                    closeQuietly(reader);
+                    reader = nextReader;
+
                 }
 
             } catch (IncompleteTransactionException ex) {
@@ -0,0 +1,231 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.index.TransactionLogIndex;
+import com.zklogtool.reader.CRCValidationException;
+import com.zklogtool.reader.IncompleteTransactionException;
+import com.zklogtool.reader.TransactionLogFileReader;
+import static com.zklogtool.util.Util.closeQuietly;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <code>Spliterator</code> over transactions in list of transaction log files.
+ * Transaction log files can be read independently, so
+ * <code>trySplit()</code> first splits on file boundaries. Single file is
+ * split on checkpoints of its stored <code>TransactionLogIndex</code>, if
+ * there is up to date one, as checkpoint offsets always point in front of
+ * transaction. Indexes are never built for splitting.
+ * <br>
+ * Transactions are reported in order in which they are written, and every
+ * file is read up to its last completely written transaction. If transaction
+ * log file is corrupted, or transaction is not completely written,
+ * <code>TransactionStateException</code> with
+ * <code>TransactionState.CORRUPTION</code> or
+ * <code>TransactionState.INCOMPLETE</code> is thrown instead of ending
+ * traversal silently.
+ *
+ */
+public class TransactionSpliterator implements Spliterator<Transaction> {
+
+    //used only to estimate number of transactions from number of bytes
+    private final static long AVERAGE_TRANSACTION_SIZE = 128;
+
+    private final TransactionLog transactionLog;
+    private final List<File> files;
+    private int fileIndex;
+    private long offset;
+    private final int endFileIndex;
+    private final long endOffset;
+    private TransactionLogFileReader reader;
+
+    /*
+
+     Covers transactions starting at offset in file at fileIndex and ending
+     in front of endOffset in file at endFileIndex. Offset 0 means beginning
+     of file and Long.MAX_VALUE its end.
+
+     */
+    TransactionSpliterator(TransactionLog transactionLog, List<File> files, int fileIndex, long offset, int endFileIndex, long endOffset) {
+
+        this.transactionLog = transactionLog;
+        this.files = files;
+        this.fileIndex = fileIndex;
+        this.offset = offset;
+        this.endFileIndex = endFileIndex;
+        this.endOffset = endOffset;
+
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Transaction> action) {
+
+        while (fileIndex <= endFileIndex) {
+
+            File file = files.get(fileIndex);
+
+            try {
+
+                if (reader == null) {
+
+                    reader = transactionLog.factory.getReader(file);
+
+                    if (offset > 0) {
+                        reader.seek(offset);
+                    }
+
+                }
+
+                if (fileIndex != endFileIndex || reader.getPosition() < endOffset) {
+
+                    Transaction t = reader.getNextTransaction();
+
+                    if (t != null) {
+
+                        t.setPosition(file, reader.getPosition());
+                        action.accept(t);
+
+                        return true;
+
+                    }
+
+                }
+
+            } catch (IncompleteTransactionException e) {
+
+                closeQuietly(reader);
+                throw new TransactionStateException(TransactionState.INCOMPLETE, "Partial transaction in " + file, e);
+
+            } catch (CRCValidationException e) {
+
+                closeQuietly(reader);
+                throw new TransactionStateException(TransactionState.CORRUPTION, "Corrupted transaction in " + file, e);
+
+            } catch (IOException e) {
+
+                closeQuietly(reader);
+                throw new TransactionStateException(TransactionState.CORRUPTION, "Problem with reading " + file, e);
+
+            }
+
+            closeQuietly(reader);
+            reader = null;
+            offset = 0;
+            fileIndex++;
+
+        }
+
+        return false;
+
+    }
+
+    @Override
+    public Spliterator<Transaction> trySplit() {
+
+        if (fileIndex >= endFileIndex) {
+            return splitFile();
+        }
+
+        //prefix takes first half of files, including one that is being read
+        int middle = fileIndex + (endFileIndex - fileIndex + 2) / 2;
+
+        TransactionSpliterator prefix = new TransactionSpliterator(transactionLog, files, fileIndex, offset, middle - 1, Long.MAX_VALUE);
+        prefix.reader = reader;
+
+        fileIndex = middle;
+        offset = 0;
+        reader = null;
+
+        return prefix;
+
+    }
+
+    private Spliterator<Transaction> splitFile() {
+
+        if (fileIndex > endFileIndex) {
+            return null;
+        }
+
+        TransactionLogIndex index = transactionLog.indexer.getStoredIndex(files.get(fileIndex));
+
+        if (index == null) {
+            return null;
+        }
+
+        long start = reader != null ? reader.getPosition() : offset;
+        long end = Math.min(endOffset, index.getEndOffset());
+
+        int first = 0;
+        int count = 0;
+
+        //checkpoints strictly inside of this part
+        for (int i = 0; i < index.getCheckpointCount(); i++) {
+
+            long checkpointOffset = index.getCheckpointOffset(i);
+
+            if (checkpointOffset <= start) {
+                first = i + 1;
+            } else if (checkpointOffset < end) {
+                count++;
+            }
+
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        long middle = index.getCheckpointOffset(first + count / 2);
+
+        TransactionSpliterator prefix = new TransactionSpliterator(transactionLog, files, fileIndex, start, fileIndex, middle);
+        prefix.reader = reader;
+
+        offset = middle;
+        reader = null;
+
+        return prefix;
+
+    }
+
+    @Override
+    public long estimateSize() {
+
+        long bytes = 0;
+
+        for (int i = fileIndex; i <= endFileIndex; i++) {
+
+            long length = files.get(i).length();
+            long from = i == fileIndex ? (reader != null ? reader.getPosition() : offset) : 0;
+            long to = i == endFileIndex ? Math.min(endOffset, length) : length;
+
+            bytes += Math.max(0, to - from);
+
+        }
+
+        return bytes / AVERAGE_TRANSACTION_SIZE;
+
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+}
@@ -0,0 +1,52 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+/**
+ * Unchecked exception that carries <code>TransactionState</code> that stopped
+ * reading of transactions. It is thrown where checked exceptions or
+ * <code>nextTransactionState()</code> are not available, such as from
+ * <code>Spliterator</code> behind <code>TransactionLog.stream()</code>.
+ *
+ */
+public class TransactionStateException extends RuntimeException {
+
+    private final TransactionState state;
+
+    public TransactionStateException(TransactionState state, String message) {
+
+        super(message);
+        this.state = state;
+
+    }
+
+    public TransactionStateException(TransactionState state, String message, Throwable cause) {
+
+        super(message, cause);
+        this.state = state;
+
+    }
+
+    /**
+     *
+     * @return <code>TransactionState.CORRUPTION</code> or
+     * <code>TransactionState.INCOMPLETE</code>.
+     */
+    public TransactionState getState() {
+        return state;
+    }
+
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.index;
+
+import com.zklogtool.data.TransactionState;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Arrays.binarySearch;
+import static java.util.Arrays.copyOf;
+import java.util.zip.CRC32;
+
+/**
+ * Sparse index of one transaction log file. Index holds checkpoints, pairs of
+ * zxid and offset of transaction in transaction log file, for every n-th
+ * transaction. It is used to seek close to some zxid without reading all
+ * transactions in front of it.
+ * <br>
+ * Each checkpoint also holds lowest and highest time of transactions from it
+ * up to next checkpoint. Time in transaction header is not strictly
+ * increasing, so time ranges are kept per checkpoint instead of assuming
+ * order. They are used to translate time range into zxid range.
+ * <br>
+ * Index covers transactions from beginning of file up to
+ * <code>getEndOffset()</code>. <code>getEndState()</code> tells why indexing
+ * stopped there. Index also remembers length and modification time of
+ * transaction log file so it can be checked whether it is up to date, and
+ * fingerprint of indexed part of file so offsets are not trusted for some
+ * other file of same length and modification time.
+ *
+ */
+public class TransactionLogIndex {
+
+    private final static int INDEX_MAGIC = wrap("ZKIX".getBytes()).getInt();
+    private final static int INDEX_VERSION = 3;
+
+    //bytes at beginning and at end of indexed part of file covered by fingerprint
+    private final static int FINGERPRINT_BYTES = 4096;
+
+    private long fileLength;
+    private long lastModified;
+    private long fingerprint;
+
+    private long[] zxids = new long[16];
+    private long[] offsets = new long[16];
+    private long[] minTimes = new long[16];
+    private long[] maxTimes = new long[16];
+    private int checkpointCount;
+
+    private long lastZxid = -1;
+    private long transactionCount;
+    private long endOffset;
+    private TransactionState endState = TransactionState.EMPTY;
+
+    TransactionLogIndex(long fileLength, long lastModified) {
+
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+
+    }
+
+    TransactionLogIndex(TransactionLogIndex index, long fileLength, long lastModified) {
+
+        this(fileLength, lastModified);
+
+        zxids = copyOf(index.zxids, index.zxids.length);
+        offsets = copyOf(index.offsets, index.offsets.length);
+        minTimes = copyOf(index.minTimes, index.minTimes.length);
+        maxTimes = copyOf(index.maxTimes, index.maxTimes.length);
+        checkpointCount = index.checkpointCount;
+        lastZxid = index.lastZxid;
+        transactionCount = index.transactionCount;
+        endOffset = index.endOffset;
+        endState = index.endState;
+
+    }
+
+    void addCheckpoint(long zxid, long offset, long time) {
+
+        addCheckpoint(zxid, offset, time, time);
+
+    }
+
+    private void addCheckpoint(long zxid, long offset, long minTime, long maxTime) {
+
+        if (checkpointCount == zxids.length) {
+            zxids = copyOf(zxids, checkpointCount * 2);
+            offsets = copyOf(offsets, checkpointCount * 2);
+            minTimes = copyOf(minTimes, checkpointCount * 2);
+            maxTimes = copyOf(maxTimes, checkpointCount * 2);
+        }
+
+        zxids[checkpointCount] = zxid;
+        offsets[checkpointCount] = offset;
+        minTimes[checkpointCount] = minTime;
+        maxTimes[checkpointCount] = maxTime;
+        checkpointCount++;
+
+    }
+
+    //widens time range of last checkpoint with transaction behind it
+    void addTime(long time) {
+
+        int last = checkpointCount - 1;
+
+        if (time < minTimes[last]) {
+            minTimes[last] = time;
+        }
+
+        if (time > maxTimes[last]) {
+            maxTimes[last] = time;
+        }
+
+    }
+
+    void setLastTransaction(long zxid, long transactionCount) {
+
+        this.lastZxid = zxid;
+        this.transactionCount = transactionCount;
+
+    }
+
+    void setEnd(long endOffset, TransactionState endState) {
+
+        this.endOffset = endOffset;
+        this.endState = endState;
+
+    }
+
+    void setFingerprint(long fingerprint) {
+
+        this.fingerprint = fingerprint;
+
+    }
+
+    /**
+     *
+     * @param transactionLogFile Transaction log file this index was built
+     * for.
+     * @return <code>true</code> if length and modification time of
+     * <code>transactionLogFile</code> did not change since index was built and
+     * its indexed part still matches fingerprint.
+     */
+    public boolean isUpToDate(File transactionLogFile) {
+
+        return transactionLogFile.length() == fileLength
+                && transactionLogFile.lastModified() == lastModified
+                && isIndexOf(transactionLogFile);
+
+    }
+
+    /**
+     * Checks fingerprint of indexed part of <code>transactionLogFile</code>.
+     * Transaction log files are only appended to, so this holds even after
+     * file grows.
+     *
+     * @param transactionLogFile Transaction log file this index was built
+     * for.
+     * @return <code>true</code> if first and last bytes of indexed part of
+     * <code>transactionLogFile</code> are same as when index was built.
+     */
+    public boolean isIndexOf(File transactionLogFile) {
+
+        try {
+            return fingerprint(transactionLogFile, endOffset) == fingerprint;
+        } catch (IOException e) {
+            return false;
+        }
+
+    }
+
+    /**
+     * Returns offset from which transaction log file should be read to reach
+     * transaction with <code>zxid</code>. That is offset of last checkpoint
+     * with zxid lower or equal to <code>zxid</code>. If <code>zxid</code> is
+     * higher than zxid of last indexed transaction, end offset is returned.
+     *
+     * @param zxid Zxid of transaction to seek to.
+     * @return Offset of transaction in transaction log file.
+     */
+    public long getOffset(long zxid) {
+
+        if (zxid > lastZxid || checkpointCount == 0) {
+            return endOffset;
+        }
+
+        int i = floorCheckpoint(zxid);
+
+        return i >= 0 ? offsets[i] : offsets[0];
+
+    }
+
+    /**
+     *
+     * @param zxid Zxid to search for.
+     * @return Index of last checkpoint with zxid lower or equal to
+     * <code>zxid</code>, or -1 if there is no such checkpoint.
+     */
+    public int floorCheckpoint(long zxid) {
+
+        int i = binarySearch(zxids, 0, checkpointCount, zxid);
+
+        return i >= 0 ? i : -i - 2;
+
+    }
+
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    public long getCheckpointZxid(int checkpoint) {
+        return zxids[checkpoint];
+    }
+
+    public long getCheckpointOffset(int checkpoint) {
+        return offsets[checkpoint];
+    }
+
+    /**
+     *
+     * @param checkpoint Checkpoint.
+     * @return Lowest time of transactions from <code>checkpoint</code> up to
+     * next checkpoint.
+     */
+    public long getCheckpointMinTime(int checkpoint) {
+        return minTimes[checkpoint];
+    }
+
+    /**
+     *
+     * @param checkpoint Checkpoint.
+     * @return Highest time of transactions from <code>checkpoint</code> up to
+     * next checkpoint.
+     */
+    public long getCheckpointMaxTime(int checkpoint) {
+        return maxTimes[checkpoint];
+    }
+
+    /**
+     *
+     * @param checkpoint Checkpoint.
+     * @return Highest zxid that can belong to transactions from
+     * <code>checkpoint</code> up to next checkpoint.
+     */
+    public long getCheckpointLastZxid(int checkpoint) {
+        return checkpoint + 1 < checkpointCount ? zxids[checkpoint + 1] - 1 : lastZxid;
+    }
+
+    /**
+     *
+     * @return Zxid of first transaction in file, or -1 if there are no
+     * transactions.
+     */
+    public long getFirstZxid() {
+        return checkpointCount > 0 ? zxids[0] : -1;
+    }
+
+    /**
+     *
+     * @return Zxid of last indexed transaction, or -1 if there are no
+     * transactions.
+     */
+    public long getLastZxid() {
+        return lastZxid;
+    }
+
+    /**
+     *
+     * @return Number of indexed transactions.
+     */
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     *
+     * @return Offset right after last indexed transaction.
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     *
+     * @return <code>TransactionState</code> of transaction at end offset when
+     * index was built.
+     */
+    public TransactionState getEndState() {
+        return endState;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Writes index to <code>indexFile</code>. Index is first written to
+     * temporary file which is then renamed, so readers never see partially
+     * written index.
+     *
+     * @param indexFile File to write index to.
+     * @throws IOException Thrown if there is a problem with writing index.
+     */
+    public void write(File indexFile) throws IOException {
+
+        File temp = new File(indexFile.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+
+            //restricted before anything is written, rename keeps permissions
+            setOwnerOnly(temp);
+
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeLong(fingerprint);
+            out.writeLong(lastZxid);
+            out.writeLong(transactionCount);
+            out.writeLong(endOffset);
+            out.writeInt(endState.ordinal());
+            out.writeInt(checkpointCount);
+
+            for (int i = 0; i < checkpointCount; i++) {
+                out.writeLong(zxids[i]);
+                out.writeLong(offsets[i]);
+                out.writeLong(minTimes[i]);
+                out.writeLong(maxTimes[i]);
+            }
+
+        }
+
+        if (!temp.renameTo(indexFile)) {
+
+            indexFile.delete();
+
+            if (!temp.renameTo(indexFile)) {
+                throw new IOException("Problem with renaming " + temp + " to " + indexFile);
+            }
+        }
+
+    }
+
+    /**
+     * Reads index previously written with <code>write()</code>.
+     *
+     * @param indexFile File to read index from.
+     * @return Index read from <code>indexFile</code>.
+     * @throws IOException Thrown if there is a problem with reading index or
+     * file is not an index.
+     */
+    public static TransactionLogIndex read(File indexFile) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                throw new IOException("Not an index file or unsupported version: " + indexFile);
+            }
+
+            TransactionLogIndex index = new TransactionLogIndex(in.readLong(), in.readLong());
+            index.setFingerprint(in.readLong());
+
+            long lastZxid = in.readLong();
+            long transactionCount = in.readLong();
+            index.setLastTransaction(lastZxid, transactionCount);
+
+            long endOffset = in.readLong();
+            int endState = in.readInt();
+
+            if (endState < 0 || endState >= TransactionState.values().length) {
+                throw new IOException("Index file corrupted: " + indexFile);
+            }
+
+            index.setEnd(endOffset, TransactionState.values()[endState]);
+
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                index.addCheckpoint(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            }
+
+            return index;
+
+        }
+
+    }
+
+    /**
+     * Computes fingerprint of first <code>endOffset</code> bytes of
+     * <code>file</code>. Only bytes at beginning and at end of that range are
+     * read, so fingerprint is cheap even for large files.
+     *
+     * @param file File to compute fingerprint of.
+     * @param endOffset End of range covered by fingerprint.
+     * @return Fingerprint of range.
+     * @throws IOException Thrown if there is a problem with reading
+     * <code>file</code> or it is shorter than <code>endOffset</code>.
+     */
+    static long fingerprint(File file, long endOffset) throws IOException {
+
+        CRC32 crc = new CRC32();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            int headLength = (int) Math.min(endOffset, FINGERPRINT_BYTES);
+            byte[] head = new byte[headLength];
+            raf.readFully(head);
+            crc.update(head);
+
+            long tailStart = Math.max(headLength, endOffset - FINGERPRINT_BYTES);
+            byte[] tail = new byte[(int) (endOffset - tailStart)];
+            raf.seek(tailStart);
+            raf.readFully(tail);
+            crc.update(tail);
+
+        }
+
+        crc.update(wrap(new byte[8]).putLong(0, endOffset).array());
+
+        return crc.getValue();
+
+    }
+
+    /**
+     * Makes <code>file</code> readable, writable and, if it is directory,
+     * accessible only by its owner.
+     *
+     * @param file File or directory.
+     * @return <code>true</code> if permissions were changed.
+     */
+    static boolean setOwnerOnly(File file) {
+
+        boolean changed = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true);
+
+        if (file.isDirectory()) {
+            changed = changed && file.setExecutable(false, false) && file.setExecutable(true, true);
+        }
+
+        return changed;
+
+    }
+
+}
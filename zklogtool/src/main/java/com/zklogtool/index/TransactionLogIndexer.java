@@ -0,0 +1,320 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.index;
+
+import com.zklogtool.data.Transaction;
+import com.zklogtool.data.TransactionState;
+import com.zklogtool.reader.CRCValidationException;
+import com.zklogtool.reader.IncompleteTransactionException;
+import com.zklogtool.reader.TransactionLogFileReader;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import java.io.File;
+import java.io.IOException;
+import static java.lang.System.getProperty;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Builds, stores and loads <code>TransactionLogIndex</code>es. Indexes are
+ * stored in index directory, one index file per transaction log file, so
+ * Zookeeper data directories are never written to.
+ * <br>
+ * Stored index is used as long as length, modification time and
+ * fingerprint of transaction log file match those recorded in index.
+ * Transaction log files are only appended to, so when transaction log file
+ * changes its index is extended from last indexed transaction instead of
+ * being built again.
+ * <br>
+ * Index directory and index files are accessible only by their owner.
+ *
+ */
+public class TransactionLogIndexer {
+
+    private static Logger logger = getLogger(TransactionLogIndexer.class);
+
+    /**
+     * Default number of transactions between two checkpoints.
+     */
+    public final static int DEFAULT_INTERVAL = 1000;
+
+    private final File indexDir;
+    private final int interval;
+
+    /**
+     * Constructs indexer that stores indexes in <i>.zklogtool/index</i>
+     * directory inside user home directory.
+     *
+     */
+    public TransactionLogIndexer() {
+
+        this(new File(new File(getProperty("user.home"), ".zklogtool"), "index"), DEFAULT_INTERVAL);
+
+    }
+
+    /**
+     *
+     * @param indexDir Directory where indexes are stored. It is created if it
+     * does not exist.
+     * @param interval Number of transactions between two checkpoints.
+     */
+    public TransactionLogIndexer(File indexDir, int interval) {
+
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+
+        this.indexDir = indexDir;
+        this.interval = interval;
+
+    }
+
+    /**
+     * Returns up to date index of <code>transactionLogFile</code>. Stored
+     * index is returned if it is up to date, otherwise index is built or
+     * extended and stored.
+     *
+     * @param transactionLogFile Transaction log file.
+     * @param factory <code>TransactionLogReaderFactory</code> used to read
+     * <code>transactionLogFile</code>.
+     * @return Up to date index of <code>transactionLogFile</code>.
+     * @throws IOException Thrown if there is a problem with reading
+     * <code>transactionLogFile</code>.
+     */
+    public TransactionLogIndex getIndex(File transactionLogFile, TransactionLogReaderFactory factory) throws IOException {
+
+        File indexFile = getIndexFile(transactionLogFile);
+        TransactionLogIndex index = null;
+
+        if (indexFile.isFile()) {
+
+            try {
+                index = TransactionLogIndex.read(indexFile);
+            } catch (IOException e) {
+                logger.warn("Problem reading index file " + indexFile, e);
+            }
+
+            if (index != null && index.isUpToDate(transactionLogFile)) {
+                return index;
+            }
+
+        }
+
+        index = buildIndex(transactionLogFile, factory, index);
+
+        try {
+
+            if (indexDir.isDirectory() || createIndexDir()) {
+                index.write(indexFile);
+            }
+
+        } catch (IOException e) {
+            logger.warn("Problem writing index file " + indexFile, e);
+        }
+
+        return index;
+
+    }
+
+    /**
+     * Returns stored index of <code>transactionLogFile</code> only if it is up
+     * to date. Index is never built, so this is cheap enough to be used for
+     * optional optimizations.
+     *
+     * @param transactionLogFile Transaction log file.
+     * @return Up to date stored index, or <code>null</code> if there is none.
+     */
+    public TransactionLogIndex getStoredIndex(File transactionLogFile) {
+
+        File indexFile = getIndexFile(transactionLogFile);
+
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try {
+
+            TransactionLogIndex index = TransactionLogIndex.read(indexFile);
+
+            return index.isUpToDate(transactionLogFile) ? index : null;
+
+        } catch (IOException e) {
+
+            logger.warn("Problem reading index file " + indexFile, e);
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Builds index of <code>transactionLogFile</code>. If
+     * <code>previous</code> index is provided and it is still valid prefix of
+     * <code>transactionLogFile</code>, only transactions after it are read.
+     *
+     * @param transactionLogFile Transaction log file.
+     * @param factory <code>TransactionLogReaderFactory</code> used to read
+     * <code>transactionLogFile</code>.
+     * @param previous Outdated index of <code>transactionLogFile</code> or
+     * <code>null</code>.
+     * @return Index of <code>transactionLogFile</code>.
+     * @throws IOException Thrown if there is a problem with reading
+     * <code>transactionLogFile</code>.
+     */
+    public TransactionLogIndex buildIndex(File transactionLogFile, TransactionLogReaderFactory factory, TransactionLogIndex previous) throws IOException {
+
+        //take file attributes before reading so any later change makes index outdated
+        long fileLength = transactionLogFile.length();
+        long lastModified = transactionLogFile.lastModified();
+
+        TransactionLogIndex index;
+
+        try (TransactionLogFileReader reader = factory.getReader(transactionLogFile)) {
+
+            if (isExtendable(previous, reader, fileLength)) {
+
+                index = new TransactionLogIndex(previous, fileLength, lastModified);
+                reader.seek(previous.getEndOffset());
+
+            } else {
+
+                index = new TransactionLogIndex(fileLength, lastModified);
+                reader.reset();
+
+            }
+
+            long lastZxid = index.getLastZxid();
+            long count = index.getTransactionCount();
+            TransactionState endState = TransactionState.EMPTY;
+
+            while (true) {
+
+                long offset = reader.getPosition();
+                Transaction t;
+
+                try {
+                    t = reader.getNextTransaction();
+                } catch (IncompleteTransactionException e) {
+                    endState = TransactionState.INCOMPLETE;
+                    break;
+                } catch (CRCValidationException e) {
+                    endState = TransactionState.CORRUPTION;
+                    break;
+                }
+
+                if (t == null) {
+                    break;
+                }
+
+                lastZxid = t.getTxnHeader().getZxid();
+
+                if (count % interval == 0) {
+                    index.addCheckpoint(lastZxid, offset, t.getTxnHeader().getTime());
+                } else {
+                    index.addTime(t.getTxnHeader().getTime());
+                }
+
+                count++;
+
+            }
+
+            index.setLastTransaction(lastZxid, count);
+            index.setEnd(reader.getPosition(), endState);
+
+        }
+
+        index.setFingerprint(TransactionLogIndex.fingerprint(transactionLogFile, index.getEndOffset()));
+
+        return index;
+
+    }
+
+    /**
+     *
+     * @param transactionLogFile Transaction log file.
+     * @return File in index directory where index of
+     * <code>transactionLogFile</code> is stored.
+     */
+    public File getIndexFile(File transactionLogFile) {
+
+        String path = transactionLogFile.getAbsolutePath();
+
+        return new File(indexDir, transactionLogFile.getName() + "-" + Integer.toHexString(path.hashCode()) + ".idx");
+
+    }
+
+    /*
+
+     Parent directories are created with default permissions, only index
+     directory itself is restricted.
+
+     */
+    private boolean createIndexDir() {
+
+        if (!indexDir.mkdirs()) {
+            return false;
+        }
+
+        if (!TransactionLogIndex.setOwnerOnly(indexDir)) {
+            logger.warn("Problem restricting permissions of index directory " + indexDir);
+        }
+
+        return true;
+
+    }
+
+    public File getIndexDir() {
+        return indexDir;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /*
+
+     Previous index can be extended if file did not shrink, its indexed part
+     still matches fingerprint and last checkpoint still points to same
+     transaction.
+
+     */
+    private boolean isExtendable(TransactionLogIndex previous, TransactionLogFileReader reader, long fileLength) throws IOException {
+
+        if (previous == null || previous.getCheckpointCount() == 0 || fileLength < previous.getFileLength()) {
+            return false;
+        }
+
+        if (!previous.isIndexOf(reader.getTransactionLogFile())) {
+            return false;
+        }
+
+        int last = previous.getCheckpointCount() - 1;
+
+        try {
+
+            reader.seek(previous.getCheckpointOffset(last));
+            Transaction t = reader.getNextTransaction();
+
+            return t != null && t.getTxnHeader().getZxid() == previous.getCheckpointZxid(last);
+
+        } catch (IOException e) {
+
+            return false;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,400 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.Transaction;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * <code>TransactionListener</code> that hands notifications over to another
+ * listener in its own thread, so slow listener does not stall monitor thread
+ * and other listeners. Notifications are kept in bounded queue and
+ * <code>OverflowPolicy</code> decides what happens when queue is full.
+ * <br>
+ * Queue depth, lag and number of dropped transactions can be read at any time
+ * to see whether listener keeps up.
+ *
+ */
+public class AsyncTransactionListener implements TransactionListener {
+
+    private static Logger logger = getLogger(AsyncTransactionListener.class);
+
+    /**
+     * Default queue capacity.
+     */
+    public final static int DEFAULT_CAPACITY = 10000;
+
+    private final static int TRANSACTION = 0;
+    private final static int PARTIAL_TRANSACTION = 1;
+    private final static int CORRUPTION = 2;
+
+    private final TransactionListener listener;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Event> queue = new ArrayDeque<>();
+    private int queuedTransactions;
+    private boolean closed;
+
+    private volatile long droppedCount;
+    private volatile long deliveredCount;
+    private volatile long lastDeliveredZxid = -1;
+    private volatile long lastQueuedZxid = -1;
+
+    private final Thread dispatchThread = new Thread() {
+
+        @Override
+        public void run() {
+
+            Event event;
+
+            while ((event = take()) != null) {
+
+                try {
+
+                    switch (event.type) {
+                        case TRANSACTION:
+                            listener.onTransaction(event.transaction);
+                            lastDeliveredZxid = event.transaction.getTxnHeader().getZxid();
+                            break;
+                        case PARTIAL_TRANSACTION:
+                            listener.onPartialTransaction();
+                            break;
+                        case CORRUPTION:
+                            listener.onCorruption();
+                            break;
+                    }
+
+                } catch (RuntimeException e) {
+                    logger.error("Listener " + listener + " failed", e);
+                }
+
+                deliveredCount++;
+
+            }
+
+        }
+
+    };
+
+    /**
+     *
+     * @param listener Listener that notifications are handed over to.
+     */
+    public AsyncTransactionListener(TransactionListener listener) {
+
+        this(listener, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+
+    }
+
+    /**
+     *
+     * @param listener Listener that notifications are handed over to.
+     * @param capacity Maximum number of queued transactions.
+     * @param policy What to do with new transaction when queue is full.
+     */
+    public AsyncTransactionListener(TransactionListener listener, int capacity, OverflowPolicy policy) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.listener = listener;
+        this.capacity = capacity;
+        this.policy = policy;
+
+        dispatchThread.setName("TransactionListener dispatch thread");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+
+    }
+
+    @Override
+    public void onTransaction(Transaction t) {
+
+        lock.lock();
+
+        try {
+
+            if (closed) {
+                return;
+            }
+
+            while (queuedTransactions >= capacity) {
+
+                if (policy == OverflowPolicy.BLOCK) {
+
+                    if (closed) {
+                        return;
+                    }
+
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        //keep transaction even over capacity, monitor is probably stopping
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+
+                } else {
+
+                    dropTransactions(policy == OverflowPolicy.DROP_OLDEST ? 1 : queuedTransactions);
+
+                }
+
+            }
+
+            queue.add(new Event(TRANSACTION, t));
+            queuedTransactions++;
+            lastQueuedZxid = t.getTxnHeader().getZxid();
+            notEmpty.signal();
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    @Override
+    public void onPartialTransaction() {
+
+        signal(PARTIAL_TRANSACTION);
+
+    }
+
+    @Override
+    public void onCorruption() {
+
+        signal(CORRUPTION);
+
+    }
+
+    /**
+     * Stops accepting notifications. Dispatch thread delivers already queued
+     * notifications and exits.
+     *
+     */
+    public void close() {
+
+        lock.lock();
+
+        try {
+
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Waits for dispatch thread to deliver queued notifications after
+     * <code>close()</code>.
+     *
+     * @param millis Maximum time to wait in milliseconds.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    public void awaitTermination(long millis) throws InterruptedException {
+
+        dispatchThread.join(millis);
+
+    }
+
+    /**
+     *
+     * @return Number of notifications waiting in queue.
+     */
+    public int getQueueDepth() {
+
+        lock.lock();
+
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     *
+     * @return Milliseconds that oldest queued notification is waiting, or 0 if
+     * queue is empty.
+     */
+    public long getLagMillis() {
+
+        lock.lock();
+
+        try {
+
+            Event oldest = queue.peek();
+
+            return oldest != null ? (System.nanoTime() - oldest.queuedAt) / 1000000 : 0;
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     *
+     * @return Difference between zxid of last queued and last delivered
+     * transaction.
+     */
+    public long getZxidLag() {
+        return lastQueuedZxid - lastDeliveredZxid;
+    }
+
+    /**
+     *
+     * @return Number of transactions dropped because of full queue.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     *
+     * @return Number of notifications delivered to listener.
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public long getLastDeliveredZxid() {
+        return lastDeliveredZxid;
+    }
+
+    public TransactionListener getListener() {
+        return listener;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    private void signal(int type) {
+
+        lock.lock();
+
+        try {
+
+            if (closed) {
+                return;
+            }
+
+            if (policy == OverflowPolicy.COALESCE) {
+
+                for (Event e : queue) {
+                    if (e.type == type) {
+                        return;
+                    }
+                }
+
+            }
+
+            //signals do not count against capacity so they are never lost
+            queue.add(new Event(type, null));
+            notEmpty.signal();
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    private void dropTransactions(int count) {
+
+        Iterator<Event> i = queue.iterator();
+
+        while (count > 0 && i.hasNext()) {
+
+            if (i.next().type == TRANSACTION) {
+
+                i.remove();
+                queuedTransactions--;
+                droppedCount++;
+                count--;
+
+            }
+
+        }
+
+    }
+
+    private Event take() {
+
+        lock.lock();
+
+        try {
+
+            while (queue.isEmpty()) {
+
+                if (closed) {
+                    return null;
+                }
+
+                notEmpty.awaitUninterruptibly();
+
+            }
+
+            Event event = queue.poll();
+
+            if (event.type == TRANSACTION) {
+                queuedTransactions--;
+                notFull.signal();
+            }
+
+            return event;
+
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    private static class Event {
+
+        final int type;
+        final Transaction transaction;
+        final long queuedAt = System.nanoTime();
+
+        Event(int type, Transaction transaction) {
+
+            this.type = type;
+            this.transaction = transaction;
+
+        }
+
+    }
+
+}
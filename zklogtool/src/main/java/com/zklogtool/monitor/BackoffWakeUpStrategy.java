@@ -0,0 +1,111 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+/**
+ * <code>WakeUpStrategy</code> that sleeps shortly while transactions are being
+ * written and doubles sleep period, up to maximum, each time nothing new is
+ * found. Active transaction log is checked often without wasting CPU on idle
+ * one.
+ *
+ */
+public class BackoffWakeUpStrategy implements WakeUpStrategy {
+
+    /**
+     * Default minimum sleep period in milliseconds.
+     */
+    public final static long DEFAULT_MIN_PERIOD = 1;
+
+    /**
+     * Default maximum sleep period in milliseconds.
+     */
+    public final static long DEFAULT_MAX_PERIOD = 100;
+
+    private final long minPeriod;
+    private final long maxPeriod;
+    private long period;
+    private final Sleeper sleeper = new Sleeper();
+
+    public BackoffWakeUpStrategy() {
+
+        this(DEFAULT_MIN_PERIOD, DEFAULT_MAX_PERIOD);
+
+    }
+
+    /**
+     *
+     * @param minPeriod Sleep period in milliseconds after new transactions
+     * were found.
+     * @param maxPeriod Maximum sleep period in milliseconds.
+     */
+    public BackoffWakeUpStrategy(long minPeriod, long maxPeriod) {
+
+        if (minPeriod <= 0 || maxPeriod < minPeriod) {
+            throw new IllegalArgumentException("Invalid backoff periods " + minPeriod + ", " + maxPeriod);
+        }
+
+        this.minPeriod = minPeriod;
+        this.maxPeriod = maxPeriod;
+        this.period = minPeriod;
+
+    }
+
+    @Override
+    public void await(boolean progress) throws InterruptedException {
+
+        sleeper.sleep(nextPeriod(progress));
+
+    }
+
+    @Override
+    public void wakeUp() {
+
+        sleeper.wakeUp();
+
+    }
+
+    /**
+     *
+     * @param progress <code>true</code> if last check found something new.
+     * @return Period to sleep for.
+     */
+    long nextPeriod(boolean progress) {
+
+        if (progress) {
+            period = minPeriod;
+        } else {
+            period = Math.min(period * 2, maxPeriod);
+        }
+
+        return period;
+
+    }
+
+    @Override
+    public void close() {
+
+        //nothing to release
+    }
+
+    public long getMinPeriod() {
+        return minPeriod;
+    }
+
+    public long getMaxPeriod() {
+        return maxPeriod;
+    }
+
+}
@@ -0,0 +1,53 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.Transaction;
+import java.util.List;
+
+/**
+ * <code>BatchTransactionListener</code> interface is used to notify
+ * implementers about transactions in batches. <code>TransactionMonitor</code>
+ * hands over all transactions it can currently read, up to maximum batch size,
+ * in single call, which is much cheaper than one call per transaction for
+ * listeners that write to files or sockets.
+ *
+ */
+public interface BatchTransactionListener {
+
+    /**
+     * Called when transactions are entirely written to transaction log.
+     *
+     * @param transactions Unmodifiable list of <code>Transaction</code>s in
+     * order in which they were written to transaction log files. It is never
+     * empty.
+     */
+    void onTransactions(List<Transaction> transactions);
+
+    /**
+     * Called when transaction is not entirely written to transaction log file.
+     *
+     */
+    void onPartialTransaction();
+
+    /**
+     * Called when there is corruption detected while reading transaction log
+     * file.
+     *
+     */
+    void onCorruption();
+
+}
@@ -0,0 +1,75 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.Transaction;
+import java.io.File;
+
+/**
+ * Position in transaction log right behind delivered transaction. It holds
+ * zxid of transaction, transaction log file it was read from and offset right
+ * behind it, which is enough to resume reading with direct seek.
+ *
+ */
+public class Checkpoint {
+
+    private final long zxid;
+    private final File transactionLogFile;
+    private final long offset;
+
+    /**
+     *
+     * @param zxid Zxid of delivered transaction.
+     * @param transactionLogFile Transaction log file transaction was read from.
+     * @param offset Offset in transaction log file right behind transaction.
+     */
+    public Checkpoint(long zxid, File transactionLogFile, long offset) {
+
+        this.zxid = zxid;
+        this.transactionLogFile = transactionLogFile;
+        this.offset = offset;
+
+    }
+
+    /**
+     *
+     * @param t Transaction read from <code>TransactionLog</code>.
+     * @return Checkpoint right behind <code>t</code>.
+     */
+    public static Checkpoint after(Transaction t) {
+
+        return new Checkpoint(t.getTxnHeader().getZxid(), t.getTransactionLogFile(), t.getNextOffset());
+
+    }
+
+    public long getZxid() {
+        return zxid;
+    }
+
+    public File getTransactionLogFile() {
+        return transactionLogFile;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" + "zxid=0x" + Long.toHexString(zxid) + ", transactionLogFile=" + transactionLogFile + ", offset=" + offset + '}';
+    }
+
+}
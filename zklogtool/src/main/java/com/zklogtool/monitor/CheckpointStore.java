@@ -0,0 +1,204 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.Transaction;
+import static com.zklogtool.util.Util.parseZxid;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Keeps <code>Checkpoint</code> of last delivered transaction in properties
+ * file, so process that follows transaction log can resume where it stopped
+ * after restart with <code>TransactionMonitor.startAtCheckpoint()</code>.
+ * <br>
+ * <code>update()</code> only remembers checkpoint in memory, and it is written
+ * to file at most once per flush interval or when <code>flush()</code> is
+ * called. File is first written to temporary file which is then renamed, so
+ * stored checkpoint is never partially written. Transactions delivered after
+ * last flush are delivered again after restart, so delivery is at least once.
+ *
+ */
+public class CheckpointStore {
+
+    /**
+     * Default flush interval in milliseconds.
+     */
+    public final static long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private final static String ZXID = "zxid";
+    private final static String FILE = "file";
+    private final static String OFFSET = "offset";
+
+    private final File checkpointFile;
+    private final long flushInterval;
+
+    private Checkpoint checkpoint;
+    private boolean dirty;
+    private long lastFlush;
+
+    /**
+     *
+     * @param checkpointFile File where checkpoint is stored.
+     */
+    public CheckpointStore(File checkpointFile) {
+
+        this(checkpointFile, DEFAULT_FLUSH_INTERVAL);
+
+    }
+
+    /**
+     *
+     * @param checkpointFile File where checkpoint is stored.
+     * @param flushInterval Minimum time in milliseconds between two writes of
+     * checkpoint file. If 0, checkpoint is written on every update.
+     */
+    public CheckpointStore(File checkpointFile, long flushInterval) {
+
+        this.checkpointFile = checkpointFile;
+        this.flushInterval = flushInterval;
+
+    }
+
+    /**
+     * Reads stored checkpoint.
+     *
+     * @return Stored checkpoint or <code>null</code> if there is no checkpoint
+     * file.
+     * @throws IOException Thrown if there is a problem with reading checkpoint
+     * file or it is not valid.
+     */
+    public synchronized Checkpoint load() throws IOException {
+
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+
+        Properties prop = new Properties();
+
+        try (InputStream in = new FileInputStream(checkpointFile)) {
+            prop.load(in);
+        }
+
+        try {
+
+            checkpoint = new Checkpoint(parseZxid(prop.getProperty(ZXID)),
+                    prop.containsKey(FILE) ? new File(prop.getProperty(FILE)) : null,
+                    Long.parseLong(prop.getProperty(OFFSET, "-1")));
+
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("Checkpoint file not valid: " + checkpointFile, e);
+        }
+
+        dirty = false;
+
+        return checkpoint;
+
+    }
+
+    /**
+     * Remembers checkpoint behind <code>t</code>. Checkpoint file is written if
+     * flush interval passed since it was last written.
+     *
+     * @param t Delivered transaction.
+     * @throws IOException Thrown if there is a problem with writing checkpoint
+     * file.
+     */
+    public void update(Transaction t) throws IOException {
+
+        update(Checkpoint.after(t));
+
+    }
+
+    /**
+     * Remembers <code>checkpoint</code>. Checkpoint file is written if flush
+     * interval passed since it was last written.
+     *
+     * @param checkpoint Checkpoint of delivered transaction.
+     * @throws IOException Thrown if there is a problem with writing checkpoint
+     * file.
+     */
+    public synchronized void update(Checkpoint checkpoint) throws IOException {
+
+        this.checkpoint = checkpoint;
+        dirty = true;
+
+        if (System.currentTimeMillis() - lastFlush >= flushInterval) {
+            flush();
+        }
+
+    }
+
+    /**
+     * Writes remembered checkpoint to checkpoint file if it changed since
+     * last write.
+     *
+     * @throws IOException Thrown if there is a problem with writing checkpoint
+     * file.
+     */
+    public synchronized void flush() throws IOException {
+
+        if (!dirty) {
+            return;
+        }
+
+        Properties prop = new Properties();
+        prop.setProperty(ZXID, "0x" + Long.toHexString(checkpoint.getZxid()));
+        prop.setProperty(OFFSET, Long.toString(checkpoint.getOffset()));
+
+        if (checkpoint.getTransactionLogFile() != null) {
+            prop.setProperty(FILE, checkpoint.getTransactionLogFile().getAbsolutePath());
+        }
+
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+
+        try (OutputStream out = new FileOutputStream(temp)) {
+            prop.store(out, "zklogtool checkpoint");
+        }
+
+        if (!temp.renameTo(checkpointFile)) {
+
+            checkpointFile.delete();
+
+            if (!temp.renameTo(checkpointFile)) {
+                throw new IOException("Problem with renaming " + temp + " to " + checkpointFile);
+            }
+        }
+
+        dirty = false;
+        lastFlush = System.currentTimeMillis();
+
+    }
+
+    /**
+     *
+     * @return Last remembered checkpoint, or <code>null</code> if there is
+     * none.
+     */
+    public synchronized Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+}
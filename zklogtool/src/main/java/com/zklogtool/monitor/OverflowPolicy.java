@@ -0,0 +1,42 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+/**
+ * What <code>AsyncTransactionListener</code> does with new transaction when
+ * its queue is full. Partial transaction and corruption notifications are
+ * never dropped.
+ *
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Monitor thread waits until listener makes room in queue. No transaction
+     * is lost, but slow listener slows down monitoring.
+     */
+    BLOCK,
+    /**
+     * Oldest queued transaction is dropped to make room for new one.
+     */
+    DROP_OLDEST,
+    /**
+     * All queued transactions are dropped and only new one is kept, so
+     * listener catches up to latest transaction at once. Repeated partial
+     * transaction and corruption notifications are merged into one.
+     */
+    COALESCE
+
+}
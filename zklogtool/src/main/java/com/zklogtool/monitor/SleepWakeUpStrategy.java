@@ -0,0 +1,73 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+/**
+ * <code>WakeUpStrategy</code> that always sleeps for fixed period. This is
+ * default strategy of <code>TransactionMonitor</code>.
+ *
+ */
+public class SleepWakeUpStrategy implements WakeUpStrategy {
+
+    /**
+     * Default sleep period in milliseconds.
+     */
+    public final static long DEFAULT_PERIOD = 50;
+
+    private final long period;
+    private final Sleeper sleeper = new Sleeper();
+
+    public SleepWakeUpStrategy() {
+
+        this(DEFAULT_PERIOD);
+
+    }
+
+    /**
+     *
+     * @param period Sleep period in milliseconds.
+     */
+    public SleepWakeUpStrategy(long period) {
+
+        this.period = period;
+
+    }
+
+    @Override
+    public void await(boolean progress) throws InterruptedException {
+
+        sleeper.sleep(period);
+
+    }
+
+    @Override
+    public void wakeUp() {
+
+        sleeper.wakeUp();
+
+    }
+
+    @Override
+    public void close() {
+
+        //nothing to release
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+}
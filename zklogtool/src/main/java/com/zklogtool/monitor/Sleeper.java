@@ -0,0 +1,58 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+/**
+ * Sleep that can be ended from other thread. Used by sleeping
+ * <code>WakeUpStrategy</code>s instead of <code>Thread.sleep()</code>, so
+ * monitor thread is never interrupted. Interrupt would close
+ * <code>FileChannel</code> of transaction log file being read.
+ *
+ */
+class Sleeper {
+
+    private boolean woken;
+
+    /**
+     * Sleeps for <code>period</code> or until <code>wakeUp()</code> is
+     * called. Returns immediately once <code>wakeUp()</code> was called.
+     *
+     * @param period Sleep period in milliseconds.
+     * @throws InterruptedException Thrown if interrupted while sleeping.
+     */
+    synchronized void sleep(long period) throws InterruptedException {
+
+        long end = System.currentTimeMillis() + period;
+        long remaining = period;
+
+        //wait() can return spuriously
+        while (!woken && remaining > 0) {
+
+            wait(remaining);
+            remaining = end - System.currentTimeMillis();
+
+        }
+
+    }
+
+    synchronized void wakeUp() {
+
+        woken = true;
+        notifyAll();
+
+    }
+
+}
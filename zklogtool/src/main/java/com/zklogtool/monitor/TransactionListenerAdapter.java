@@ -0,0 +1,68 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.Transaction;
+import java.util.List;
+
+/**
+ * Adapts <code>TransactionListener</code> to
+ * <code>BatchTransactionListener</code> by calling
+ * <code>onTransaction()</code> for each transaction in batch.
+ *
+ */
+public class TransactionListenerAdapter implements BatchTransactionListener {
+
+    private final TransactionListener listener;
+
+    /**
+     *
+     * @param listener Listener to notify about each transaction.
+     */
+    public TransactionListenerAdapter(TransactionListener listener) {
+
+        this.listener = listener;
+
+    }
+
+    @Override
+    public void onTransactions(List<Transaction> transactions) {
+
+        for (Transaction t : transactions) {
+            listener.onTransaction(t);
+        }
+
+    }
+
+    @Override
+    public void onPartialTransaction() {
+
+        listener.onPartialTransaction();
+
+    }
+
+    @Override
+    public void onCorruption() {
+
+        listener.onCorruption();
+
+    }
+
+    public TransactionListener getListener() {
+        return listener;
+    }
+
+}
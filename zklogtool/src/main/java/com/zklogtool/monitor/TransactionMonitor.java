@@ -19,14 +19,25 @@ import com.zklogtool.data.Transaction;
 import com.zklogtool.data.TransactionIterator;
 import com.zklogtool.data.TransactionLog;
 import com.zklogtool.data.TransactionState;
+import static com.zklogtool.util.Util.closeQuietly;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
+import static java.util.Collections.unmodifiableList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
 
 /**
  * <code>TransactionMonitor</code> watches <code>TransactionLog</code> for new
  * transactions and notifies its listeners. <code>TransactionMonitor</code> runs
- * in its own thread and periodically checks <code>TransactionLog</code> for any
- * new transactions.
+ * in its own thread and checks <code>TransactionLog</code> for any new
+ * transactions whenever its <code>WakeUpStrategy</code> wakes it up. By default
+ * it checks every 50 milliseconds (<code>SleepWakeUpStrategy</code>).
+ * <code>WatchWakeUpStrategy</code> wakes it up as soon as transaction log
+ * directory is written to and <code>BackoffWakeUpStrategy</code> adapts
+ * checking period to write rate.
  * <br>
  * <code>TransactionMonitor</code> can be started in two ways:
  * <br>
@@ -35,16 +46,49 @@ import java.util.List;
  * monitoring - <code>startAtFirstTransaction()</code></li>
  * <li>notify listeners only about transaction that were not written before
  * monitoring started - <code>startAtLastTransaction()</code></li>
+ * <li>notify listeners about transactions written after transaction stored in
+ * <code>CheckpointStore</code> - <code>startAtCheckpoint()</code></li>
  * </ul>
+ * If <code>CheckpointStore</code> is set, monitor updates it after every batch
+ * of transactions is handed over to listeners.
+ * <br>
+ * Listeners added with <code>addListener()</code> are notified on monitor
+ * thread, one after another. Listeners added with
+ * <code>addAsyncListener()</code> get their own queue and thread, so slow
+ * listener does not hold up others. Listeners can be added and removed while
+ * monitor is running.
+ * <br>
+ * Transactions are handed over to listeners in batches of all transactions
+ * that can currently be read, up to <code>maxBatchSize</code> transactions or
+ * <code>maxBatchDelay</code> milliseconds of reading.
+ * <code>BatchTransactionListener</code>s added with
+ * <code>addBatchListener()</code> receive whole batch in one call, while
+ * <code>TransactionListener</code>s are called once per transaction.
  *
  */
 public class TransactionMonitor {
 
-    boolean running = false;
+    private static Logger logger = getLogger(TransactionMonitor.class);
+
+    /**
+     * Default maximum number of transactions in one batch.
+     */
+    public final static int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Default maximum time in milliseconds spent reading one batch.
+     */
+    public final static long DEFAULT_MAX_BATCH_DELAY = 100;
+
+    volatile boolean running = false;
     TransactionLog transactionLog;
     TransactionIterator iterator;
+    WakeUpStrategy wakeUpStrategy = new SleepWakeUpStrategy();
+    volatile CheckpointStore checkpointStore;
+    volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    volatile long maxBatchDelay = DEFAULT_MAX_BATCH_DELAY;
 
-    List<TransactionListener> listeners = new ArrayList<>();
+    List<BatchTransactionListener> listeners = new CopyOnWriteArrayList<>();
 
     Thread monitorThread = new Thread() {
 
@@ -56,12 +100,30 @@ public class TransactionMonitor {
 
                 try {
 
+                    boolean progress = false;
+                    List<Transaction> batch = new ArrayList<>();
+                    long batchStart = 0;
+
                     while (iterator.nextTransactionState() == TransactionState.OK) {
 
-                        notifyOnTransaction(iterator.next());
+                        if (batch.isEmpty()) {
+                            batchStart = System.nanoTime();
+                        }
+
+                        batch.add(iterator.next());
+                        progress = true;
+
+                        if (batch.size() >= maxBatchSize || System.nanoTime() - batchStart >= maxBatchDelay * 1000000) {
+                            notifyOnTransactions(batch);
+                            batch = new ArrayList<>();
+                        }
 
                     }
 
+                    if (!batch.isEmpty()) {
+                        notifyOnTransactions(batch);
+                    }
+
                     TransactionState n = iterator.nextTransactionState();
 
                     if (n == TransactionState.INCOMPLETE && n != lastState) {
@@ -70,14 +132,23 @@ public class TransactionMonitor {
                         notifyOnCorruption();
                     }
 
+                    progress = progress || n != lastState;
                     lastState = n;
 
-                    sleep(50);
+                    wakeUpStrategy.await(progress);
 
                 } catch (InterruptedException ex) {
                     //boring
                 }
             }
+
+            wakeUpStrategy.close();
+            flushCheckpoint();
+
+            //release transaction log file held by iterator
+            if (iterator instanceof Closeable) {
+                closeQuietly((Closeable) iterator);
+            }
         }
 
     };
@@ -117,23 +188,78 @@ public class TransactionMonitor {
     /**
      * Start <code>TransactionMonitor</code> in a way that it notifies listeners
      * only about transactions that were not written before monitoring started.
+     * Only newest transaction log file is read to find where to start, so
+     * monitoring starts right away no matter how many transactions were
+     * written before.
      *
      */
     public void startAtLastTransaction() {
 
         if (!running) {
 
-            iterator = transactionLog.iterator();
+            iterator = transactionLog.tailIterator();
+
+            running = true;
+
+            monitorThread.start();
+        }
+
+    }
+
+    /**
+     * Start <code>TransactionMonitor</code> in a way that it notifies listeners
+     * about last <code>count</code> already written transactions and than
+     * continues monitoring. Cost of finding where to start depends on
+     * <code>count</code> and not on size of transaction log.
+     *
+     * @param count Number of already written transactions to notify about.
+     */
+    public void startBeforeLastTransactions(int count) {
+
+        if (!running) {
+
+            iterator = transactionLog.iteratorLast(count);
+
+            running = true;
+
+            monitorThread.start();
 
-            while (iterator.nextTransactionState() == TransactionState.OK) {
+        }
+
+    }
+
+    /**
+     * Start <code>TransactionMonitor</code> in a way that it notifies listeners
+     * about transactions written after checkpoint stored in
+     * <code>store</code>. Reading resumes with direct seek to stored position.
+     * If there is no stored checkpoint, monitor starts at first transaction.
+     * <code>store</code> is also set as checkpoint store of this monitor.
+     *
+     * @param store <code>CheckpointStore</code> to resume from.
+     * @throws IOException Thrown if there is a problem with reading stored
+     * checkpoint.
+     */
+    public void startAtCheckpoint(CheckpointStore store) throws IOException {
+
+        if (!running) {
 
-                iterator.next();
+            Checkpoint checkpoint = store.load();
+
+            setCheckpointStore(store);
+
+            if (checkpoint == null) {
+
+                startAtFirstTransaction();
+                return;
 
             }
 
+            iterator = transactionLog.iteratorAfter(checkpoint.getTransactionLogFile(), checkpoint.getOffset(), checkpoint.getZxid());
+
             running = true;
 
             monitorThread.start();
+
         }
 
     }
@@ -145,7 +271,54 @@ public class TransactionMonitor {
     public void stop() {
 
         running = false;
+        wakeUpStrategy.wakeUp();
+
+        for (BatchTransactionListener l : listeners) {
+
+            if (l instanceof TransactionListenerAdapter && ((TransactionListenerAdapter) l).getListener() instanceof AsyncTransactionListener) {
+                ((AsyncTransactionListener) ((TransactionListenerAdapter) l).getListener()).close();
+            }
+
+        }
+
+    }
+
+    /**
+     * Sets strategy that decides when transaction log is checked again. Must
+     * be called before monitor is started.
+     *
+     * @param wakeUpStrategy <code>WakeUpStrategy</code> used by monitor
+     * thread.
+     */
+    public void setWakeUpStrategy(WakeUpStrategy wakeUpStrategy) {
+
+        if (running) {
+            throw new IllegalStateException("Wake up strategy can not be changed while monitor is running");
+        }
+
+        this.wakeUpStrategy = wakeUpStrategy;
+
+    }
+
+    public WakeUpStrategy getWakeUpStrategy() {
+        return wakeUpStrategy;
+    }
+
+    /**
+     * Sets store that is updated with checkpoint of last transaction after
+     * each batch is handed over to listeners, and flushed when monitor stops.
+     * Listeners added with <code>addAsyncListener()</code> may not have
+     * handled transaction yet at that point, so they should update their own
+     * store instead.
+     *
+     * @param checkpointStore <code>CheckpointStore</code> or <code>null</code>.
+     */
+    public void setCheckpointStore(CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
 
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
     }
 
     /**
@@ -154,32 +327,159 @@ public class TransactionMonitor {
      */
     public void addListener(TransactionListener l) {
 
+        listeners.add(new TransactionListenerAdapter(l));
+
+    }
+
+    /**
+     *
+     * @param l <code>BatchTransactionListener</code> to be added to listeners
+     * list.
+     */
+    public void addBatchListener(BatchTransactionListener l) {
+
         listeners.add(l);
 
     }
 
+    /**
+     * Adds listener that is notified in its own thread. Notifications are
+     * queued in bounded queue until listener handles them.
+     *
+     * @param l <code>TransactionListener</code> to be added to listeners list.
+     * @param capacity Maximum number of transactions queued for listener.
+     * @param policy What to do with new transaction when queue is full.
+     * @return <code>AsyncTransactionListener</code> that wraps <code>l</code>
+     * and reports its queue depth, lag and dropped transactions.
+     */
+    public AsyncTransactionListener addAsyncListener(TransactionListener l, int capacity, OverflowPolicy policy) {
+
+        AsyncTransactionListener async = new AsyncTransactionListener(l, capacity, policy);
+
+        listeners.add(new TransactionListenerAdapter(async));
+
+        return async;
+
+    }
+
     /**
      *
      * @param l <code>TransactionListener</code> to be removed from listeners
-     * list.
+     * list. If it was added with <code>addAsyncListener()</code> its dispatch
+     * thread is stopped after queued notifications are delivered.
      */
     public void removeListener(TransactionListener l) {
 
+        for (BatchTransactionListener listener : listeners) {
+
+            if (!(listener instanceof TransactionListenerAdapter)) {
+                continue;
+            }
+
+            TransactionListener adapted = ((TransactionListenerAdapter) listener).getListener();
+
+            if (adapted == l) {
+
+                listeners.remove(listener);
+
+            } else if (adapted instanceof AsyncTransactionListener && ((AsyncTransactionListener) adapted).getListener() == l) {
+
+                listeners.remove(listener);
+                ((AsyncTransactionListener) adapted).close();
+
+            }
+
+        }
+
+    }
+
+    /**
+     *
+     * @param l <code>BatchTransactionListener</code> to be removed from
+     * listeners list.
+     */
+    public void removeBatchListener(BatchTransactionListener l) {
+
         listeners.remove(l);
 
     }
 
-    private void notifyOnTransaction(Transaction t) {
+    /**
+     *
+     * @param maxBatchSize Maximum number of transactions handed over to
+     * listeners in one batch.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        this.maxBatchSize = maxBatchSize;
+
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     *
+     * @param maxBatchDelay Maximum time in milliseconds spent reading
+     * transactions before they are handed over to listeners, even if batch is
+     * not full.
+     */
+    public void setMaxBatchDelay(long maxBatchDelay) {
+
+        this.maxBatchDelay = maxBatchDelay;
+
+    }
+
+    public long getMaxBatchDelay() {
+        return maxBatchDelay;
+    }
+
+    private void notifyOnTransactions(List<Transaction> batch) {
 
         //listener could change transaction, not safe, maybe send a copy
-        for (TransactionListener l : listeners) {
-            l.onTransaction(t);
+        List<Transaction> transactions = unmodifiableList(batch);
+
+        for (BatchTransactionListener l : listeners) {
+            l.onTransactions(transactions);
+        }
+
+        CheckpointStore store = checkpointStore;
+
+        if (store != null) {
+
+            try {
+                store.update(batch.get(batch.size() - 1));
+            } catch (IOException e) {
+                logger.warn("Problem writing checkpoint file " + store.getCheckpointFile(), e);
+            }
+
         }
     }
 
+    private void flushCheckpoint() {
+
+        CheckpointStore store = checkpointStore;
+
+        if (store != null) {
+
+            try {
+                store.flush();
+            } catch (IOException e) {
+                logger.warn("Problem writing checkpoint file " + store.getCheckpointFile(), e);
+            }
+
+        }
+
+    }
+
     private void notifyOnPartialTransaction() {
 
-        for (TransactionListener l : listeners) {
+        for (BatchTransactionListener l : listeners) {
             l.onPartialTransaction();
         }
 
@@ -187,7 +487,7 @@ public class TransactionMonitor {
 
     private void notifyOnCorruption() {
 
-        for (TransactionListener l : listeners) {
+        for (BatchTransactionListener l : listeners) {
             l.onCorruption();
         }
 
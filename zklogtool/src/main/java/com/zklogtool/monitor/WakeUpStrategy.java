@@ -0,0 +1,53 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+/**
+ * Decides when <code>TransactionMonitor</code> thread checks
+ * <code>TransactionLog</code> again. After reading all available transactions
+ * monitor thread calls <code>await()</code>, which blocks until there may be
+ * something new to read.
+ *
+ */
+public interface WakeUpStrategy {
+
+    /**
+     * Blocks until <code>TransactionMonitor</code> should check transaction
+     * log again.
+     *
+     * @param progress <code>true</code> if last check found new transactions
+     * or change of transaction log state.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    void await(boolean progress) throws InterruptedException;
+
+    /**
+     * Wakes up monitor thread blocked in <code>await()</code> because
+     * monitoring stops. Any later <code>await()</code> returns immediately.
+     * Called by thread stopping <code>TransactionMonitor</code>, so monitor
+     * thread does not have to be interrupted.
+     *
+     */
+    void wakeUp();
+
+    /**
+     * Releases resources held by strategy. Called by monitor thread when
+     * monitoring stops.
+     *
+     */
+    void close();
+
+}
@@ -0,0 +1,219 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * <code>WakeUpStrategy</code> that blocks until file in transaction log
+ * directory is created or modified, so new transactions are noticed as soon
+ * as they are written. Monitor also wakes up after <code>maxWait</code>
+ * milliseconds without events, in case some events are not delivered.
+ * <br>
+ * When directory can not be watched, <code>BackoffWakeUpStrategy</code> is
+ * used instead. Same happens when events turn out to come late, for example
+ * on file systems where <code>WatchService</code> is implemented by polling.
+ * That is measured, not guessed from implementation: if monitor finds new
+ * transactions after waiting <code>maxWait</code> without event
+ * <code>MAX_MISSED_CHANGES</code> times in a row, events come later than
+ * sleeping would notice changes.
+ *
+ */
+public class WatchWakeUpStrategy implements WakeUpStrategy {
+
+    private static Logger logger = getLogger(WatchWakeUpStrategy.class);
+
+    /**
+     * Default maximum time in milliseconds to wait for event.
+     */
+    public final static long DEFAULT_MAX_WAIT = 1000;
+
+    /**
+     * Number of changes in a row not signaled by event within
+     * <code>maxWait</code> after which strategy falls back to backoff.
+     */
+    public final static int MAX_MISSED_CHANGES = 3;
+
+    private final long maxWait;
+    private volatile WatchService watchService;
+    private volatile WakeUpStrategy fallback;
+    private volatile boolean woken;
+    private boolean lastWaitTimedOut;
+    private int missedChanges;
+
+    /**
+     *
+     * @param transactionLogDir Directory that holds transaction log files.
+     */
+    public WatchWakeUpStrategy(File transactionLogDir) {
+
+        this(transactionLogDir, DEFAULT_MAX_WAIT);
+
+    }
+
+    /**
+     *
+     * @param transactionLogDir Directory that holds transaction log files.
+     * @param maxWait Maximum time in milliseconds to wait for event.
+     */
+    public WatchWakeUpStrategy(File transactionLogDir, long maxWait) {
+
+        this.maxWait = maxWait;
+
+        try {
+
+            watchService = FileSystems.getDefault().newWatchService();
+
+            //register before first check so no write is missed
+            transactionLogDir.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+        } catch (IOException | RuntimeException e) {
+
+            logger.debug("Directory " + transactionLogDir + " can not be watched, falling back to backoff", e);
+            closeWatchService();
+
+        }
+
+        if (watchService == null) {
+            fallback = new BackoffWakeUpStrategy();
+        }
+
+    }
+
+    @Override
+    public void await(boolean progress) throws InterruptedException {
+
+        if (progress && lastWaitTimedOut) {
+
+            if (++missedChanges >= MAX_MISSED_CHANGES && fallback == null) {
+                logger.debug("Changes are not signaled by events within " + maxWait + " ms, falling back to backoff");
+                fallBack();
+            }
+
+        } else if (progress) {
+            missedChanges = 0;
+        }
+
+        WakeUpStrategy backoff = fallback;
+
+        if (backoff != null) {
+            backoff.await(progress);
+            return;
+        }
+
+        WatchService service = watchService;
+
+        if (service == null) {
+            return;
+        }
+
+        WatchKey key;
+
+        try {
+            key = service.poll(maxWait, MILLISECONDS);
+        } catch (ClosedWatchServiceException e) {
+            //closed by wakeUp()
+            return;
+        }
+
+        lastWaitTimedOut = key == null;
+
+        if (key != null) {
+
+            //events only matter as wake up signal
+            key.pollEvents();
+            key.reset();
+
+        }
+
+    }
+
+    /**
+     * Closes watch service, which is only way to end
+     * <code>WatchService.poll()</code> without interrupt.
+     *
+     */
+    @Override
+    public synchronized void wakeUp() {
+
+        woken = true;
+
+        if (fallback != null) {
+            fallback.wakeUp();
+        } else {
+            closeWatchService();
+        }
+
+    }
+
+    @Override
+    public void close() {
+
+        closeWatchService();
+
+    }
+
+    /**
+     *
+     * @return <code>true</code> if directory is watched, <code>false</code>
+     * if strategy fell back to backoff sleeping.
+     */
+    public boolean isWatching() {
+        return fallback == null;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    private synchronized void fallBack() {
+
+        closeWatchService();
+        fallback = new BackoffWakeUpStrategy();
+
+        if (woken) {
+            fallback.wakeUp();
+        }
+
+    }
+
+    private synchronized void closeWatchService() {
+
+        if (watchService != null) {
+
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("Problem closing watch service", e);
+            }
+
+            watchService = null;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.printer;
+
+import com.zklogtool.reader.SnapshotSummary;
+import com.zklogtool.util.Util;
+import static java.lang.System.lineSeparator;
+import java.util.Map;
+
+/**
+ * <code>SnapshotSummaryPrinter</code> is used for appending
+ * <code>SnapshotSummary</code> information to <code>StringBuilder</code>.
+ *
+ */
+public class SnapshotSummaryPrinter {
+
+    StringBuilder sb;
+
+    /**
+     *
+     * @param sb <code>StringBuilder</code> to which information is appended.
+     */
+    public SnapshotSummaryPrinter(StringBuilder sb) {
+
+        this.sb = sb;
+
+    }
+
+    private void println(String s) {
+        sb.append(s).append(lineSeparator());
+    }
+
+    /**
+     *
+     * @param summary <code>SnapshotSummary</code> to print information from.
+     */
+    public void printSummary(SnapshotSummary summary) {
+
+        println("Last zxid:\t\t" + Util.longToHexString(summary.getLastZxid()));
+        println("Sessions:\t\t" + summary.getSessionCount());
+        println("Nodes:\t\t\t" + summary.getNodeCount());
+        println("Ephemeral nodes:\t" + summary.getEphemeralCount());
+        println("Data bytes:\t\t" + summary.getTotalDataBytes());
+        println("Deepest path:\t\t" + summary.getDeepestPath() + " (depth " + summary.getDeepestDepth() + ")");
+
+        println("Largest nodes:");
+
+        for (Map.Entry<String, Integer> entry : summary.getLargestNodes()) {
+            println("\t" + entry.getValue() + "\t" + entry.getKey());
+        }
+
+        println("Data bytes per top level node:");
+
+        for (Map.Entry<String, Long> entry : summary.getSubtreeDataBytes().entrySet()) {
+            println("\t" + entry.getValue() + "\t" + entry.getKey());
+        }
+
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static org.apache.jute.BinaryInputArchive.getArchive;
+import org.apache.zookeeper.server.persistence.FileHeader;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+
+/**
+ * <code>TransactionLogFileReader</code> that reads transaction log file through
+ * memory mapped <code>FileChannel</code> instead of
+ * <code>RandomAccessFile</code>. Transaction frames are read directly from
+ * mapped memory, so there are no read system calls per transaction. Behavior
+ * of all methods is same as in <code>TransactionLogFileReader</code>.
+ * <br>
+ * File is mapped in windows of up to 256 MB. Window is remapped when next
+ * transaction crosses its end, which also covers transaction log files that
+ * grow while they are being read.
+ *
+ */
+public class MappedTransactionLogFileReader extends TransactionLogFileReader {
+
+    private final static long MAX_WINDOW_SIZE = 256L * 1024 * 1024;
+    private final static int FILE_HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private final long resetPosition;
+    private long position;
+
+    /**
+     *
+     * @param transactionLogFile Transaction log file.
+     * @throws FileNotFoundException Thrown if file is not found.
+     * @throws IOException Thrown if there is a problem with reading
+     * <code>transactionLogFile</code>.
+     */
+    public MappedTransactionLogFileReader(File transactionLogFile) throws FileNotFoundException, IOException {
+
+        this(transactionLogFile, new RandomAccessFile(transactionLogFile, "r").getChannel());
+
+    }
+
+    private MappedTransactionLogFileReader(File transactionLogFile, FileChannel channel) throws IOException {
+
+        super(transactionLogFile, readFileHeader(channel));
+
+        this.channel = channel;
+
+        resetPosition = FILE_HEADER_SIZE;
+        position = resetPosition;
+
+    }
+
+    private static FileHeader readFileHeader(FileChannel channel) throws IOException {
+
+        try {
+
+            ByteBuffer headerBuffer = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+            while (headerBuffer.hasRemaining()) {
+                if (channel.read(headerBuffer, headerBuffer.position()) < 0) {
+                    throw new EOFException("Transaction log file header not written");
+                }
+            }
+
+            FileHeader header = new FileHeader();
+            header.deserialize(getArchive(new ByteArrayInputStream(headerBuffer.array())), "fileheader");
+
+            if (header.getMagic() != TXNLOG_MAGIC) {
+
+                throw new IOException("Mismatching magic headers "
+                        + header.getMagic()
+                        + " != " + FileTxnLog.TXNLOG_MAGIC);
+            }
+
+            return header;
+
+        } catch (IOException e) {
+
+            channel.close();
+            throw e;
+
+        }
+
+    }
+
+    @Override
+    protected boolean readNextTransaction(TransactionBuffer buffer, boolean validate) throws IncompleteTransactionException, CRCValidationException, IOException {
+
+        if (!map(position, FRAME_HEADER_SIZE)) {
+            //end of file, otherwise both values should be present in previously padded space
+            return false;
+        }
+
+        int offset = (int) (position - windowStart);
+        long crcValue = window.getLong(offset);
+        int len = window.getInt(offset + 8);
+
+        if (crcValue == 0 && len == 0) {
+            //we are in padded space (or brutal corruption)
+            return false;
+        }
+
+        if (len < 0) {
+            throw new CRCValidationException("Transaction length is negative");
+        }
+
+        if (!map(position, FRAME_HEADER_SIZE + (long) len + 1)) {
+            //not whole transaction has been written jet
+            throw new IncompleteTransactionException("Problem with reading file before transaction end");
+        }
+
+        offset = (int) (position - windowStart);
+        byte EOF = window.get(offset + FRAME_HEADER_SIZE + len);
+
+        if (EOF == 0) {
+            throw new IncompleteTransactionException("Transaction delimiter byte not set");
+        }
+
+        if (EOF != 'B') {
+            throw new CRCValidationException("Transaction delimiter byte wrong");
+        }
+
+        window.position(offset + FRAME_HEADER_SIZE);
+        window.get(buffer.prepare(len), 0, len);
+        buffer.setCrcValue(crcValue);
+
+        if (validate && !buffer.isValid()) {
+            throw new CRCValidationException("Transaction CRC validation failed");
+        }
+
+        position += FRAME_HEADER_SIZE + len + 1;
+        return true;
+
+    }
+
+    @Override
+    public long skipToEnd() throws IOException {
+
+        long count = 0;
+
+        while (map(position, FRAME_HEADER_SIZE)) {
+
+            int offset = (int) (position - windowStart);
+            long crcValue = window.getLong(offset);
+            int len = window.getInt(offset + 8);
+
+            if ((crcValue == 0 && len == 0) || len < 0 || !map(position, FRAME_HEADER_SIZE + (long) len + 1)) {
+                break;
+            }
+
+            if (window.get((int) (position - windowStart) + FRAME_HEADER_SIZE + len) != 'B') {
+                break;
+            }
+
+            position += FRAME_HEADER_SIZE + len + 1;
+            count++;
+
+        }
+
+        return count;
+
+    }
+
+    /**
+     * Resets file pointer to the beginning of the transaction log file.
+     *
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    @Override
+    public void reset() throws IOException {
+
+        position = resetPosition;
+
+    }
+
+    @Override
+    public long getPosition() {
+
+        return position;
+
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+
+        this.position = position;
+
+    }
+
+    @Override
+    public boolean isOpen() {
+
+        return channel.isOpen();
+
+    }
+
+    @Override
+    protected void closeFile() throws IOException {
+
+        //mapping is released once window is garbage collected
+        window = null;
+        channel.close();
+
+    }
+
+    /*
+
+     Makes sure that length bytes starting from start are mapped. Returns false
+     if file is not long enough (yet).
+
+     */
+    private boolean map(long start, long length) throws IOException {
+
+        if (window != null && start >= windowStart && start + length <= windowStart + window.limit()) {
+            return true;
+        }
+
+        long size = channel.size();
+
+        if (start + length > size) {
+            return false;
+        }
+
+        if (length > Integer.MAX_VALUE) {
+            throw new CRCValidationException("Transaction length too big");
+        }
+
+        window = channel.map(READ_ONLY, start, Math.min(size - start, Math.max(MAX_WINDOW_SIZE, length)));
+        windowStart = start;
+
+        return true;
+
+    }
+
+}
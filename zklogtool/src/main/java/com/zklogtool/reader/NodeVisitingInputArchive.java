@@ -0,0 +1,179 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.io.IOException;
+import org.apache.jute.Index;
+import org.apache.jute.InputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.server.DataNode;
+
+/**
+ * <code>InputArchive</code> that passes every data node deserialized by
+ * <code>DataTree.deserialize()</code> to <code>SnapshotVisitor</code> and keeps
+ * highest zxid found in data node stats, so data tree does not have to be
+ * walked again after it is read.
+ * <br>
+ * Data tree reads path of each node with tag "path" and than node itself as
+ * record with tag "node", holding data with tag "data" and ACL reference with
+ * tag "acl". Only these reads are observed, all reads are delegated to wrapped
+ * archive.
+ *
+ */
+class NodeVisitingInputArchive implements InputArchive {
+
+    private final InputArchive ia;
+    private final SnapshotVisitor visitor;
+
+    private String path;
+    private byte[] data;
+    private long aclRef;
+
+    private long lastZxid = -1;
+
+    /**
+     *
+     * @param ia Archive to read from.
+     * @param visitor Visitor that receives data nodes, may be
+     * <code>null</code>.
+     */
+    NodeVisitingInputArchive(InputArchive ia, SnapshotVisitor visitor) {
+
+        this.ia = ia;
+        this.visitor = visitor;
+
+    }
+
+    long getLastZxid() {
+        return lastZxid;
+    }
+
+    @Override
+    public byte readByte(String tag) throws IOException {
+        return ia.readByte(tag);
+    }
+
+    @Override
+    public boolean readBool(String tag) throws IOException {
+        return ia.readBool(tag);
+    }
+
+    @Override
+    public int readInt(String tag) throws IOException {
+        return ia.readInt(tag);
+    }
+
+    @Override
+    public long readLong(String tag) throws IOException {
+
+        long value = ia.readLong(tag);
+
+        if ("acl".equals(tag)) {
+            aclRef = value;
+        }
+
+        return value;
+
+    }
+
+    @Override
+    public float readFloat(String tag) throws IOException {
+        return ia.readFloat(tag);
+    }
+
+    @Override
+    public double readDouble(String tag) throws IOException {
+        return ia.readDouble(tag);
+    }
+
+    @Override
+    public String readString(String tag) throws IOException {
+
+        String value = ia.readString(tag);
+
+        if ("path".equals(tag)) {
+            path = value;
+        }
+
+        return value;
+
+    }
+
+    @Override
+    public byte[] readBuffer(String tag) throws IOException {
+
+        byte[] value = ia.readBuffer(tag);
+
+        if ("data".equals(tag)) {
+            data = value;
+        }
+
+        return value;
+
+    }
+
+    @Override
+    public void readRecord(Record r, String tag) throws IOException {
+
+        r.deserialize(this, tag);
+
+        if (r instanceof DataNode && "node".equals(tag)) {
+
+            DataNode node = (DataNode) r;
+
+            lastZxid = Math.max(lastZxid, Math.max(node.stat.getCzxid(), Math.max(node.stat.getMzxid(), node.stat.getPzxid())));
+
+            if (visitor != null) {
+                visitor.visitNode(path, node.stat, aclRef, data);
+            }
+
+            data = null;
+
+        }
+
+    }
+
+    @Override
+    public void startRecord(String tag) throws IOException {
+        ia.startRecord(tag);
+    }
+
+    @Override
+    public void endRecord(String tag) throws IOException {
+        ia.endRecord(tag);
+    }
+
+    @Override
+    public Index startVector(String tag) throws IOException {
+        return ia.startVector(tag);
+    }
+
+    @Override
+    public void endVector(String tag) throws IOException {
+        ia.endVector(tag);
+    }
+
+    @Override
+    public Index startMap(String tag) throws IOException {
+        return ia.startMap(tag);
+    }
+
+    @Override
+    public void endMap(String tag) throws IOException {
+        ia.endMap(tag);
+    }
+
+}
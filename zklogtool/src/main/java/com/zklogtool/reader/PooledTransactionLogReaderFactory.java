@@ -0,0 +1,285 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * <code>TransactionLogReaderFactory</code> that keeps closed readers open and
+ * hands them out again for same transaction log file, so repeated passes over
+ * same files do not open them again and mapped windows stay warm.
+ * <br>
+ * Reader is in use from <code>getReader()</code> until its
+ * <code>close()</code> is called, and is never handed out twice at the same
+ * time. Closed readers become idle. Number of idle readers is bounded, and
+ * when there are too many, least recently closed one is really closed. Idle
+ * readers of files that were deleted are closed as well, so number of open
+ * files stays bounded in long running processes that see many transaction
+ * log files come and go. Readers whose file got closed underneath them, for
+ * example by interrupt, are never kept or handed out again.
+ * <br>
+ * Factory is thread safe.
+ *
+ */
+public class PooledTransactionLogReaderFactory extends TransactionLogReaderFactory implements Closeable {
+
+    private static Logger logger = getLogger(PooledTransactionLogReaderFactory.class);
+
+    /**
+     * Default maximum number of idle readers.
+     */
+    public final static int DEFAULT_MAX_IDLE_READERS = 16;
+
+    private final int maxIdleReaders;
+
+    //idle readers in order in which they were closed
+    private final LinkedHashMap<TransactionLogFileReader, File> idle = new LinkedHashMap<>();
+    private final Map<File, Deque<TransactionLogFileReader>> idleByFile = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * Constructs pool of <code>RandomAccessFile</code> based readers with
+     * <code>DEFAULT_MAX_IDLE_READERS</code>.
+     *
+     */
+    public PooledTransactionLogReaderFactory() {
+
+        this(false, DEFAULT_MAX_IDLE_READERS);
+
+    }
+
+    /**
+     *
+     * @param memoryMapped If <code>true</code> factory makes
+     * <code>MappedTransactionLogFileReader</code>s.
+     * @param maxIdleReaders Maximum number of readers kept open while they are
+     * not used.
+     */
+    public PooledTransactionLogReaderFactory(boolean memoryMapped, int maxIdleReaders) {
+
+        super(memoryMapped);
+
+        if (maxIdleReaders < 0) {
+            throw new IllegalArgumentException("Maximum number of idle readers must not be negative");
+        }
+
+        this.maxIdleReaders = maxIdleReaders;
+
+    }
+
+    /**
+     * Returns idle reader of <code>transactionLog</code> reset to first
+     * transaction, or new reader if there is none.
+     *
+     * @param transactionLog Transaction log file.
+     * @return Reader that is in use until it is closed.
+     * @throws FileNotFoundException Thrown if file is not found.
+     * @throws IOException Thrown if there is a problem with reading
+     * <code>transactionLog</code>.
+     */
+    @Override
+    public TransactionLogFileReader getReader(File transactionLog) throws FileNotFoundException, IOException {
+
+        TransactionLogFileReader reader = take(transactionLog.getAbsoluteFile());
+
+        if (reader != null) {
+
+            try {
+
+                reader.reset();
+                return reader;
+
+            } catch (IOException e) {
+                closeQuietly(reader);
+            }
+
+        }
+
+        reader = super.getReader(transactionLog);
+        reader.pool = this;
+
+        return reader;
+
+    }
+
+    /**
+     *
+     * @return Number of readers that are open but not used.
+     */
+    public synchronized int getIdleReaderCount() {
+        return idle.size();
+    }
+
+    public int getMaxIdleReaders() {
+        return maxIdleReaders;
+    }
+
+    /**
+     * Closes all idle readers. Readers closed after this are not kept open.
+     *
+     */
+    @Override
+    public void close() {
+
+        List<TransactionLogFileReader> readers;
+
+        synchronized (this) {
+
+            closed = true;
+            readers = new ArrayList<>(idle.keySet());
+            idle.clear();
+            idleByFile.clear();
+
+        }
+
+        for (TransactionLogFileReader reader : readers) {
+            closeQuietly(reader);
+        }
+
+    }
+
+    /*
+
+     Called from reader close(). Returns false if reader should really be
+     closed.
+
+     */
+    boolean release(TransactionLogFileReader reader) {
+
+        File file = reader.getTransactionLogFile().getAbsoluteFile();
+        List<TransactionLogFileReader> evicted = new ArrayList<>();
+
+        synchronized (this) {
+
+            if (idle.containsKey(reader)) {
+                //closed twice
+                return true;
+            }
+
+            if (closed || maxIdleReaders == 0 || !file.exists() || !reader.isOpen()) {
+                return false;
+            }
+
+            idle.put(reader, file);
+
+            Deque<TransactionLogFileReader> readers = idleByFile.get(file);
+
+            if (readers == null) {
+                readers = new ArrayDeque<>();
+                idleByFile.put(file, readers);
+            }
+
+            readers.addLast(reader);
+
+            Iterator<Map.Entry<TransactionLogFileReader, File>> it = idle.entrySet().iterator();
+
+            while (it.hasNext()) {
+
+                Map.Entry<TransactionLogFileReader, File> entry = it.next();
+
+                if (idle.size() > maxIdleReaders || !entry.getValue().exists() || !entry.getKey().isOpen()) {
+
+                    it.remove();
+                    removeFromFile(entry.getKey(), entry.getValue());
+                    evicted.add(entry.getKey());
+
+                }
+
+            }
+
+        }
+
+        for (TransactionLogFileReader r : evicted) {
+            closeQuietly(r);
+        }
+
+        return true;
+
+    }
+
+    private TransactionLogFileReader take(File file) {
+
+        List<TransactionLogFileReader> closedReaders = new ArrayList<>();
+        TransactionLogFileReader reader = null;
+
+        synchronized (this) {
+
+            Deque<TransactionLogFileReader> readers = idleByFile.get(file);
+
+            //most recently closed reader is most likely to be warm
+            while (reader == null && readers != null && !readers.isEmpty()) {
+
+                reader = readers.pollLast();
+                idle.remove(reader);
+
+                if (!reader.isOpen()) {
+                    closedReaders.add(reader);
+                    reader = null;
+                }
+
+            }
+
+            if (readers != null && readers.isEmpty()) {
+                idleByFile.remove(file);
+            }
+
+        }
+
+        //release whatever is left of readers closed underneath pool
+        for (TransactionLogFileReader r : closedReaders) {
+            closeQuietly(r);
+        }
+
+        return reader;
+
+    }
+
+    private void removeFromFile(TransactionLogFileReader reader, File file) {
+
+        Deque<TransactionLogFileReader> readers = idleByFile.get(file);
+
+        readers.remove(reader);
+
+        if (readers.isEmpty()) {
+            idleByFile.remove(file);
+        }
+
+    }
+
+    private static void closeQuietly(TransactionLogFileReader reader) {
+
+        try {
+            reader.closeFile();
+        } catch (IOException e) {
+            logger.debug("Problem closing reader of " + reader.getTransactionLogFile(), e);
+        }
+
+    }
+
+}
@@ -0,0 +1,296 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Adler32;
+
+/**
+ * <code>InputStream</code> of file that is read ahead on separate thread.
+ * Reading thread fills large buffers, computes Adler32 checksum over them and
+ * hands them over to consumer, so disk reads and checksum computation overlap
+ * with decoding done by consumer. Buffers are recycled once consumer is done
+ * with them, so at most fixed number of buffers is ever allocated.
+ * <br>
+ * <code>getChecksum()</code> returns Adler32 checksum of bytes consumed so
+ * far, same as <code>CheckedInputStream</code> would, although reading thread
+ * is ahead of consumer.
+ * <br>
+ * Stream is meant to be used by one consumer thread. <code>close()</code>
+ * must be called to stop reading thread if stream is not read to the end.
+ *
+ */
+class PrefetchingInputStream extends InputStream {
+
+    final static int DEFAULT_BUFFER_SIZE = 1 << 20;
+    final static int DEFAULT_BUFFER_COUNT = 4;
+
+    private final static int ADLER_BASE = 65521;
+
+    private final FileInputStream in;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<Chunk> free;
+    private final Thread reader;
+
+    private volatile boolean closed;
+
+    private Chunk chunk;
+    private int position;
+
+    PrefetchingInputStream(File file) throws IOException {
+
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+
+    }
+
+    /**
+     *
+     * @param file File to read.
+     * @param bufferSize Size of one buffer.
+     * @param bufferCount Number of buffers, at least two so reading thread
+     * can fill one while consumer reads other.
+     * @throws IOException Thrown if file can not be opened.
+     */
+    PrefetchingInputStream(File file, int bufferSize, int bufferCount) throws IOException {
+
+        if (bufferSize < 1 || bufferCount < 2) {
+            throw new IllegalArgumentException("Buffer size must be positive and there must be at least two buffers");
+        }
+
+        in = new FileInputStream(file);
+
+        //end of file or failure is handed over in addition to buffers
+        filled = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+        free = new ArrayBlockingQueue<Chunk>(bufferCount);
+
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(new Chunk(new byte[bufferSize]));
+        }
+
+        reader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                readAhead();
+            }
+
+        }, "snapshot-prefetch");
+
+        reader.setDaemon(true);
+        reader.start();
+
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (!fill()) {
+            return -1;
+        }
+
+        return chunk.buffer[position++] & 0xff;
+
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, chunk.length - position);
+
+        System.arraycopy(chunk.buffer, position, b, off, n);
+        position += n;
+
+        return n;
+
+    }
+
+    @Override
+    public int available() {
+
+        return chunk != null && chunk.length > 0 ? chunk.length - position : 0;
+
+    }
+
+    /**
+     *
+     * @return Adler32 checksum of bytes read from this stream so far.
+     */
+    long getChecksum() {
+
+        if (chunk == null) {
+            return new Adler32().getValue();
+        }
+
+        //continue checksum of bytes in front of current buffer over consumed part of it
+        long a = chunk.checksum & 0xffff;
+        long b = chunk.checksum >>> 16;
+
+        for (int i = 0; i < position; i++) {
+
+            a = (a + (chunk.buffer[i] & 0xff)) % ADLER_BASE;
+            b = (b + a) % ADLER_BASE;
+
+        }
+
+        return (b << 16) | a;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        reader.interrupt();
+        in.close();
+
+    }
+
+    /*
+
+     Makes sure current chunk has unread bytes. Returns false at end of file,
+     failure of reading thread is thrown on every call once it is reached.
+
+     */
+    private boolean fill() throws IOException {
+
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (chunk == null || position == chunk.length || chunk.length < 0) {
+
+            if (chunk != null) {
+
+                if (chunk.failure != null) {
+                    throw new IOException(chunk.failure);
+                }
+
+                if (chunk.length < 0) {
+                    return false;
+                }
+
+                free.add(chunk);
+
+            }
+
+            try {
+                chunk = filled.take();
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+
+            }
+
+            position = 0;
+
+        }
+
+        return true;
+
+    }
+
+    private void readAhead() {
+
+        Adler32 adler = new Adler32();
+
+        try {
+
+            while (!closed) {
+
+                Chunk c = free.take();
+                int length = 0;
+                int n = 0;
+
+                while (length < c.buffer.length && (n = in.read(c.buffer, length, c.buffer.length - length)) != -1) {
+                    length += n;
+                }
+
+                if (length > 0) {
+
+                    c.checksum = adler.getValue();
+                    c.length = length;
+                    adler.update(c.buffer, 0, length);
+                    filled.put(c);
+
+                }
+
+                if (n == -1) {
+
+                    Chunk end = new Chunk(new byte[0]);
+                    end.checksum = adler.getValue();
+                    end.length = -1;
+                    filled.put(end);
+
+                    return;
+
+                }
+
+            }
+
+        } catch (IOException e) {
+
+            if (!closed) {
+
+                Chunk failed = new Chunk(new byte[0]);
+                failed.failure = e;
+                filled.offer(failed);
+
+            }
+
+        } catch (InterruptedException e) {
+            //stream closed
+        }
+
+    }
+
+    private static class Chunk {
+
+        final byte[] buffer;
+
+        //number of bytes in buffer, -1 marks end of file
+        int length;
+
+        //checksum of all bytes in front of this chunk
+        long checksum;
+
+        IOException failure;
+
+        Chunk(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+    }
+
+}
@@ -18,6 +18,7 @@ package com.zklogtool.reader;
 import com.zklogtool.data.DataState;
 import com.zklogtool.data.Transaction;
 import com.zklogtool.data.TransactionIterator;
+import com.zklogtool.data.TransactionState;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,17 +27,19 @@ import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import static java.nio.ByteBuffer.wrap;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedInputStream;
 import static org.apache.jute.BinaryInputArchive.getArchive;
+import org.apache.jute.Index;
 import org.apache.jute.InputArchive;
 import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
-import org.apache.zookeeper.server.DataNode;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.StatPersisted;
 import org.apache.zookeeper.server.DataTree;
 import org.apache.zookeeper.server.persistence.FileHeader;
 
@@ -53,6 +56,10 @@ import org.apache.zookeeper.server.persistence.FileHeader;
  * <code>DataState</code> based only on snapshot or it can take the snapshot any
  * apply transactions to the point when it is guaranteed that
  * <code>DataState</code> represents data tree at one particular point it time.
+ * <br>
+ * <code>readSnapshot()</code> streams snapshot content to
+ * <code>SnapshotVisitor</code> instead, for passes over large snapshots that
+ * do not need whole data tree in memory.
  *
  */
 public class SnapshotFileReader {
@@ -64,6 +71,8 @@ public class SnapshotFileReader {
     final File snapshotFile;
     final long TS;
 
+    private boolean prefetch;
+
     /**
      *
      * @param snapshotFile Zookeeper snapshot file.
@@ -79,6 +88,23 @@ public class SnapshotFileReader {
         return snapshotFile;
     }
 
+    /**
+     * When enabled, snapshot file is read ahead in large buffers and its
+     * checksum is computed on separate thread, while data nodes are decoded
+     * on calling thread. It pays off for large snapshots, where reading and
+     * checksum computation would otherwise take turns with decoding. Disabled
+     * by default.
+     *
+     * @param prefetch <code>true</code> to read snapshot on separate thread.
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
     /**
      * Reads snapshot file and returns <code>DataState</code> based on it.
      *
@@ -90,25 +116,37 @@ public class SnapshotFileReader {
      */
     public DataState readFuzzySnapshot() throws CRCValidationException, IOException {
 
+        return readFuzzySnapshot(null);
+
+    }
+
+    /**
+     * Reads snapshot file and returns <code>DataState</code> based on it.
+     * Sessions and data nodes are passed to <code>summary</code> as data tree
+     * is deserialized, so statistics are collected in same pass over snapshot.
+     * Last zxid of returned <code>DataState</code> is also found in that pass.
+     *
+     * @param summary Summary to fill, may be <code>null</code>.
+     * @return Returns <code>DataState</code> based only on snapshot file.
+     * @throws CRCValidationException Thrown if CRC validation failed. Snapshot
+     * is probably corrupted.
+     * @throws IOException Thrown if there is a problem with reading snapshot
+     * file.
+     */
+    public DataState readFuzzySnapshot(SnapshotSummary summary) throws CRCValidationException, IOException {
+
         DataTree dt = new DataTree();
         Map<Long, Integer> sessions = new HashMap<Long, Integer>();
+        long lastZxid;
 
         InputStream snapIS = null;
-        CheckedInputStream crcIn = null;
 
         try {
             logger.info("Reading snapshot " + snapshotFile);
-            snapIS = new BufferedInputStream(new FileInputStream(snapshotFile));
-            crcIn = new CheckedInputStream(snapIS, new Adler32());
-            InputArchive ia = getArchive(crcIn);
-
-            FileHeader header = new FileHeader();
-            header.deserialize(ia, "fileheader");
-            if (header.getMagic() != SNAP_MAGIC) {
-                throw new IOException("Mismatching magic headers "
-                        + header.getMagic()
-                        + " !=  " + SNAP_MAGIC);
-            }
+            snapIS = open();
+            InputArchive ia = getArchive(snapIS);
+
+            readHeader(ia);
 
             int count = ia.readInt("count");
 
@@ -117,11 +155,17 @@ public class SnapshotFileReader {
                 int to = ia.readInt("timeout");
                 sessions.put(id, to);
                 count--;
+
+                if (summary != null) {
+                    summary.visitSession(id, to);
+                }
             }
 
-            dt.deserialize(ia, "tree");
+            NodeVisitingInputArchive nodeIa = new NodeVisitingInputArchive(ia, summary);
+            dt.deserialize(nodeIa, "tree");
+            lastZxid = nodeIa.getLastZxid();
 
-            long checkSum = crcIn.getChecksum().getValue();
+            long checkSum = getChecksum(snapIS);
             long val = ia.readLong("val");
             if (val != checkSum) {
                 throw new CRCValidationException("CRC corruption in snapshot");
@@ -136,41 +180,95 @@ public class SnapshotFileReader {
             if (snapIS != null) {
                 snapIS.close();
             }
-            if (crcIn != null) {
-                crcIn.close();
-            }
         }
 
-        long lastZxid = -1;
+        return new DataState(dt, sessions, lastZxid);
+
+    }
+
+    /**
+     * Reads snapshot file one record at a time and passes sessions, ACL lists
+     * and data nodes to <code>visitor</code>, without building data tree. Only
+     * record that is being visited is held in memory, so snapshots of any size
+     * can be scanned. Checksum at end of file is verified after all records
+     * are visited, so if <code>CRCValidationException</code> is thrown
+     * visited content should not be trusted.
+     *
+     * @param visitor Visitor that receives snapshot content.
+     * @throws CRCValidationException Thrown if CRC validation failed. Snapshot
+     * is probably corrupted.
+     * @throws IOException Thrown if there is a problem with reading snapshot
+     * file.
+     */
+    public void readSnapshot(SnapshotVisitor visitor) throws CRCValidationException, IOException {
 
-        DataState dataState = new DataState(dt, sessions, lastZxid);
+        try (InputStream snapIS = open()) {
 
-        Iterator<Entry<String, DataNode>> it = dataState.getNodes().entrySet().iterator();
-        while (it.hasNext()) {
+            InputArchive ia = getArchive(snapIS);
 
-            Entry<String, DataNode> e = it.next();
+            readHeader(ia);
 
-            long tempZxid = e.getValue().stat.getCzxid();
+            int count = ia.readInt("count");
 
-            if (tempZxid > lastZxid) {
-                lastZxid = tempZxid;
+            while (count > 0) {
+                visitor.visitSession(ia.readLong("id"), ia.readInt("timeout"));
+                count--;
             }
 
-            tempZxid = e.getValue().stat.getPzxid();
-            if (tempZxid > lastZxid) {
-                lastZxid = tempZxid;
+            //ACL lists, serialized by DataTree as map of reference to list
+            count = ia.readInt("map");
+
+            while (count > 0) {
+
+                long aclRef = ia.readLong("long");
+                List<ACL> acls = new ArrayList<ACL>();
+                Index i = ia.startVector("acls");
+
+                if (i != null) {
+
+                    while (!i.done()) {
+
+                        ACL acl = new ACL();
+                        acl.deserialize(ia, "acl");
+                        acls.add(acl);
+                        i.incr();
+
+                    }
+
+                }
+
+                ia.endVector("acls");
+                visitor.visitAcl(aclRef, acls);
+                count--;
+
             }
 
-            tempZxid = e.getValue().stat.getMzxid();
-            if (tempZxid > lastZxid) {
-                lastZxid = tempZxid;
+            //data nodes, serialized by DataTree until "/" path marker
+            String path = ia.readString("path");
+
+            while (!"/".equals(path)) {
+
+                ia.startRecord("node");
+                byte[] data = ia.readBuffer("data");
+                long aclRef = ia.readLong("acl");
+                StatPersisted stat = new StatPersisted();
+                stat.deserialize(ia, "statpersisted");
+                ia.endRecord("node");
+
+                visitor.visitNode(path, stat, aclRef, data);
+
+                path = ia.readString("path");
+
             }
 
-        }
+            long checkSum = getChecksum(snapIS);
+            long val = ia.readLong("val");
 
-        dataState.setLastZxid(lastZxid);
+            if (val != checkSum) {
+                throw new CRCValidationException("CRC corruption in snapshot");
+            }
 
-        return dataState;
+        }
 
     }
 
@@ -191,6 +289,35 @@ public class SnapshotFileReader {
      */
     public DataState restoreDataState(TransactionIterator transactionIterator) throws CRCValidationException, IOException, Exception {
 
+        return restoreDataState(transactionIterator, -1);
+
+    }
+
+    /**
+     * Reads snapshot file, applies transactions to ensure that
+     * <code>DataState</code> is not fuzzy and keeps applying transactions up
+     * to <code>targetZxid</code>, all in one pass of
+     * <code>transactionIterator</code>. Transactions written while snapshot
+     * was taken are always applied, so if <code>targetZxid</code> is lower
+     * than last of them, returned <code>DataState</code> is at that last
+     * transaction. Replay stops at end of transaction log, so
+     * <code>Long.MAX_VALUE</code> restores data tree at last transaction. If
+     * snapshot holds no transaction after it was started and nothing was
+     * written after it, snapshot itself is returned.
+     *
+     * @param transactionIterator Transaction iterator positioned at or in
+     * front of first transaction after snapshot.
+     * @param targetZxid Zxid of last transaction to apply.
+     * @return <code>DataState</code> that is not fuzzy.
+     * @throws CRCValidationException Thrown if CRC validation failed, snapshot
+     * is probably corrupted.
+     * @throws Exception Thrown if there is a problem while applying
+     * transactions.
+     * @throws IOException Thrown if there is a problem with reading snapshot
+     * file.
+     */
+    public DataState restoreDataState(TransactionIterator transactionIterator, long targetZxid) throws CRCValidationException, IOException, Exception {
+
         DataState fuzzy = readFuzzySnapshot();
         long lastZxid = fuzzy.getLastZxid();
         long currentZxid = TS + 1;
@@ -199,55 +326,102 @@ public class SnapshotFileReader {
         // rewind iterator to right zxid
         do {
 
-            switch (transactionIterator.nextTransactionState()) {
-
-                case OK:
-                    t = transactionIterator.next();
-                    break;
-                case EMPTY:
-                    throw new Exception("No tranasction");
-                default:
-                    throw new Exception("Problem while reading transactions");
-
+            if (lastZxid <= TS && transactionIterator.nextTransactionState() == TransactionState.EMPTY) {
+                //snapshot of idle ensemble, it is not fuzzy and there is nothing to replay
+                return fuzzy;
             }
 
+            t = nextTransaction(transactionIterator);
+
         } while (t.getTxnHeader().getZxid() <= TS);
 
-        //apply all transactions in between 
         //there should be a check if there are any transactions in between, if not sessions may not be correct
         logger.debug("Current zxid: " + currentZxid);
         logger.debug("Last zxid: " + lastZxid);
+        logger.debug("Target zxid: " + targetZxid);
         logger.debug("Current txn zxid: " + t.getTxnHeader().getZxid());
 
-        while (currentZxid <= lastZxid) {
+        while (true) {
+
+            long zxid = t.getTxnHeader().getZxid();
+
+            if (currentZxid <= lastZxid) {
+
+                //transactions in between must all be applied, in order
+                if (zxid != currentZxid) {
+                    throw new Exception("Transactions not in order");
+                }
 
-            //check ordering
-            if (t.getTxnHeader().getZxid() != currentZxid) {
-                throw new Exception("Transactions not in order");
+            } else if (zxid > targetZxid) {
+                break;
             }
 
             //apply transaction
             fuzzy.processTransaction(t);
 
+            //set next expected transaction
+            currentZxid++;
+
             //read next
-            switch (transactionIterator.nextTransactionState()) {
+            if (currentZxid <= lastZxid) {
+                t = nextTransaction(transactionIterator);
+            } else if (zxid < targetZxid && transactionIterator.nextTransactionState() == TransactionState.OK) {
+                t = transactionIterator.next();
+            } else {
+                break;
+            }
 
-                case OK:
-                    t = transactionIterator.next();
-                    break;
-                case EMPTY:
-                    throw new Exception("No tranasction");
-                default:
-                    throw new Exception("Problem while reading transactions");
+        }
 
-            }
+        return fuzzy;
 
-            //set next expected transaction
-            currentZxid++;
+    }
+
+    private static Transaction nextTransaction(TransactionIterator transactionIterator) throws Exception {
+
+        switch (transactionIterator.nextTransactionState()) {
+
+            case OK:
+                return transactionIterator.next();
+            case EMPTY:
+                throw new Exception("No tranasction");
+            default:
+                throw new Exception("Problem while reading transactions");
 
         }
 
-        return fuzzy;
+    }
+
+    private InputStream open() throws IOException {
+
+        if (prefetch) {
+            return new PrefetchingInputStream(snapshotFile);
+        }
+
+        return new CheckedInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)), new Adler32());
+
+    }
+
+    private static long getChecksum(InputStream snapIS) {
+
+        if (snapIS instanceof PrefetchingInputStream) {
+            return ((PrefetchingInputStream) snapIS).getChecksum();
+        }
+
+        return ((CheckedInputStream) snapIS).getChecksum().getValue();
+
+    }
+
+    private static void readHeader(InputArchive ia) throws IOException {
+
+        FileHeader header = new FileHeader();
+        header.deserialize(ia, "fileheader");
+
+        if (header.getMagic() != SNAP_MAGIC) {
+            throw new IOException("Mismatching magic headers "
+                    + header.getMagic()
+                    + " !=  " + SNAP_MAGIC);
+        }
 
     }
 
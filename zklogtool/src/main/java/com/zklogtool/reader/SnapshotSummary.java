@@ -0,0 +1,239 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.StatPersisted;
+
+/**
+ * Statistics of Zookeeper data tree collected while snapshot is read. It is
+ * <code>SnapshotVisitor</code>, so it can be filled by
+ * <code>SnapshotFileReader.readSnapshot()</code> without building data tree,
+ * or by <code>SnapshotFileReader.readFuzzySnapshot()</code> in same pass that
+ * deserializes data tree.
+ * <br>
+ * Summary holds number of sessions, data nodes and ephemeral nodes, total
+ * size of data, highest zxid found in data node stats, deepest path, largest
+ * data nodes and total size of data under each top level data node.
+ *
+ */
+public class SnapshotSummary implements SnapshotVisitor {
+
+    public final static int DEFAULT_LARGEST_NODE_COUNT = 10;
+
+    private final static Comparator<Entry<String, Integer>> BY_SIZE = new Comparator<Entry<String, Integer>>() {
+
+        @Override
+        public int compare(Entry<String, Integer> e1, Entry<String, Integer> e2) {
+
+            int c = Integer.compare(e1.getValue(), e2.getValue());
+
+            return c != 0 ? c : e2.getKey().compareTo(e1.getKey());
+
+        }
+
+    };
+
+    private final int largestNodeCount;
+    private final PriorityQueue<Entry<String, Integer>> largestNodes;
+    private final Map<String, Long> subtreeDataBytes = new TreeMap<String, Long>();
+
+    private int sessionCount;
+    private long nodeCount;
+    private long ephemeralCount;
+    private long totalDataBytes;
+    private long lastZxid = -1;
+    private String deepestPath;
+    private int deepestDepth = -1;
+
+    public SnapshotSummary() {
+
+        this(DEFAULT_LARGEST_NODE_COUNT);
+
+    }
+
+    /**
+     *
+     * @param largestNodeCount Number of largest data nodes to keep.
+     */
+    public SnapshotSummary(int largestNodeCount) {
+
+        if (largestNodeCount < 0) {
+            throw new IllegalArgumentException("Largest node count must not be negative");
+        }
+
+        this.largestNodeCount = largestNodeCount;
+        largestNodes = new PriorityQueue<Entry<String, Integer>>(largestNodeCount + 1, BY_SIZE);
+
+    }
+
+    @Override
+    public void visitSession(long sessionId, int timeout) {
+
+        sessionCount++;
+
+    }
+
+    @Override
+    public void visitAcl(long aclRef, List<ACL> acls) {
+
+        //ACL lists are not part of summary
+    }
+
+    @Override
+    public void visitNode(String path, StatPersisted stat, long aclRef, byte[] data) {
+
+        int size = data != null ? data.length : 0;
+
+        nodeCount++;
+        totalDataBytes += size;
+
+        if (stat.getEphemeralOwner() != 0) {
+            ephemeralCount++;
+        }
+
+        lastZxid = Math.max(lastZxid, Math.max(stat.getCzxid(), Math.max(stat.getMzxid(), stat.getPzxid())));
+
+        int depth = depth(path);
+
+        if (depth > deepestDepth) {
+            deepestDepth = depth;
+            deepestPath = path;
+        }
+
+        //root node is not part of any top level subtree
+        if (depth > 0) {
+
+            int end = path.indexOf('/', 1);
+            String topLevel = end < 0 ? path : path.substring(0, end);
+            Long bytes = subtreeDataBytes.get(topLevel);
+
+            subtreeDataBytes.put(topLevel, bytes != null ? bytes + size : size);
+
+        }
+
+        if (largestNodeCount > 0) {
+
+            if (largestNodes.size() < largestNodeCount) {
+                largestNodes.add(new SimpleImmutableEntry<String, Integer>(path, size));
+            } else if (size > largestNodes.peek().getValue()) {
+                largestNodes.poll();
+                largestNodes.add(new SimpleImmutableEntry<String, Integer>(path, size));
+            }
+
+        }
+
+    }
+
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     *
+     * @return Number of data nodes, including root node.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getEphemeralCount() {
+        return ephemeralCount;
+    }
+
+    /**
+     *
+     * @return Sum of data sizes of all data nodes in bytes.
+     */
+    public long getTotalDataBytes() {
+        return totalDataBytes;
+    }
+
+    /**
+     *
+     * @return Highest czxid, mzxid or pzxid of all data nodes, or -1 if no
+     * data node was visited.
+     */
+    public long getLastZxid() {
+        return lastZxid;
+    }
+
+    /**
+     *
+     * @return Path of data node with most path elements, or <code>null</code>
+     * if no data node was visited.
+     */
+    public String getDeepestPath() {
+        return deepestPath;
+    }
+
+    /**
+     *
+     * @return Number of path elements of deepest path, or -1 if no data node
+     * was visited.
+     */
+    public int getDeepestDepth() {
+        return deepestDepth;
+    }
+
+    /**
+     *
+     * @return Paths and data sizes of largest data nodes, largest first.
+     */
+    public List<Entry<String, Integer>> getLargestNodes() {
+
+        List<Entry<String, Integer>> nodes = new ArrayList<Entry<String, Integer>>(largestNodes);
+        Collections.sort(nodes, Collections.reverseOrder(BY_SIZE));
+
+        return nodes;
+
+    }
+
+    /**
+     *
+     * @return Total data size in bytes of each top level data node together
+     * with all its descendants, ordered by path.
+     */
+    public Map<String, Long> getSubtreeDataBytes() {
+        return Collections.unmodifiableMap(subtreeDataBytes);
+    }
+
+    private static int depth(String path) {
+
+        int depth = 0;
+
+        for (int i = 0; i < path.length(); i++) {
+
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+
+        }
+
+        return depth;
+
+    }
+
+}
@@ -0,0 +1,55 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.util.List;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.StatPersisted;
+
+/**
+ * Receives content of Zookeeper snapshot file from
+ * <code>SnapshotFileReader.readSnapshot()</code> in order in which it is
+ * written: sessions first, than ACL lists, than data nodes, parent before its
+ * children. Objects passed to visitor are not used by reader afterwards, so
+ * visitor may keep them, but reader never keeps them itself.
+ *
+ */
+public interface SnapshotVisitor {
+
+    /**
+     *
+     * @param sessionId Session id.
+     * @param timeout Session timeout.
+     */
+    public void visitSession(long sessionId, int timeout);
+
+    /**
+     *
+     * @param aclRef Reference by which data nodes use this ACL list.
+     * @param acls ACL list.
+     */
+    public void visitAcl(long aclRef, List<ACL> acls);
+
+    /**
+     *
+     * @param path Path of data node. Path of root node is empty string.
+     * @param stat Persisted stat of data node.
+     * @param aclRef Reference of ACL list of data node.
+     * @param data Data of data node, may be <code>null</code>.
+     */
+    public void visitNode(String path, StatPersisted stat, long aclRef, byte[] data);
+
+}
@@ -0,0 +1,126 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+
+/**
+ * Reusable buffer for serialized bytes of one transaction. It is filled by
+ * <code>TransactionLogFileReader.readNextTransaction()</code>. Byte array grows
+ * when longer transaction is read and is never shrunk, so after first few
+ * transactions reading does not allocate any memory. Buffer also holds
+ * <code>Checksum</code> used to validate CRC of transactions read into it.
+ * <br>
+ * Buffer can be validated on different thread than one that filled it, but
+ * only by one thread at a time.
+ * <br>
+ * Bytes are overwritten on every read, so they must be copied if they are
+ * needed after next read.
+ *
+ */
+public class TransactionBuffer {
+
+    private final Checksum crc = new Adler32();
+    private byte[] bytes;
+    private int length;
+    private long crcValue;
+
+    /**
+     * Constructs buffer with initial capacity of 512 bytes, which is enough
+     * for most transactions.
+     *
+     */
+    public TransactionBuffer() {
+
+        this(512);
+
+    }
+
+    /**
+     *
+     * @param capacity Initial capacity of buffer in bytes.
+     */
+    public TransactionBuffer(int capacity) {
+
+        bytes = new byte[capacity];
+
+    }
+
+    /*
+
+     Makes room for length bytes. Buffer grows at least twice so series of
+     slightly longer transactions does not allocate on each of them. Empty
+     buffer grows to exactly length bytes.
+
+     */
+    byte[] prepare(int length) {
+
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+
+        this.length = length;
+
+        return bytes;
+
+    }
+
+    void setCrcValue(long crcValue) {
+        this.crcValue = crcValue;
+    }
+
+    /**
+     * Validates transaction in buffer against CRC value that was written with
+     * it in transaction log file.
+     *
+     * @return <code>true</code> if CRC of transaction bytes matches.
+     */
+    public boolean isValid() {
+
+        crc.reset();
+        crc.update(bytes, 0, length);
+
+        return crc.getValue() == crcValue;
+
+    }
+
+    /**
+     *
+     * @return Byte array holding transaction bytes from index 0 to
+     * <code>getLength()</code>. Array may be longer than transaction.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     *
+     * @return Length of transaction in buffer.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     *
+     * @return CRC value written with transaction in transaction log file.
+     */
+    public long getCrcValue() {
+        return crcValue;
+    }
+
+}
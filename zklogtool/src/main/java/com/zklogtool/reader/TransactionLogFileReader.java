@@ -16,22 +16,24 @@
 package com.zklogtool.reader;
 
 import com.zklogtool.data.Transaction;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import static java.nio.ByteBuffer.wrap;
-import java.util.zip.Adler32;
-import java.util.zip.Checksum;
 import org.apache.jute.BinaryInputArchive;
 import org.apache.jute.InputArchive;
-import org.apache.jute.Record;
 import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
 import org.apache.zookeeper.server.persistence.FileHeader;
 import org.apache.zookeeper.server.persistence.FileTxnLog;
-import static org.apache.zookeeper.server.util.SerializeUtils.deserializeTxn;
-import org.apache.zookeeper.txn.TxnHeader;
 
 /**
  * <code>TransactionLogFileReader</code> is used to read transactions from
@@ -48,19 +50,60 @@ import org.apache.zookeeper.txn.TxnHeader;
  * accepting a proposal, a server persists transaction in the proposal to the
  * transaction log, a file on the local disk of the server to which transactions
  * are appended in order.
+ * <br>
+ * End of written transactions is detected by comparing file pointer with file
+ * length and by zero padding that Zookeeper preallocates, not by catching
+ * exceptions. When end is reached, reader remembers length and modification
+ * time of file. Following calls return without reading anything as long as
+ * both stay same and file was last modified well before end was reached,
+ * which makes following growing transaction log cheap.
+ * <br>
+ * Reader holds transaction log file open until <code>close()</code> is
+ * called. Reader made by <code>PooledTransactionLogReaderFactory</code> is
+ * returned to pool on close instead, and must not be used after that.
  *
  */
-public class TransactionLogFileReader {
+public class TransactionLogFileReader implements Closeable {
 
     private static Logger logger = getLogger(TransactionLogFileReader.class);
-    private final static int TXNLOG_MAGIC = wrap("ZKLG".getBytes()).getInt();
+    final static int TXNLOG_MAGIC = wrap("ZKLG".getBytes()).getInt();
+    final static int FRAME_HEADER_SIZE = 12;
+
+    /*
+
+     Modification time of file is only trusted to change on write if file was
+     last modified more than this long before it was checked. File systems
+     store modification time with limited precision.
+
+     */
+    private final static long MODIFICATION_TIME_PRECISION = 2000;
+
     private final File transactionLogFile;
-    private InputArchive ia;
     private RandomAccessFile raf;
+
+    //pool this reader is returned to on close, if any
+    PooledTransactionLogReaderFactory pool;
     private FileHeader header;
 
     private long resetFilePointer, lastTransactionFilePointer;
 
+    //already read part of incomplete transaction at lastTransactionFilePointer
+    private byte[] partialBytes;
+    private int partialLength;
+    private long partialCrcValue;
+
+    //file length when it was last asked, transaction log only grows
+    private long knownLength;
+
+    private final byte[] frameHeader = new byte[FRAME_HEADER_SIZE];
+    private final ByteBuffer frameHeaderView = ByteBuffer.wrap(frameHeader);
+
+    //state of file when end of transactions was last reached
+    private long endFilePointer = -1;
+    private long endLength;
+    private long endLastModified;
+    private boolean endUnchangeable;
+
     /**
      *
      * @param transactionLogFile Transaction log file.
@@ -73,16 +116,25 @@ public class TransactionLogFileReader {
         this.transactionLogFile = transactionLogFile;
 
         raf = new RandomAccessFile(transactionLogFile, "r");
-        ia = new BinaryInputArchive(raf);
+        InputArchive ia = new BinaryInputArchive(raf);
 
-        header = new FileHeader();
-        header.deserialize(ia, "fileheader");
+        try {
 
-        if (header.getMagic() != TXNLOG_MAGIC) {
+            header = new FileHeader();
+            header.deserialize(ia, "fileheader");
+
+            if (header.getMagic() != TXNLOG_MAGIC) {
+
+                throw new IOException("Mismatching magic headers "
+                        + header.getMagic()
+                        + " != " + FileTxnLog.TXNLOG_MAGIC);
+            }
+
+        } catch (IOException e) {
+
+            raf.close();
+            throw e;
 
-            throw new IOException("Mismatching magic headers "
-                    + header.getMagic()
-                    + " != " + FileTxnLog.TXNLOG_MAGIC);
         }
 
         resetFilePointer = raf.getFilePointer();
@@ -90,6 +142,21 @@ public class TransactionLogFileReader {
 
     }
 
+    /**
+     * Constructor used by subclasses that do their own reading of
+     * <code>transactionLogFile</code>. Subclasses must override all methods
+     * that read from file.
+     *
+     * @param transactionLogFile Transaction log file.
+     * @param header Already deserialized and validated file header.
+     */
+    protected TransactionLogFileReader(File transactionLogFile, FileHeader header) {
+
+        this.transactionLogFile = transactionLogFile;
+        this.header = header;
+
+    }
+
     /**
      * Returns next transaction. If any exception is thrown file pointer remains
      * on the place as it was before method call. Consecutive call may succeed
@@ -104,64 +171,263 @@ public class TransactionLogFileReader {
      */
     public Transaction getNextTransaction() throws IncompleteTransactionException, CRCValidationException, IOException {
 
-        long crcValue;
-        byte[] bytes;
-        int len;
-        byte EOF;
+        //empty buffer grows to exact transaction length, so bytes can be handed over
+        TransactionBuffer buffer = new TransactionBuffer(0);
 
-        try {
+        long position = getPosition();
 
-            crcValue = ia.readLong("crcvalue");
-            len = ia.readInt("txtEntry");
+        if (!readNextTransaction(buffer)) {
+            return null;
+        }
 
+        try {
+            return new Transaction(buffer.getBytes());
         } catch (IOException e) {
+            seek(position);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Reads serialized bytes of next transaction into <code>buffer</code>
+     * instead of constructing <code>Transaction</code>. CRC is validated with
+     * checksum of <code>buffer</code>, so reading many transactions into same
+     * buffer does not allocate memory. Behavior is otherwise same as of
+     * <code>getNextTransaction()</code>.
+     * <br>
+     * When transaction is not completely written, bytes read so far are kept
+     * and next call continues reading behind them instead of reading whole
+     * transaction again, which matters for large transactions written in
+     * pieces. Kept bytes may have been read from preallocated space before
+     * they were written, so if CRC validation of resumed transaction fails,
+     * whole transaction is read again before it is reported as corrupted.
+     *
+     * @param buffer Buffer to read transaction bytes into.
+     * @return <code>true</code> if transaction was read, <code>false</code> if
+     * there is no next transaction.
+     * @throws IncompleteTransactionException Thrown if next transaction is not
+     * fully written to transaction log.
+     * @throws CRCValidationException Thrown if CRC validation failed.
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    public boolean readNextTransaction(TransactionBuffer buffer) throws IncompleteTransactionException, CRCValidationException, IOException {
+
+        return readNextTransaction(buffer, true);
+
+    }
+
+    /**
+     * Reads serialized bytes of next transaction into <code>buffer</code>
+     * without validating its CRC. CRC value written in file is stored in
+     * <code>buffer</code>, so validation can be done later, possibly on other
+     * thread, with <code>TransactionBuffer.isValid()</code>. Behavior is
+     * otherwise same as of <code>readNextTransaction()</code>.
+     *
+     * @param buffer Buffer to read transaction bytes into.
+     * @return <code>true</code> if transaction was read, <code>false</code> if
+     * there is no next transaction.
+     * @throws IncompleteTransactionException Thrown if next transaction is not
+     * fully written to transaction log.
+     * @throws CRCValidationException Thrown if delimiter byte is wrong.
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    public boolean readNextFrame(TransactionBuffer buffer) throws IncompleteTransactionException, CRCValidationException, IOException {
+
+        return readNextTransaction(buffer, false);
 
+    }
+
+    /**
+     * Reads next transaction into <code>buffer</code> and validates its CRC if
+     * <code>validate</code> is <code>true</code>. Subclasses that do their own
+     * reading override this method.
+     *
+     * @param buffer Buffer to read transaction bytes into.
+     * @param validate If <code>true</code> CRC is validated.
+     * @return <code>true</code> if transaction was read, <code>false</code> if
+     * there is no next transaction.
+     * @throws IncompleteTransactionException Thrown if next transaction is not
+     * fully written to transaction log.
+     * @throws CRCValidationException Thrown if CRC validation failed.
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    protected boolean readNextTransaction(TransactionBuffer buffer, boolean validate) throws IncompleteTransactionException, CRCValidationException, IOException {
+
+        long length = knownLength;
+
+        //length is only asked again at end or when reading reaches known length
+        if (endFilePointer == lastTransactionFilePointer || lastTransactionFilePointer + FRAME_HEADER_SIZE > length) {
+
+            length = knownLength = raf.length();
+
+            if (isEndUnchanged(length)) {
+                return false;
+            }
+
+        }
+
+        if (lastTransactionFilePointer + FRAME_HEADER_SIZE > length) {
             //end of file, otherwise both values should be present in previously padded space
-            raf.seek(lastTransactionFilePointer);
-            return null;
+            markEnd(length);
+            return false;
         }
 
+        raf.seek(lastTransactionFilePointer);
+        raf.readFully(frameHeader);
+
+        long crcValue = frameHeaderView.getLong(0);
+        int len = frameHeaderView.getInt(8);
+
         if (crcValue == 0 && len == 0) {
             //we are in padded space (or brutal corruption)
             raf.seek(lastTransactionFilePointer);
-            return null;
+            knownLength = raf.length();
+            markEnd(knownLength);
+            return false;
         }
 
-        try {
+        endFilePointer = -1;
+
+        if (len < 0) {
+            raf.seek(lastTransactionFilePointer);
+            throw new CRCValidationException("Transaction length is negative");
+        }
 
-            bytes = new byte[len];
-            raf.readFully(bytes);
-            EOF = ia.readByte("EOF");
+        boolean resumed = partialBytes != null && partialBytes.length == len && partialCrcValue == crcValue;
+        byte[] bytes = resumed ? partialBytes : buffer.prepare(len);
+        int read = resumed ? partialLength : 0;
 
-        } catch (IOException e) {
+        raf.seek(lastTransactionFilePointer + FRAME_HEADER_SIZE + read);
+
+        while (read < len) {
+
+            int n = raf.read(bytes, read, len - read);
+
+            if (n < 0) {
+                break;
+            }
+
+            read += n;
 
-            //not whole transaction has been written jet
-            raf.seek(lastTransactionFilePointer);
-            throw new IncompleteTransactionException("Problem with reading file before transaction end", e);
         }
 
-        if (EOF == 0) {
+        int EOF = read == len ? raf.read() : -1;
+
+        if (EOF <= 0) {
+
+            //not whole transaction has been written jet, keep what was read
+            if (!resumed) {
+                partialBytes = new byte[len];
+                System.arraycopy(bytes, 0, partialBytes, 0, read);
+            }
+
+            partialLength = read;
+            partialCrcValue = crcValue;
             raf.seek(lastTransactionFilePointer);
+
+            if (EOF < 0) {
+                throw new IncompleteTransactionException("Problem with reading file before transaction end");
+            }
+
             throw new IncompleteTransactionException("Transaction delimiter byte not set");
         }
 
+        partialBytes = null;
+
         if (EOF != 'B') {
             raf.seek(lastTransactionFilePointer);
             throw new CRCValidationException("Transaction delimiter byte wrong");
         }
 
-        Checksum crc = new Adler32();
-        crc.update(bytes, 0, bytes.length);
-        if (crcValue != crc.getValue()) {
+        if (resumed) {
+            System.arraycopy(bytes, 0, buffer.prepare(len), 0, len);
+        }
+
+        buffer.setCrcValue(crcValue);
+
+        //resumed transaction is always validated as kept bytes may be stale
+        boolean valid = !validate && !resumed || buffer.isValid();
+
+        if (!valid && resumed) {
+
+            //kept bytes may be stale, read whole transaction again
+            try {
+
+                raf.seek(lastTransactionFilePointer + FRAME_HEADER_SIZE);
+                raf.readFully(buffer.prepare(len), 0, len);
+                raf.readByte();
+
+            } catch (IOException e) {
+
+                raf.seek(lastTransactionFilePointer);
+                throw new IncompleteTransactionException("Problem with reading file before transaction end", e);
+            }
+
+            valid = buffer.isValid();
+
+        }
+
+        if (!valid) {
             raf.seek(lastTransactionFilePointer);
             throw new CRCValidationException("Transaction CRC validation failed");
         }
 
-        TxnHeader hdr = new TxnHeader();
-        Record record = deserializeTxn(bytes, hdr);
-
         lastTransactionFilePointer = raf.getFilePointer();
-        return new Transaction(hdr, record);
+        return true;
+
+    }
+
+    /**
+     * Moves file pointer behind last completely written transaction, so next
+     * call to <code>getNextTransaction()</code> returns first transaction
+     * written after this call. Transactions are recognized only by their
+     * length and delimiter byte. Their CRC is not validated and they are not
+     * deserialized, so this is much faster than reading them. File pointer
+     * stops in front of first transaction that is not completely written or
+     * has wrong delimiter byte, where <code>getNextTransaction()</code>
+     * reports the problem.
+     *
+     * @return Number of skipped transactions.
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    public long skipToEnd() throws IOException {
+
+        long position = lastTransactionFilePointer;
+        long size = raf.length();
+        long count = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(transactionLogFile), 64 * 1024))) {
+
+            skipFully(in, position);
+
+            while (position + FRAME_HEADER_SIZE <= size) {
+
+                long crcValue = in.readLong();
+                int len = in.readInt();
+
+                if ((crcValue == 0 && len == 0) || len < 0 || position + FRAME_HEADER_SIZE + len + 1 > size) {
+                    break;
+                }
+
+                skipFully(in, len);
+
+                if (in.readByte() != 'B') {
+                    break;
+                }
+
+                position += FRAME_HEADER_SIZE + len + 1;
+                count++;
+
+            }
+
+        } catch (EOFException e) {
+            //file was truncated while skipping, stop at last complete transaction
+        }
+
+        seek(position);
+
+        return count;
 
     }
 
@@ -172,7 +438,136 @@ public class TransactionLogFileReader {
      */
     public void reset() throws IOException {
 
-        raf.seek(resetFilePointer);
+        seek(resetFilePointer);
+
+    }
+
+    /**
+     * Returns file pointer. File pointer always points in front of next
+     * transaction.
+     *
+     * @return Offset of next transaction in transaction log file.
+     */
+    public long getPosition() {
+
+        return lastTransactionFilePointer;
+
+    }
+
+    /**
+     * Moves file pointer to <code>position</code>. Position must point in
+     * front of transaction, which is always the case for positions returned
+     * by <code>getPosition()</code>.
+     *
+     * @param position Offset of transaction in transaction log file.
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    public void seek(long position) throws IOException {
+
+        raf.seek(position);
+        lastTransactionFilePointer = position;
+        partialBytes = null;
+        endFilePointer = -1;
+
+    }
+
+    /**
+     * Closes transaction log file, or returns reader to pool it came from.
+     *
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (pool == null || !pool.release(this)) {
+            closeFile();
+        }
+
+    }
+
+    /**
+     * Checks whether transaction log file is still open. File can be closed
+     * without <code>close()</code>, for example <code>FileChannel</code> is
+     * closed when thread reading it is interrupted. Subclasses that do their
+     * own reading override this method.
+     *
+     * @return <code>true</code> if transaction log file is open.
+     */
+    public boolean isOpen() {
+
+        try {
+            return raf != null && raf.getFD().valid();
+        } catch (IOException e) {
+            return false;
+        }
+
+    }
+
+    /**
+     * Closes transaction log file. Subclasses that do their own reading
+     * override this method.
+     *
+     * @throws IOException Thrown if there is an IO problem.
+     */
+    protected void closeFile() throws IOException {
+
+        raf.close();
+
+    }
+
+    /*
+
+     Remembers state of file in which there are no more transactions behind
+     file pointer.
+
+     */
+    private void markEnd(long length) {
+
+        long now = System.currentTimeMillis();
+
+        endFilePointer = lastTransactionFilePointer;
+        endLength = length;
+        endLastModified = transactionLogFile.lastModified();
+        endUnchangeable = endLastModified != 0 && now - endLastModified > MODIFICATION_TIME_PRECISION;
+
+    }
+
+    /*
+
+     Returns true if file could not have been written since end was reached.
+     Length is compared first as it is known already, modification time costs
+     one more stat of file.
+
+     */
+    private boolean isEndUnchanged(long length) {
+
+        if (endFilePointer != lastTransactionFilePointer || endLength != length || !endUnchangeable) {
+            return false;
+        }
+
+        return transactionLogFile.lastModified() == endLastModified;
+
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+
+        while (n > 0) {
+
+            long skipped = in.skip(n);
+
+            if (skipped <= 0) {
+
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+
+                skipped = 1;
+
+            }
+
+            n -= skipped;
+
+        }
 
     }
 
@@ -1,4 +1,4 @@
-/* 
+/*
  * Copyright 2014 Alen Caljkusic.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -25,10 +25,44 @@ import java.io.IOException;
  */
 public class TransactionLogReaderFactory {
 
+    private final boolean memoryMapped;
+
+    /**
+     * Constructs factory that makes <code>RandomAccessFile</code> based
+     * <code>TransactionLogFileReader</code>s.
+     *
+     */
+    public TransactionLogReaderFactory() {
+
+        this(false);
+
+    }
+
+    /**
+     *
+     * @param memoryMapped If <code>true</code> factory makes
+     * <code>MappedTransactionLogFileReader</code>s, otherwise it makes
+     * <code>RandomAccessFile</code> based
+     * <code>TransactionLogFileReader</code>s.
+     */
+    public TransactionLogReaderFactory(boolean memoryMapped) {
+
+        this.memoryMapped = memoryMapped;
+
+    }
+
     public TransactionLogFileReader getReader(File transactionLog) throws FileNotFoundException, IOException {
 
+        if (memoryMapped) {
+            return new MappedTransactionLogFileReader(transactionLog);
+        }
+
         return new TransactionLogFileReader(transactionLog);
 
     }
 
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
 }
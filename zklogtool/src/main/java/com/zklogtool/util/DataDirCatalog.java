@@ -0,0 +1,373 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.util;
+
+import static com.zklogtool.util.Util.getZxidFromName;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Catalog of transaction log and snapshot files in one directory. Files are
+ * kept in maps keyed by zxid from file name, so finding first, last or next
+ * file does not require listing and sorting directory.
+ * <br>
+ * Directory is listed once. After that catalog is refreshed incrementally from
+ * <code>WatchService</code> events each time it is accessed. If directory can
+ * not be watched, or watch service reports that events were lost, directory is
+ * listed again. Events are delivered asynchronously, so on every access
+ * catalog also checks modification time of directory and lists it again if it
+ * changed since last listing. File created right before access is therefore
+ * always seen, and directory is still not listed while nothing changes in it.
+ * <br>
+ * Only files named "log.xxxx" and "snapshot.xxxx", where xxxx is hexadecimal
+ * zxid, are part of catalog.
+ * <br>
+ * At most <code>MAX_CATALOGS</code> catalogs are shared. Least recently used
+ * catalog over that limit stops watching its directory and is forgotten, so
+ * long running processes that visit many directories do not keep watching
+ * all of them. Catalog that stopped watching stays usable, it lists directory
+ * on every access.
+ *
+ */
+public class DataDirCatalog {
+
+    private static Logger logger = getLogger(DataDirCatalog.class);
+
+    /**
+     * Maximum number of catalogs shared through <code>getCatalog()</code>.
+     */
+    public final static int MAX_CATALOGS = 32;
+
+    //in access order, so eldest entry is least recently used catalog
+    private final static Map<File, DataDirCatalog> catalogs = new LinkedHashMap<File, DataDirCatalog>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, DataDirCatalog> eldest) {
+
+            if (size() <= MAX_CATALOGS) {
+                return false;
+            }
+
+            eldest.getValue().stopWatching();
+
+            return true;
+
+        }
+
+    };
+
+    private static WatchService watchService;
+    private static boolean watchServiceFailed;
+
+    private final File dir;
+    private final NavigableMap<Long, File> transactionLogs = new TreeMap<>();
+    private final NavigableMap<Long, File> snapshots = new TreeMap<>();
+
+    private WatchKey watchKey;
+    private boolean scanned;
+    private long scannedDirModified;
+
+    /**
+     * Returns catalog of <code>dir</code> shared by all users of same
+     * directory, so directory is listed and watched only once.
+     *
+     * @param dir Directory with transaction log or snapshot files.
+     * @return Catalog of <code>dir</code>.
+     */
+    public static synchronized DataDirCatalog getCatalog(File dir) {
+
+        File key = dir.getAbsoluteFile();
+        DataDirCatalog catalog = catalogs.get(key);
+
+        if (catalog == null) {
+            catalog = new DataDirCatalog(key, true);
+            catalogs.put(key, catalog);
+        }
+
+        return catalog;
+
+    }
+
+    /*
+
+     Watch service returns same key when directory is registered twice, so
+     watching catalogs must only be created through getCatalog().
+
+     */
+    DataDirCatalog(File dir, boolean watch) {
+
+        this.dir = dir;
+
+        if (watch) {
+
+            WatchService service = getWatchService();
+
+            if (service != null) {
+
+                try {
+                    watchKey = dir.toPath().register(service, ENTRY_CREATE, ENTRY_DELETE);
+                } catch (IOException | RuntimeException e) {
+                    logger.debug("Directory " + dir + " can not be watched, it will be listed on every access", e);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     *
+     * @return Transaction log files ordered by zxid.
+     */
+    public synchronized List<File> getTransactionLogs() {
+
+        refresh();
+
+        return new ArrayList<>(transactionLogs.values());
+
+    }
+
+    /**
+     *
+     * @return Snapshot files ordered by zxid.
+     */
+    public synchronized List<File> getSnapshots() {
+
+        refresh();
+
+        return new ArrayList<>(snapshots.values());
+
+    }
+
+    /**
+     *
+     * @return Transaction log file with lowest zxid, or <code>null</code> if
+     * there are no transaction log files.
+     */
+    public synchronized File getFirstTransactionLog() {
+
+        refresh();
+
+        return value(transactionLogs.firstEntry());
+
+    }
+
+    /**
+     *
+     * @return Transaction log file with highest zxid, or <code>null</code> if
+     * there are no transaction log files.
+     */
+    public synchronized File getLastTransactionLog() {
+
+        refresh();
+
+        return value(transactionLogs.lastEntry());
+
+    }
+
+    /**
+     *
+     * @param zxid Zxid.
+     * @return Transaction log file with lowest zxid higher than
+     * <code>zxid</code>, or <code>null</code> if there is no such file.
+     */
+    public synchronized File getTransactionLogAfter(long zxid) {
+
+        refresh();
+
+        return value(transactionLogs.higherEntry(zxid));
+
+    }
+
+    /**
+     *
+     * @param zxid Zxid.
+     * @return Snapshot file with highest zxid lower or equal to
+     * <code>zxid</code>, or <code>null</code> if there is no such file.
+     */
+    public synchronized File getSnapshotAtOrBefore(long zxid) {
+
+        refresh();
+
+        return value(snapshots.floorEntry(zxid));
+
+    }
+
+    /**
+     * Cancels watching of directory. Catalog lists directory on every access
+     * after this.
+     *
+     */
+    public synchronized void stopWatching() {
+
+        if (watchKey != null) {
+            watchKey.cancel();
+            watchKey = null;
+        }
+
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     *
+     * @return <code>true</code> if catalog is refreshed from watch service
+     * events instead of listing directory on every access.
+     */
+    public synchronized boolean isWatched() {
+        return watchKey != null && watchKey.isValid();
+    }
+
+    /*
+
+     Watch key is never reset, so it is queued in watch service only once and
+     events keep accumulating in it until they are polled here.
+
+     */
+    private void refresh() {
+
+        if (!scanned || !isWatched()) {
+            scan();
+            return;
+        }
+
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+
+            if (event.kind() == OVERFLOW) {
+                scan();
+                return;
+            }
+
+            String name = ((Path) event.context()).getFileName().toString();
+
+            if (event.kind() == ENTRY_CREATE) {
+                add(new File(dir, name));
+            } else if (event.kind() == ENTRY_DELETE) {
+                remove(name);
+            }
+
+        }
+
+        if (!watchKey.isValid()) {
+            //directory was deleted or moved
+            scan();
+            return;
+        }
+
+        //file might be created but its event not delivered yet, single stat of directory tells whether anything changed since last listing
+        if (dir.lastModified() != scannedDirModified) {
+            scan();
+        }
+
+    }
+
+    private void scan() {
+
+        //events up to now are covered by listing
+        if (watchKey != null) {
+            watchKey.pollEvents();
+        }
+
+        scannedDirModified = dir.lastModified();
+        transactionLogs.clear();
+        snapshots.clear();
+
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File f : files) {
+                add(f);
+            }
+        }
+
+        scanned = true;
+
+    }
+
+    private void add(File file) {
+
+        long zxid = getZxidFromName(file.getName());
+
+        if (zxid == -1) {
+            return;
+        }
+
+        if (file.getName().startsWith("log")) {
+            transactionLogs.put(zxid, file);
+        } else {
+            snapshots.put(zxid, file);
+        }
+
+    }
+
+    private void remove(String name) {
+
+        long zxid = getZxidFromName(name);
+
+        if (zxid == -1) {
+            return;
+        }
+
+        NavigableMap<Long, File> files = name.startsWith("log") ? transactionLogs : snapshots;
+        File file = files.get(zxid);
+
+        if (file != null && file.getName().equals(name)) {
+            files.remove(zxid);
+        }
+
+    }
+
+    private static File value(Map.Entry<Long, File> entry) {
+        return entry != null ? entry.getValue() : null;
+    }
+
+    private static synchronized WatchService getWatchService() {
+
+        if (watchService == null && !watchServiceFailed) {
+
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.debug("Watch service not available, directories will be listed on every access", e);
+                watchServiceFailed = true;
+            }
+
+        }
+
+        return watchService;
+
+    }
+
+}
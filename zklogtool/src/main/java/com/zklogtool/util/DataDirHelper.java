@@ -15,68 +15,19 @@
  */
 package com.zklogtool.util;
 
-import static com.zklogtool.util.Util.getZxidFromName;
 import java.io.File;
-import java.io.FilenameFilter;
-import java.util.ArrayList;
-import static java.util.Collections.sort;
-import java.util.Comparator;
 import java.util.List;
 
 /**
  * Helper class used for finding and sorting transaction log and snapshot files.
+ * Files are taken from <code>DataDirCatalog</code> of each directory, so
+ * directories are not listed on every call.
  * 
  */
 public class DataDirHelper {
 
     private final File transactionLogDir;
     private final File snapshotDir;
-    
-    FilenameFilter snapFilter = new FilenameFilter(){
-
-            @Override
-            public boolean accept(File file, String name) {
-                if(name.startsWith("snapshot"))
-                    return true;
-                else
-                    return false;
-                
-            }      
-        
-        };
-    
-    
-    FilenameFilter logFilter = new FilenameFilter(){
-
-            @Override
-            public boolean accept(File file, String name) {
-                if(name.startsWith("log"))
-                    return true;
-                else
-                    return false;
-                
-            }      
-        
-        };
-    
-    Comparator<File> comparator = new Comparator<File>(){
-
-        @Override
-        public int compare(File t, File t1) {
-            
-            long first = getZxidFromName(t.getName());
-            long second = getZxidFromName(t1.getName());
-            
-            if(first > second)
-                return 1;
-            else if(first == second)
-                return 0;
-            else
-                return -1;     
-            
-        }        
-    
-    };
 
     /**
      *
@@ -91,36 +42,22 @@ public class DataDirHelper {
 
     /**
      *
-     * @return Lexicographically ordered list of snapshot files.
+     * @return Snapshot files ordered by zxid in file name.
      */
     public List<File> getSortedSnapshotList() {
               
-        List<File> files = new ArrayList<>();
-        
-        for(File f : snapshotDir.listFiles(snapFilter)){    
-            files.add(f);
-        }
+        return DataDirCatalog.getCatalog(snapshotDir).getSnapshots();
         
-        sort(files,comparator);
-        
-        return files;
     }
 
     /**
      *
-     * @return Lexicographically ordered list of transaction log files.
+     * @return Transaction log files ordered by zxid in file name.
      */
     public List<File> getSortedLogList() {  
 
-        List<File> files = new ArrayList<>();
-
-        for(File f : transactionLogDir.listFiles(logFilter)){    
-            files.add(f);
-        }
-     
-        sort(files,comparator);
+        return DataDirCatalog.getCatalog(transactionLogDir).getTransactionLogs();
         
-        return files;
     }
 
 }
@@ -0,0 +1,365 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.util;
+
+import com.zklogtool.index.TransactionLogIndex;
+import com.zklogtool.index.TransactionLogIndexer;
+import static com.zklogtool.util.Util.getZxidFromName;
+import static com.zklogtool.util.Util.longToHexString;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Chooses snapshot from which Zookeeper data tree is reconstructed at some
+ * zxid. Reconstruction reads snapshot and replays transactions after it, so
+ * snapshot is chosen to minimize sum of snapshot file size and size of
+ * transaction log that has to be replayed.
+ * <br>
+ * Snapshot is fuzzy, it also holds some of transactions written while it was
+ * taken. Those transactions are always replayed, so snapshot can be used only
+ * if they are all in transaction log and none of them is behind target zxid.
+ * Zookeeper does not start snapshot while previous one is being written, so
+ * transactions in snapshot are never behind zxid of next snapshot. Snapshot
+ * is therefore used for target zxid only if next snapshot is not behind it,
+ * unless data tree is reconstructed at last transaction. Transaction log must
+ * hold transaction right after snapshot.
+ * <br>
+ * Size of replayed part of transaction log file is estimated from length of
+ * data in it and span of zxids in it, taken from names of files. Zookeeper
+ * preallocates transaction log files, so length of data is taken from stored
+ * index of file, or found by reading few blocks of file where zero padding
+ * starts. Files are taken from <code>DataDirCatalog</code>.
+ *
+ */
+public class SnapshotPlanner {
+
+    private static Logger logger = getLogger(SnapshotPlanner.class);
+
+    //blocks read while looking for zero padding
+    private final static int BLOCK_SIZE = 4096;
+
+    private final List<File> snapshots;
+    private final List<File> transactionLogs;
+    private final Map<File, Long> dataLengths = new HashMap<>();
+    private TransactionLogIndexer indexer = new TransactionLogIndexer();
+
+    /**
+     *
+     * @param transactionLogDir Directory where transaction log files are
+     * stored.
+     * @param snapshotDir Directory where snapshot files are stored.
+     */
+    public SnapshotPlanner(File transactionLogDir, File snapshotDir) {
+
+        this(DataDirCatalog.getCatalog(snapshotDir).getSnapshots(), DataDirCatalog.getCatalog(transactionLogDir).getTransactionLogs());
+
+    }
+
+    /**
+     *
+     * @param snapshots Snapshot files ordered by zxid.
+     * @param transactionLogs Transaction log files ordered by zxid.
+     */
+    public SnapshotPlanner(List<File> snapshots, List<File> transactionLogs) {
+
+        this.snapshots = snapshots;
+        this.transactionLogs = transactionLogs;
+
+    }
+
+    /**
+     * Chooses cheapest snapshot for reconstruction of data tree at
+     * <code>targetZxid</code>. When costs are equal later snapshot is chosen.
+     *
+     * @param targetZxid Zxid at which data tree is reconstructed, or
+     * <code>Long.MAX_VALUE</code> for last transaction.
+     * @return Plan with chosen snapshot, or <code>null</code> if there is no
+     * snapshot that can be used.
+     */
+    public Plan plan(long targetZxid) {
+
+        Plan best = null;
+
+        for (int i = 0; i < snapshots.size(); i++) {
+
+            long snapshotZxid = getZxidFromName(snapshots.get(i).getName());
+
+            if (snapshotZxid > targetZxid) {
+                break;
+            }
+
+            if (targetZxid != Long.MAX_VALUE && (i + 1 == snapshots.size()
+                    || getZxidFromName(snapshots.get(i + 1).getName()) > targetZxid)) {
+                //transactions in snapshot may be behind target zxid
+                continue;
+            }
+
+            if (!isCovered(snapshotZxid)) {
+                continue;
+            }
+
+            Plan plan = new Plan(snapshots.get(i), snapshotZxid, getReplayBytes(snapshotZxid, targetZxid));
+
+            if (best == null || plan.getCost() <= best.getCost()) {
+                best = plan;
+            }
+
+        }
+
+        logger.debug("Snapshot plan for zxid " + longToHexString(targetZxid) + ": " + best);
+
+        return best;
+
+    }
+
+    /**
+     * Chooses first snapshot that can be used for reconstruction, that is
+     * first data tree state that can be reconstructed.
+     *
+     * @return Plan with chosen snapshot, or <code>null</code> if there is no
+     * snapshot that can be used. Replay size covers transactions up to next
+     * snapshot.
+     */
+    public Plan planFirst() {
+
+        for (int i = 0; i < snapshots.size(); i++) {
+
+            long snapshotZxid = getZxidFromName(snapshots.get(i).getName());
+
+            if (isCovered(snapshotZxid)) {
+
+                long toZxid = i + 1 < snapshots.size() ? getZxidFromName(snapshots.get(i + 1).getName()) : snapshotZxid;
+
+                return new Plan(snapshots.get(i), snapshotZxid, getReplayBytes(snapshotZxid, toZxid));
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    //transaction log must hold transaction right after snapshot
+    private boolean isCovered(long snapshotZxid) {
+
+        return !transactionLogs.isEmpty() && getZxidFromName(transactionLogs.get(0).getName()) <= snapshotZxid + 1;
+
+    }
+
+    /*
+
+     Bytes of each transaction log file are spread evenly over zxids from its
+     name up to name of next file. Last zxid of last file is not known, so its
+     span is taken up to target zxid or last snapshot. Part of last file
+     beyond that is replayed for every snapshot when reconstructing at last
+     transaction, so it does not change which snapshot is cheapest.
+
+     */
+    private long getReplayBytes(long snapshotZxid, long targetZxid) {
+
+        long lastKnownZxid = targetZxid != Long.MAX_VALUE ? targetZxid
+                : getZxidFromName(snapshots.get(snapshots.size() - 1).getName());
+        long replayBytes = 0;
+
+        for (int i = 0; i < transactionLogs.size(); i++) {
+
+            File transactionLog = transactionLogs.get(i);
+            long startZxid = getZxidFromName(transactionLog.getName());
+            long endZxid = i + 1 < transactionLogs.size()
+                    ? getZxidFromName(transactionLogs.get(i + 1).getName()) - 1
+                    : Math.max(startZxid, lastKnownZxid);
+
+            long from = Math.max(startZxid, snapshotZxid + 1);
+            long to = Math.min(endZxid, targetZxid);
+
+            if (from > to) {
+                continue;
+            }
+
+            replayBytes += (long) (getDataLength(transactionLog) * ((double) (to - from + 1) / (endZxid - startZxid + 1)));
+
+        }
+
+        return replayBytes;
+
+    }
+
+    private long getDataLength(File transactionLog) {
+
+        Long length = dataLengths.get(transactionLog);
+
+        if (length == null) {
+
+            TransactionLogIndex index = indexer.getStoredIndex(transactionLog);
+
+            if (index != null) {
+
+                length = index.getEndOffset();
+
+            } else {
+
+                try {
+                    length = findDataEnd(transactionLog);
+                } catch (IOException e) {
+                    logger.debug("Problem reading " + transactionLog + ", using its length", e);
+                    length = transactionLog.length();
+                }
+
+            }
+
+            dataLengths.put(transactionLog, length);
+
+        }
+
+        return length;
+
+    }
+
+    /*
+
+     Zeros behind data are padding, so binary search over blocks finds first
+     block from which file is all zeros. Block of data that is all zeros only
+     makes estimate lower.
+
+     */
+    static long findDataEnd(File file) throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            long length = raf.length();
+            byte[] block = new byte[BLOCK_SIZE];
+            long low = 0;
+            long high = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+            while (low < high) {
+
+                long middle = (low + high) >>> 1;
+
+                if (readBlock(raf, middle, block) == -1) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+
+            }
+
+            return low == 0 ? 0 : (low - 1) * BLOCK_SIZE + readBlock(raf, low - 1, block) + 1;
+
+        }
+
+    }
+
+    //returns position of last non zero byte in block, or -1 if block is all zeros
+    private static int readBlock(RandomAccessFile raf, long blockNumber, byte[] block) throws IOException {
+
+        long position = blockNumber * BLOCK_SIZE;
+        int length = (int) Math.min(BLOCK_SIZE, raf.length() - position);
+
+        raf.seek(position);
+        raf.readFully(block, 0, length);
+
+        for (int i = length - 1; i >= 0; i--) {
+            if (block[i] != 0) {
+                return i;
+            }
+        }
+
+        return -1;
+
+    }
+
+    public TransactionLogIndexer getTransactionLogIndexer() {
+        return indexer;
+    }
+
+    /**
+     *
+     * @param indexer <code>TransactionLogIndexer</code> whose stored indexes
+     * tell length of data in transaction log files.
+     */
+    public void setTransactionLogIndexer(TransactionLogIndexer indexer) {
+        this.indexer = indexer;
+        dataLengths.clear();
+    }
+
+    /**
+     * Snapshot chosen by <code>SnapshotPlanner</code> and estimated cost of
+     * reconstruction from it.
+     *
+     */
+    public static class Plan {
+
+        private final File snapshot;
+        private final long snapshotZxid;
+        private final long replayBytes;
+
+        Plan(File snapshot, long snapshotZxid, long replayBytes) {
+
+            this.snapshot = snapshot;
+            this.snapshotZxid = snapshotZxid;
+            this.replayBytes = replayBytes;
+
+        }
+
+        public File getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         *
+         * @return Zxid of last transaction committed before snapshot was
+         * taken, from snapshot file name.
+         */
+        public long getSnapshotZxid() {
+            return snapshotZxid;
+        }
+
+        public long getSnapshotBytes() {
+            return snapshot.length();
+        }
+
+        /**
+         *
+         * @return Estimated size of transaction log that is replayed.
+         */
+        public long getReplayBytes() {
+            return replayBytes;
+        }
+
+        /**
+         *
+         * @return Size of snapshot and estimated size of transaction log that
+         * is replayed.
+         */
+        public long getCost() {
+            return getSnapshotBytes() + replayBytes;
+        }
+
+        @Override
+        public String toString() {
+            return snapshot.getName() + " (snapshot " + getSnapshotBytes() + " bytes, replay " + replayBytes + " bytes)";
+        }
+
+    }
+
+}
@@ -16,7 +16,12 @@
 package com.zklogtool.util;
 
 import static java.lang.Long.parseLong;
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.server.DataNode;
 
@@ -111,6 +116,73 @@ public abstract class Util {
 
     }
     
+    /**
+     * Parses zxid given on command line. Zxid prefixed with <i>0x</i> is
+     * parsed as hex value, otherwise it is parsed as decimal value.
+     *
+     * @param zxid Hex or decimal zxid.
+     * @return Parsed zxid.
+     * @throws NumberFormatException Thrown if <code>zxid</code> is not a
+     * number.
+     */
+    public static long parseZxid(String zxid) {
+
+        if (zxid.startsWith("0x")) {
+            return parseLong(zxid.substring(2), 16);
+        }
+
+        return parseLong(zxid);
+
+    }
+
+    /**
+     * Parses time given on command line. Time is either number of milliseconds
+     * since epoch, or local date and time in <i>yyyy-MM-dd HH:mm</i> or
+     * <i>yyyy-MM-dd HH:mm:ss</i> format, optionally with <i>T</i> instead of
+     * space, in default time zone.
+     *
+     * @param time Time in milliseconds or local date and time.
+     * @return Parsed time in milliseconds since epoch.
+     * @throws NumberFormatException Thrown if <code>time</code> is not a time.
+     */
+    public static long parseTime(String time) {
+
+        if (time.matches("\\d+")) {
+            return parseLong(time);
+        }
+
+        try {
+
+            return LocalDateTime.parse(time.replace(' ', 'T')).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        } catch (DateTimeParseException e) {
+
+            throw new NumberFormatException("Not a time: " + time);
+
+        }
+
+    }
+
+    /**
+     * Closes <code>closeable</code> ignoring any problem. Used where resource
+     * is released on a path that can not report it.
+     *
+     * @param closeable Resource to close, may be <code>null</code>.
+     */
+    public static void closeQuietly(Closeable closeable) {
+
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing to do about it
+        }
+
+    }
+
     public static String longToHexString(long number){
     
         return "0x"+Long.toHexString(number);
@@ -0,0 +1,121 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import static com.zklogtool.test.TransactionAssert.assertConsecutive;
+import static com.zklogtool.test.TransactionAssert.assertSameTransactions;
+import static com.zklogtool.test.TransactionLogGenerator.corruptNext;
+import java.io.File;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class ParallelTransactionIteratorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    TransactionLog transactionLog;
+    TransactionLogGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        //log.1, log.29, log.51, log.79, log.a1
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 39);
+
+        for (int i = 0; i < 4; i++) {
+            generator.rollLog();
+            generator.createNodes("/b" + i + "_", 40);
+        }
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+    }
+
+    @Test
+    public void sameTransactionsAsSerialIterator() throws Exception {
+
+        assertSameTransactions(transactionLog.iterator(Long.MIN_VALUE, Long.MAX_VALUE), iterator(Long.MIN_VALUE, Long.MAX_VALUE, 3, 4), 200);
+        assertSameTransactions(transactionLog.iterator(Long.MIN_VALUE, Long.MAX_VALUE), iterator(Long.MIN_VALUE, Long.MAX_VALUE, 1, 1), 200);
+        assertSameTransactions(transactionLog.iterator(35, 125), iterator(35, 125, 2, 5), 91);
+        assertSameTransactions(transactionLog.iterator(80, 80), iterator(80, 80, 4, 1000), 1);
+        assertSameTransactions(transactionLog.iterator(190, 300), transactionLog.parallelIterator(190, 300, 8), 11);
+
+    }
+
+    @Test
+    public void iterationContinuesWhenTransactionsAreWritten() throws Exception {
+
+        try (ParallelTransactionIterator iterator = iterator(Long.MIN_VALUE, Long.MAX_VALUE, 2, 8)) {
+
+            assertEquals(201, assertConsecutive(iterator, 1));
+            assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+            generator.createNodes("/c", 5);
+            generator.rollLog();
+            generator.createNodes("/d", 5);
+
+            assertEquals(211, assertConsecutive(iterator, 201));
+
+        }
+
+    }
+
+    @Test
+    public void corruptionIsReportedAtItsPosition() throws Exception {
+
+        TransactionIterator serial = transactionLog.iterator();
+        Transaction previous = null;
+
+        for (int i = 0; i < 99; i++) {
+            previous = serial.next();
+        }
+
+        assertEquals("log.51", previous.getTransactionLogFile().getName());
+
+        //corrupt data of transaction 100, in middle of third file
+        corruptNext(previous);
+
+        try (ParallelTransactionIterator iterator = iterator(Long.MIN_VALUE, Long.MAX_VALUE, 4, 4)) {
+
+            assertEquals(100, assertConsecutive(iterator, 1));
+            assertEquals(TransactionState.CORRUPTION, iterator.nextTransactionState());
+            assertEquals(TransactionState.CORRUPTION, iterator.nextTransactionState());
+
+        }
+
+    }
+
+    private ParallelTransactionIterator iterator(long fromZxid, long toZxid, int threads, int readAhead) {
+
+        return new ParallelTransactionIterator(transactionLog, transactionLog.findPosition(fromZxid), fromZxid, toZxid, threads, readAhead);
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import static com.zklogtool.test.TransactionAssert.assertConsecutive;
+import static com.zklogtool.test.TransactionAssert.assertSameTransactions;
+import static com.zklogtool.test.TransactionLogGenerator.corruptNext;
+import java.io.File;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class PipelinedTransactionIteratorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    TransactionLogGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        //log.1, log.3d, log.79
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 59);
+        generator.rollLog();
+        generator.createNodes("/b", 60);
+        generator.rollLog();
+        generator.createNodes("/c", 60);
+
+    }
+
+    @Test
+    public void sameTransactionsAsSerialIterator() throws Exception {
+
+        for (boolean memoryMapped : new boolean[]{false, true}) {
+
+            TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory(memoryMapped));
+
+            assertSameTransactions(transactionLog.iterator(Long.MIN_VALUE, Long.MAX_VALUE), transactionLog.pipelinedIterator(Long.MIN_VALUE, Long.MAX_VALUE, 4), 180);
+            assertSameTransactions(transactionLog.iterator(50, 130), transactionLog.pipelinedIterator(50, 130, 3), 81);
+            assertSameTransactions(transactionLog.iterator(179, 500), transactionLog.pipelinedIterator(179, 500, 1), 2);
+
+        }
+
+    }
+
+    @Test
+    public void iterationContinuesWhenTransactionsAreWritten() throws Exception {
+
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+        try (PipelinedTransactionIterator iterator = transactionLog.pipelinedIterator(Long.MIN_VALUE, Long.MAX_VALUE, 2)) {
+
+            assertEquals(181, assertConsecutive(iterator, 1));
+            assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+            generator.createNodes("/d", 5);
+            generator.rollLog();
+            generator.createNodes("/e", 5);
+
+            assertEquals(191, assertConsecutive(iterator, 181));
+
+        }
+
+    }
+
+    @Test
+    public void iterationStopsInFrontOfCorruptedTransaction() throws Exception {
+
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+        TransactionIterator serial = transactionLog.iterator();
+        Transaction ninth = null;
+
+        for (int i = 0; i < 9; i++) {
+            ninth = serial.next();
+        }
+
+        //corrupt data of tenth transaction
+        corruptNext(ninth);
+
+        try (PipelinedTransactionIterator iterator = transactionLog.pipelinedIterator(Long.MIN_VALUE, Long.MAX_VALUE, 4)) {
+
+            assertEquals(10, assertConsecutive(iterator, 1));
+            assertEquals(TransactionState.CORRUPTION, iterator.nextTransactionState());
+            assertEquals(TransactionState.CORRUPTION, iterator.nextTransactionState());
+
+        }
+
+    }
+
+}
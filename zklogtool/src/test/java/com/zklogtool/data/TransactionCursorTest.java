@@ -0,0 +1,136 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionCursorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    TransactionLog transactionLog;
+    TransactionLogGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        //log.1, log.15
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 19);
+        generator.rollLog();
+        generator.createNodes("/b", 20);
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+    }
+
+    @Test
+    public void cursorMatchesIterator() throws Exception {
+
+        TransactionCursor cursor = transactionLog.cursor();
+        TransactionIterator iterator = transactionLog.iterator();
+
+        while (iterator.hasNext()) {
+
+            Transaction t = iterator.next();
+            TxnHeader header = t.getTxnHeader();
+
+            assertEquals(TransactionState.OK, cursor.advance());
+            assertEquals(header.getClientId(), cursor.getClientId());
+            assertEquals(header.getCxid(), cursor.getCxid());
+            assertEquals(header.getZxid(), cursor.getZxid());
+            assertEquals(header.getTime(), cursor.getTime());
+            assertEquals(header.getType(), cursor.getType());
+            assertEquals(header, cursor.getTxnHeader());
+            assertEquals(t.getTransactionLogFile(), cursor.getTransactionLogFile());
+            assertEquals(t.getNextOffset(), cursor.getNextOffset());
+
+        }
+
+        assertEquals(TransactionState.EMPTY, cursor.advance());
+
+        generator.createNodes("/c", 1);
+
+        assertEquals(TransactionState.OK, cursor.advance());
+        assertEquals(41, cursor.getZxid());
+
+    }
+
+    @Test
+    public void cursorReusesBuffers() throws Exception {
+
+        TransactionCursor cursor = transactionLog.cursor(2, 40);
+
+        assertEquals(TransactionState.OK, cursor.advance());
+
+        byte[] bytes = cursor.getTxnBytes();
+        TxnHeader header = cursor.getTxnHeader();
+
+        assertEquals(OpCode.create, cursor.getType());
+
+        Transaction t = cursor.toTransaction();
+
+        assertEquals(2, t.getTxnHeader().getZxid());
+        assertTrue(((CreateTxn) t.getTxnRecord()).getPath().startsWith("/a"));
+
+        long expectedZxid = 3;
+
+        while (cursor.advance() == TransactionState.OK) {
+
+            assertEquals(expectedZxid, cursor.getZxid());
+            assertSame(bytes, cursor.getTxnBytes());
+            assertSame(header, cursor.getTxnHeader());
+            expectedZxid++;
+
+        }
+
+        assertEquals(41, expectedZxid);
+        assertEquals(2, t.getTxnHeader().getZxid());
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cursorNotPositioned() {
+
+        TransactionCursor cursor = transactionLog.cursor(41, Long.MAX_VALUE);
+
+        assertEquals(TransactionState.EMPTY, cursor.advance());
+
+        cursor.getZxid();
+
+    }
+
+}
@@ -0,0 +1,223 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import static java.util.Arrays.asList;
+import org.apache.jute.BinaryOutputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionFilterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    TransactionLog transactionLog;
+    TransactionLogGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        //1 session, 2-11 /a1../a10, 12 setData /b, 13 delete /a2, 14 multi, 15-24 /c14../c23
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 10);
+        generator.append(OpCode.setData, new SetDataTxn("/b", "data".getBytes(), 1));
+        generator.rollLog();
+        generator.append(OpCode.delete, new DeleteTxn("/a2"));
+        generator.append(OpCode.multi, new MultiTxn(asList(
+                new Txn(OpCode.setData, serialize(new SetDataTxn("/x", "data".getBytes(), 1))),
+                new Txn(OpCode.delete, serialize(new DeleteTxn("/b"))))));
+        generator.createNodes("/c", 10);
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+    }
+
+    @Test
+    public void emptyFilterMatchesAll() {
+
+        assertEquals(range(1, 24), zxids(transactionLog.iterator(new TransactionFilter())));
+
+    }
+
+    @Test
+    public void headerConditions() {
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setTypes(OpCode.delete, OpCode.setData);
+
+        assertEquals(asList(12L, 13L), zxids(transactionLog.iterator(filter)));
+
+        filter = new TransactionFilter();
+        filter.setClientIds(TransactionLogGenerator.SESSION_ID + 1);
+
+        assertEquals(new ArrayList<Long>(), zxids(transactionLog.iterator(filter)));
+
+        filter.setClientIds(TransactionLogGenerator.SESSION_ID);
+        filter.setZxidRange(5, 20);
+        filter.setTimeRange(TransactionLogGenerator.START_TIME + 7000, TransactionLogGenerator.START_TIME + 15000);
+
+        assertEquals(range(7, 15), zxids(transactionLog.iterator(filter)));
+
+    }
+
+    @Test
+    public void pathConditions() {
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setPathPrefix("/b");
+
+        //setData /b and multi deleting /b
+        assertEquals(asList(12L, 14L), zxids(transactionLog.iterator(filter)));
+
+        filter.setPathPrefix("/a");
+
+        assertEquals(range(2, 11, 13), zxids(transactionLog.iterator(filter)));
+
+        filter.setPathPrefix(null);
+        filter.setPathPattern(Pattern.compile("/(x|c2.)"));
+
+        assertEquals(asList(14L, 21L, 22L, 23L, 24L), zxids(transactionLog.iterator(filter)));
+
+    }
+
+    @Test
+    public void acceptTransaction() {
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setTypes(OpCode.create, OpCode.multi);
+        filter.setPathPrefix("/x");
+
+        List<Long> accepted = new ArrayList<Long>();
+        TransactionIterator iterator = transactionLog.iterator();
+
+        while (iterator.hasNext()) {
+
+            Transaction t = iterator.next();
+
+            if (filter.accept(t)) {
+                accepted.add(t.getTxnHeader().getZxid());
+            }
+
+        }
+
+        assertEquals(asList(14L), accepted);
+
+    }
+
+    @Test
+    public void filteredCursorReadsOnlyRange() {
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setZxidRange(3, 12);
+        filter.setPathPrefix("/a");
+
+        TransactionCursor cursor = transactionLog.cursor(filter);
+
+        for (long zxid = 3; zxid <= 11; zxid++) {
+
+            assertEquals(TransactionState.OK, cursor.advance());
+            assertEquals(zxid, cursor.getZxid());
+
+        }
+
+        assertEquals(TransactionState.EMPTY, cursor.advance());
+
+    }
+
+    @Test
+    public void filteredIteratorContinuesWhenTransactionsAreAppended() throws IOException {
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setPathPrefix("/d");
+
+        TransactionIterator iterator = transactionLog.iterator(filter);
+
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+        generator.createNodes("/d", 1);
+
+        assertTrue(iterator.hasNext());
+        assertEquals(25, iterator.next().getTxnHeader().getZxid());
+        assertFalse(iterator.hasNext());
+
+    }
+
+    private List<Long> zxids(TransactionIterator iterator) {
+
+        List<Long> zxids = new ArrayList<Long>();
+
+        while (iterator.hasNext()) {
+            zxids.add(iterator.next().getTxnHeader().getZxid());
+        }
+
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+        return zxids;
+
+    }
+
+    private static List<Long> range(long from, long to, long... more) {
+
+        List<Long> zxids = new ArrayList<Long>();
+
+        for (long zxid = from; zxid <= to; zxid++) {
+            zxids.add(zxid);
+        }
+
+        for (long zxid : more) {
+            zxids.add(zxid);
+        }
+
+        return zxids;
+
+    }
+
+    private static byte[] serialize(Record record) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        record.serialize(BinaryOutputArchive.getArchive(out), "txn");
+
+        return out.toByteArray();
+
+    }
+
+}
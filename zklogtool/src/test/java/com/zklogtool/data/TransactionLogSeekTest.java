@@ -0,0 +1,331 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.index.TransactionLogIndexer;
+import com.zklogtool.reader.TransactionLogFileReader;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import static com.zklogtool.test.TransactionLogGenerator.START_TIME;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionLogSeekTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    TransactionLog transactionLog;
+    TransactionLogGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        //log.1, log.1f, log.3d
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 29);
+        generator.rollLog();
+        generator.createNodes("/b", 30);
+        generator.rollLog();
+        generator.createNodes("/c", 30);
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(tempFolder.newFolder("index"), 7));
+
+    }
+
+    @Test
+    public void iteratorFrom() {
+
+        assertIteration(1, transactionLog.iteratorFrom(0));
+        assertIteration(1, transactionLog.iteratorFrom(1));
+        assertIteration(17, transactionLog.iteratorFrom(17));
+        assertIteration(30, transactionLog.iteratorFrom(30));
+        assertIteration(31, transactionLog.iteratorFrom(31));
+        assertIteration(62, transactionLog.iteratorFrom(62));
+        assertIteration(90, transactionLog.iteratorFrom(90));
+
+    }
+
+    @Test
+    public void iteratorFromFutureZxid() throws Exception {
+
+        TransactionIterator iterator = transactionLog.iteratorFrom(91);
+
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+        generator.createNodes("/d", 1);
+
+        assertEquals(TransactionState.OK, iterator.nextTransactionState());
+        assertEquals(91, iterator.next().getTxnHeader().getZxid());
+
+    }
+
+    @Test
+    public void rangeIteration() {
+
+        assertRange(1, 90, transactionLog.iterator(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertRange(1, 10, transactionLog.iterator(Long.MIN_VALUE, 10));
+        assertRange(17, 30, transactionLog.iterator(17, 30));
+        assertRange(30, 31, transactionLog.iterator(30, 31));
+        assertRange(40, 70, transactionLog.iterator(40, 70));
+        assertRange(62, 62, transactionLog.iterator(62, 62));
+        assertRange(85, 90, transactionLog.iterator(85, 200));
+
+    }
+
+    @Test
+    public void rangeIterationOpensOnlyFilesInRange() throws Exception {
+
+        final List<String> opened = new ArrayList<String>();
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory() {
+
+            @Override
+            public TransactionLogFileReader getReader(File transactionLog) throws IOException {
+                opened.add(transactionLog.getName());
+                return super.getReader(transactionLog);
+            }
+
+        });
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(tempFolder.newFolder("rangeindex"), 7));
+
+        assertRange(35, 45, transactionLog.iterator(35, 45));
+        assertEquals(asList("log.1f", "log.1f"), opened);
+
+        opened.clear();
+        assertRange(1, 30, transactionLog.iterator(Long.MIN_VALUE, 30));
+        assertEquals(asList("log.1"), opened);
+
+    }
+
+    @Test
+    public void rangeIterationStopsAfterRange() throws Exception {
+
+        TransactionIterator iterator = transactionLog.iterator(88, 91);
+
+        assertRange(88, 90, iterator);
+
+        generator.createNodes("/d", 2);
+
+        assertEquals(TransactionState.OK, iterator.nextTransactionState());
+        assertEquals(91, iterator.next().getTxnHeader().getZxid());
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+    }
+
+    @Test
+    public void timeRangeIterationOpensOnlyFilesInRange() throws Exception {
+
+        final List<String> opened = new ArrayList<String>();
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory() {
+
+            @Override
+            public TransactionLogFileReader getReader(File transactionLog) throws IOException {
+                opened.add(transactionLog.getName());
+                return super.getReader(transactionLog);
+            }
+
+        });
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(tempFolder.newFolder("timeindex"), 7));
+
+        //build indexes
+        transactionLog.findZxidRange(Long.MIN_VALUE, Long.MAX_VALUE - 1);
+        opened.clear();
+
+        TransactionFilter filter = new TransactionFilter();
+        filter.setTimeRange(START_TIME + 35000, START_TIME + 45500);
+
+        assertRange(35, 45, transactionLog.iterator(filter));
+        assertEquals(asList("log.1f"), opened);
+
+        filter.setTimeRange(START_TIME + 88000, Long.MAX_VALUE);
+
+        assertRange(88, 90, transactionLog.iterator(filter));
+
+        filter.setTimeRange(Long.MIN_VALUE, START_TIME + 500);
+
+        assertRange(1, 0, transactionLog.iterator(filter));
+
+    }
+
+    @Test
+    public void findLastZxidAt() {
+
+        assertEquals(-1, transactionLog.findLastZxidAt(START_TIME));
+        assertEquals(1, transactionLog.findLastZxidAt(START_TIME + 1000));
+        assertEquals(29, transactionLog.findLastZxidAt(START_TIME + 29999));
+        assertEquals(62, transactionLog.findLastZxidAt(START_TIME + 62000));
+        assertEquals(90, transactionLog.findLastZxidAt(Long.MAX_VALUE));
+
+    }
+
+    @Test
+    public void iteratorLast() throws Exception {
+
+        assertIteration(86, transactionLog.iteratorLast(5));
+        assertIteration(61, transactionLog.iteratorLast(30));
+        assertIteration(60, transactionLog.iteratorLast(31));
+        assertIteration(46, transactionLog.iteratorLast(45));
+        assertIteration(1, transactionLog.iteratorLast(90));
+        assertIteration(1, transactionLog.iteratorLast(200));
+
+        TransactionIterator iterator = transactionLog.iteratorLast(1);
+
+        assertEquals(90, iterator.next().getTxnHeader().getZxid());
+
+        generator.createNodes("/d", 1);
+
+        assertEquals(91, iterator.next().getTxnHeader().getZxid());
+
+    }
+
+    @Test
+    public void iteratorLastReadsOnlyNewestFiles() throws Exception {
+
+        final List<String> opened = new ArrayList<String>();
+        File indexDir = tempFolder.newFolder("lastindex");
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory() {
+
+            @Override
+            public TransactionLogFileReader getReader(File transactionLog) throws IOException {
+                opened.add(transactionLog.getName());
+                return super.getReader(transactionLog);
+            }
+
+        });
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(indexDir, 7));
+
+        //build indexes
+        transactionLog.findZxidRange(Long.MIN_VALUE, Long.MAX_VALUE - 1);
+        opened.clear();
+
+        assertIteration(81, transactionLog.iteratorLast(10));
+        assertEquals(asList("log.3d", "log.3d"), opened);
+
+        //stored indexes with other interval
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(indexDir, 100));
+
+        assertIteration(58, transactionLog.iteratorLast(33));
+
+    }
+
+    @Test
+    public void iteratorLastDoesNotBuildIndexes() throws Exception {
+
+        File indexDir = tempFolder.newFolder("noindex");
+
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(indexDir, 7));
+
+        assertIteration(86, transactionLog.iteratorLast(5));
+        assertIteration(46, transactionLog.iteratorLast(45));
+        assertIteration(1, transactionLog.iteratorLast(Integer.MAX_VALUE));
+
+        assertEquals(0, indexDir.list().length);
+
+    }
+
+    @Test
+    public void iteratorLastWithStoredIndexes() throws Exception {
+
+        transactionLog.findZxidRange(Long.MIN_VALUE, Long.MAX_VALUE - 1);
+
+        assertIteration(46, transactionLog.iteratorLast(45));
+        assertIteration(1, transactionLog.iteratorLast(Integer.MAX_VALUE));
+
+    }
+
+    @Test
+    public void tailIterator() throws Exception {
+
+        final List<String> opened = new ArrayList<String>();
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory() {
+
+            @Override
+            public TransactionLogFileReader getReader(File transactionLog) throws IOException {
+                opened.add(transactionLog.getName());
+                return super.getReader(transactionLog);
+            }
+
+        });
+
+        TransactionIterator iterator = transactionLog.tailIterator();
+
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+        assertEquals(asList("log.3d"), opened);
+
+        generator.createNodes("/d", 2);
+
+        assertRange(91, 92, iterator);
+
+        generator.rollLog();
+        generator.createNodes("/e", 1);
+
+        assertEquals(93, iterator.next().getTxnHeader().getZxid());
+
+    }
+
+    private void assertRange(long fromZxid, long toZxid, TransactionIterator iterator) {
+
+        long expectedZxid = fromZxid;
+
+        while (iterator.hasNext()) {
+
+            assertEquals(expectedZxid, iterator.next().getTxnHeader().getZxid());
+            expectedZxid++;
+
+        }
+
+        assertEquals(toZxid + 1, expectedZxid);
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+    }
+
+    private void assertIteration(long firstZxid, TransactionIterator iterator) {
+
+        long expectedZxid = firstZxid;
+
+        while (iterator.hasNext()) {
+
+            assertEquals(expectedZxid, iterator.next().getTxnHeader().getZxid());
+            expectedZxid++;
+
+        }
+
+        assertEquals(91, expectedZxid);
+        assertEquals(TransactionState.EMPTY, iterator.nextTransactionState());
+
+    }
+
+}
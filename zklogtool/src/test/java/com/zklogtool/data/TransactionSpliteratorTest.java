@@ -0,0 +1,148 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.index.TransactionLogIndexer;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import static com.zklogtool.test.TransactionLogGenerator.corruptNext;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Spliterator;
+import static java.util.stream.Collectors.toList;
+import org.apache.zookeeper.ZooDefs.OpCode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionSpliteratorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    TransactionLog transactionLog;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        //log.1, log.3d, log.79
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 59);
+        generator.rollLog();
+        generator.createNodes("/b", 60);
+        generator.rollLog();
+        generator.createNodes("/c", 60);
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+        transactionLog.setTransactionLogIndexer(new TransactionLogIndexer(tempFolder.newFolder("index"), 10));
+
+    }
+
+    @Test
+    public void stream() {
+
+        List<Long> zxids = transactionLog.stream().map(t -> t.getTxnHeader().getZxid()).collect(toList());
+
+        assertEquals(180, zxids.size());
+
+        for (int i = 0; i < zxids.size(); i++) {
+            assertEquals(i + 1, (long) zxids.get(i));
+        }
+
+        assertEquals(179, transactionLog.parallelStream().filter(t -> t.getTxnHeader().getType() == OpCode.create).count());
+        assertEquals(zxids, transactionLog.parallelStream().map(t -> t.getTxnHeader().getZxid()).collect(toList()));
+
+    }
+
+    @Test
+    public void splitOnFilesAndCheckpoints() throws Exception {
+
+        Spliterator<Transaction> all = transactionLog.spliterator();
+
+        assertTrue(all.hasCharacteristics(Spliterator.ORDERED | Spliterator.NONNULL));
+
+        //log.1 and log.3d
+        Spliterator<Transaction> first = all.trySplit();
+
+        assertNotNull(first);
+
+        //log.1
+        Spliterator<Transaction> firstFile = first.trySplit();
+
+        //no index yet
+        assertNull(first.trySplit());
+
+        transactionLog.getTransactionLogIndexer().getIndex(new File(dataDir, "log.3d"), transactionLog.factory);
+
+        Spliterator<Transaction> firstHalf = first.trySplit();
+
+        assertNotNull(firstHalf);
+
+        List<Spliterator<Transaction>> parts = asList(firstFile, firstHalf, first, all);
+        List<Long> zxids = new ArrayList<>();
+
+        for (Spliterator<Transaction> s : parts) {
+
+            while (s.tryAdvance(t -> zxids.add(t.getTxnHeader().getZxid()))) {
+            }
+
+        }
+
+        assertEquals(180, zxids.size());
+
+        for (int i = 0; i < zxids.size(); i++) {
+            assertEquals(i + 1, (long) zxids.get(i));
+        }
+
+    }
+
+    @Test
+    public void corruptionIsThrown() throws Exception {
+
+        TransactionIterator serial = transactionLog.iterator();
+        Transaction previous = null;
+
+        for (int i = 0; i < 99; i++) {
+            previous = serial.next();
+        }
+
+        corruptNext(previous);
+
+        try {
+            transactionLog.parallelStream().count();
+            fail();
+        } catch (TransactionStateException e) {
+            assertEquals(TransactionState.CORRUPTION, e.getState());
+        }
+
+    }
+
+}
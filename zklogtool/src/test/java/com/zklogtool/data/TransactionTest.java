@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.data;
+
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.apache.jute.BinaryOutputArchive.getArchive;
+import org.apache.jute.OutputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CheckVersionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    TxnHeader header = new TxnHeader(0x1234, 7, 0x100000005L, 1400000000000L, ZooDefs.OpCode.create);
+    CreateTxn record = new CreateTxn("/node", "data".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 1);
+
+    @Test
+    public void lazyRecordDecoding() throws IOException {
+
+        Transaction t = new Transaction(serialize(header, record));
+
+        assertEquals(header, t.getTxnHeader());
+        assertEquals(record, t.getTxnRecord());
+        assertSame(t.getTxnRecord(), t.getTxnRecord());
+
+    }
+
+    @Test
+    public void headerAvailableWithoutRecord() throws IOException {
+
+        byte[] bytes = serialize(header, record);
+        Transaction t = new Transaction(Arrays.copyOf(bytes, 40));
+
+        assertEquals(0x100000005L, t.getTxnHeader().getZxid());
+        assertEquals(ZooDefs.OpCode.create, t.getTxnHeader().getType());
+
+        try {
+            t.getTxnRecord();
+            fail();
+        } catch (IllegalStateException e) {
+            //record is not complete
+        }
+
+    }
+
+    @Test
+    public void recordWithoutBody() throws IOException {
+
+        TxnHeader closeSession = new TxnHeader(0x1234, 8, 0x100000006L, 1400000000000L, ZooDefs.OpCode.closeSession);
+
+        assertNull(new Transaction(serialize(closeSession, null)).getTxnRecord());
+
+    }
+
+    @Test(expected = EOFException.class)
+    public void headerNotComplete() throws IOException {
+
+        new Transaction(new byte[20]);
+
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedType() throws IOException {
+
+        //check is only valid inside multi
+        TxnHeader check = new TxnHeader(0x1234, 9, 0x100000007L, 1400000000000L, ZooDefs.OpCode.check);
+
+        new Transaction(serialize(check, new CheckVersionTxn("/node", 1)));
+
+    }
+
+    @Test
+    public void unsupportedTypeIsCorruption() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.append(ZooDefs.OpCode.check, new CheckVersionTxn("/node", 1));
+        generator.createNodes("/node", 1);
+        generator.close();
+
+        TransactionIterator iterator = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory()).iterator();
+
+        assertEquals(1, iterator.next().getTxnHeader().getZxid());
+        assertEquals(TransactionState.CORRUPTION, iterator.nextTransactionState());
+        //transaction is not skipped
+        assertEquals(TransactionState.CORRUPTION, iterator.nextTransactionState());
+
+    }
+
+    private byte[] serialize(TxnHeader hdr, Record txn) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputArchive oa = getArchive(baos);
+
+        hdr.serialize(oa, "hdr");
+        if (txn != null) {
+            txn.serialize(oa, "txn");
+        }
+
+        return baos.toByteArray();
+
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.index;
+
+import com.zklogtool.data.TransactionState;
+import com.zklogtool.reader.TransactionLogFileReader;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import static com.zklogtool.test.TransactionLogGenerator.START_TIME;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.FileSystems;
+import static java.nio.file.Files.getPosixFilePermissions;
+import static java.nio.file.attribute.PosixFilePermissions.fromString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionLogIndexerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    TransactionLogReaderFactory factory = new TransactionLogReaderFactory();
+    TransactionLogGenerator generator;
+    TransactionLogIndexer indexer;
+    File txnLog;
+
+    @Before
+    public void setUp() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/node", 54);
+
+        txnLog = new File(dataDir, "log.1");
+        indexer = new TransactionLogIndexer(tempFolder.newFolder("index"), 10);
+
+    }
+
+    @Test
+    public void buildIndex() throws IOException {
+
+        TransactionLogIndex index = indexer.getIndex(txnLog, factory);
+
+        assertEquals(6, index.getCheckpointCount());
+        assertEquals(1, index.getFirstZxid());
+        assertEquals(55, index.getLastZxid());
+        assertEquals(55, index.getTransactionCount());
+        assertEquals(TransactionState.EMPTY, index.getEndState());
+
+        TransactionLogFileReader reader = factory.getReader(txnLog);
+
+        for (int i = 0; i < index.getCheckpointCount(); i++) {
+
+            assertEquals(10 * i + 1, index.getCheckpointZxid(i));
+
+            reader.seek(index.getCheckpointOffset(i));
+            assertEquals(index.getCheckpointZxid(i), reader.getNextTransaction().getTxnHeader().getZxid());
+
+        }
+
+        for (int i = 0; i < index.getCheckpointCount(); i++) {
+
+            assertEquals(START_TIME + (10 * i + 1) * 1000, index.getCheckpointMinTime(i));
+            assertEquals(START_TIME + index.getCheckpointLastZxid(i) * 1000, index.getCheckpointMaxTime(i));
+
+        }
+
+        assertEquals(55, index.getCheckpointLastZxid(5));
+
+        assertEquals(index.getCheckpointOffset(2), index.getOffset(29));
+        assertEquals(index.getCheckpointOffset(3), index.getOffset(31));
+        assertEquals(index.getEndOffset(), index.getOffset(56));
+
+    }
+
+    @Test
+    public void storedIndexIsReused() throws IOException {
+
+        TransactionLogIndex index = indexer.getIndex(txnLog, factory);
+
+        assertTrue(indexer.getIndexFile(txnLog).isFile());
+        assertTrue(index.isUpToDate(txnLog));
+
+        TransactionLogIndex stored = TransactionLogIndex.read(indexer.getIndexFile(txnLog));
+
+        assertEquals(index.getCheckpointCount(), stored.getCheckpointCount());
+        assertEquals(index.getLastZxid(), stored.getLastZxid());
+        assertEquals(index.getEndOffset(), stored.getEndOffset());
+
+    }
+
+    @Test
+    public void outdatedIndexIsExtended() throws Exception {
+
+        TransactionLogIndex index = indexer.getIndex(txnLog, factory);
+
+        generator.createNodes("/other", 20);
+        txnLog.setLastModified(index.getLastModified() + 2000);
+
+        assertFalse(index.isUpToDate(txnLog));
+
+        TransactionLogIndex extended = indexer.getIndex(txnLog, factory);
+
+        assertEquals(75, extended.getLastZxid());
+        assertEquals(75, extended.getTransactionCount());
+        assertEquals(8, extended.getCheckpointCount());
+        assertEquals(71, extended.getCheckpointZxid(7));
+        assertEquals(START_TIME + 70 * 1000, extended.getCheckpointMaxTime(6));
+        assertTrue(extended.getEndOffset() > index.getEndOffset());
+
+    }
+
+    @Test
+    public void changedContentIsNotTrusted() throws IOException {
+
+        TransactionLogIndex index = indexer.getIndex(txnLog, factory);
+
+        assertNotNull(indexer.getStoredIndex(txnLog));
+
+        //same length and modification time, different content
+        long lastModified = txnLog.lastModified();
+
+        try (RandomAccessFile raf = new RandomAccessFile(txnLog, "rw")) {
+            raf.seek(index.getEndOffset() - 1);
+            int b = raf.read();
+            raf.seek(index.getEndOffset() - 1);
+            raf.write(b ^ 0x7f);
+        }
+
+        txnLog.setLastModified(lastModified);
+
+        assertFalse(index.isUpToDate(txnLog));
+        assertNull(indexer.getStoredIndex(txnLog));
+
+    }
+
+    @Test
+    public void indexIsOwnerOnly() throws IOException {
+
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+        indexer = new TransactionLogIndexer(new File(tempFolder.getRoot(), "new/index"), 10);
+        indexer.getIndex(txnLog, factory);
+
+        assertEquals(fromString("rwx------"), getPosixFilePermissions(indexer.getIndexDir().toPath()));
+        assertEquals(fromString("rw-------"), getPosixFilePermissions(indexer.getIndexFile(txnLog).toPath()));
+
+    }
+
+}
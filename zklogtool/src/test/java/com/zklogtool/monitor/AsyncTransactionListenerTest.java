@@ -0,0 +1,194 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.Transaction;
+import com.zklogtool.test.UnitTests;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.TxnHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({UnitTests.class})
+public class AsyncTransactionListenerTest {
+
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+    final List<Long> delivered = Collections.synchronizedList(new ArrayList<Long>());
+    final List<String> signals = Collections.synchronizedList(new ArrayList<String>());
+
+    //blocks on first transaction until gate is opened
+    TransactionListener slowListener = new TransactionListener() {
+
+        @Override
+        public void onTransaction(Transaction t) {
+
+            entered.countDown();
+
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            delivered.add(t.getTxnHeader().getZxid());
+
+        }
+
+        @Override
+        public void onPartialTransaction() {
+            signals.add("partial");
+        }
+
+        @Override
+        public void onCorruption() {
+            signals.add("corruption");
+        }
+
+    };
+
+    @Test
+    public void dropOldest() throws Exception {
+
+        AsyncTransactionListener async = stalled(OverflowPolicy.DROP_OLDEST, 2, 8);
+
+        assertEquals(3, async.getQueueDepth());
+        assertEquals(4, async.getDroppedCount());
+
+        drain(async);
+
+        assertEquals(list(1, 6, 7, 8), delivered);
+
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+
+        AsyncTransactionListener async = stalled(OverflowPolicy.COALESCE, 2, 8);
+
+        async.onPartialTransaction();
+        async.onPartialTransaction();
+        async.onCorruption();
+
+        assertEquals(3, async.getQueueDepth());
+        assertEquals(6, async.getDroppedCount());
+
+        drain(async);
+
+        assertEquals(list(1, 8), delivered);
+        assertEquals(2, signals.size());
+
+    }
+
+    @Test
+    public void block() throws Exception {
+
+        final AsyncTransactionListener async = stalled(OverflowPolicy.BLOCK, 2, 4);
+
+        Thread producer = new Thread() {
+
+            @Override
+            public void run() {
+                async.onTransaction(transaction(5));
+            }
+
+        };
+
+        producer.start();
+        producer.join(200);
+
+        assertTrue(producer.isAlive());
+        assertEquals(3, async.getQueueDepth());
+        assertEquals(5, async.getZxidLag());
+        assertTrue(async.getLagMillis() >= 0);
+
+        gate.countDown();
+        producer.join(10000);
+        drain(async);
+
+        assertEquals(list(1, 2, 3, 4, 5), delivered);
+        assertEquals(0, async.getDroppedCount());
+        assertEquals(5, async.getDeliveredCount());
+
+    }
+
+    @Test
+    public void monitorRegistry() {
+
+        TransactionMonitor monitor = new TransactionMonitor(null);
+
+        AsyncTransactionListener async = monitor.addAsyncListener(slowListener, 10, OverflowPolicy.BLOCK);
+
+        assertEquals(1, monitor.listeners.size());
+        assertEquals(slowListener, async.getListener());
+
+        monitor.removeListener(slowListener);
+
+        assertEquals(0, monitor.listeners.size());
+
+    }
+
+    private AsyncTransactionListener stalled(OverflowPolicy policy, long fromZxid, long toZxid) throws InterruptedException {
+
+        AsyncTransactionListener async = new AsyncTransactionListener(slowListener, 3, policy);
+
+        async.onTransaction(transaction(1));
+        assertTrue(entered.await(10, SECONDS));
+
+        for (long zxid = fromZxid; zxid <= toZxid; zxid++) {
+            async.onTransaction(transaction(zxid));
+        }
+
+        return async;
+
+    }
+
+    private void drain(AsyncTransactionListener async) throws InterruptedException {
+
+        gate.countDown();
+        async.close();
+        async.awaitTermination(10000);
+
+        assertEquals(0, async.getQueueDepth());
+
+    }
+
+    private Transaction transaction(long zxid) {
+
+        return new Transaction(new TxnHeader(1, (int) zxid, zxid, 0, ZooDefs.OpCode.create), null);
+
+    }
+
+    private List<Long> list(long... zxids) {
+
+        List<Long> l = new ArrayList<>();
+
+        for (long zxid : zxids) {
+            l.add(zxid);
+        }
+
+        return l;
+
+    }
+
+}
@@ -0,0 +1,205 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.DataDirTransactionLogFileList;
+import com.zklogtool.data.Transaction;
+import com.zklogtool.data.TransactionIterator;
+import com.zklogtool.data.TransactionLog;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class CheckpointStoreTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    TransactionLog transactionLog;
+    TransactionLogGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        //log.1, log.15
+        generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 19);
+        generator.rollLog();
+        generator.createNodes("/b", 20);
+
+        transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+    }
+
+    @Test
+    public void storeAndLoad() throws IOException {
+
+        File file = new File(tempFolder.getRoot(), "checkpoint");
+        CheckpointStore store = new CheckpointStore(file, 60000);
+
+        assertNull(store.load());
+
+        Transaction t = read(17);
+
+        store.update(t);
+        store.flush();
+
+        Checkpoint checkpoint = new CheckpointStore(file).load();
+
+        assertEquals(17, checkpoint.getZxid());
+        assertEquals(t.getTransactionLogFile().getAbsoluteFile(), checkpoint.getTransactionLogFile().getAbsoluteFile());
+        assertEquals(t.getNextOffset(), checkpoint.getOffset());
+
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidCheckpointFile() throws IOException {
+
+        File file = new File(tempFolder.getRoot(), "checkpoint");
+
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println("zxid=xyz");
+        }
+
+        new CheckpointStore(file).load();
+
+    }
+
+    @Test
+    public void iteratorAfter() {
+
+        Transaction t = read(20);
+
+        assertEquals("log.1", t.getTransactionLogFile().getName());
+        assertIteration(21, transactionLog.iteratorAfter(t.getTransactionLogFile(), t.getNextOffset(), 20));
+
+        t = read(30);
+
+        assertIteration(31, transactionLog.iteratorAfter(t.getTransactionLogFile(), t.getNextOffset(), 30));
+
+    }
+
+    @Test
+    public void iteratorAfterPurgedFile() {
+
+        assertIteration(26, transactionLog.iteratorAfter(new File(dataDir, "log.0"), 1000, 25));
+
+    }
+
+    @Test
+    public void monitorResumesAtCheckpoint() throws Exception {
+
+        File file = new File(tempFolder.getRoot(), "checkpoint");
+        CheckpointStore store = new CheckpointStore(file, 60000);
+        store.update(Checkpoint.after(read(10)));
+        store.flush();
+
+        final List<Long> zxids = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        TransactionMonitor monitor = new TransactionMonitor(transactionLog);
+
+        monitor.addListener(new TransactionListener() {
+
+            @Override
+            public void onTransaction(Transaction t) {
+
+                zxids.add(t.getTxnHeader().getZxid());
+
+                if (t.getTxnHeader().getZxid() == 40) {
+                    done.countDown();
+                }
+
+            }
+
+            @Override
+            public void onPartialTransaction() {
+            }
+
+            @Override
+            public void onCorruption() {
+            }
+
+        });
+
+        monitor.startAtCheckpoint(new CheckpointStore(file, 60000));
+
+        try {
+            assertTrue(done.await(10, SECONDS));
+        } finally {
+            monitor.stop();
+        }
+
+        assertEquals(30, zxids.size());
+        assertEquals(11, (long) zxids.get(0));
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        //checkpoint is flushed when monitor thread exits
+        while (new CheckpointStore(file).load().getZxid() != 40) {
+
+            assertTrue("Checkpoint not flushed", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+
+        }
+
+    }
+
+    private Transaction read(long zxid) {
+
+        TransactionIterator iterator = transactionLog.iteratorFrom(zxid);
+
+        return iterator.next();
+
+    }
+
+    private void assertIteration(long firstZxid, TransactionIterator iterator) {
+
+        long expectedZxid = firstZxid;
+
+        while (iterator.hasNext()) {
+
+            assertEquals(expectedZxid, iterator.next().getTxnHeader().getZxid());
+            expectedZxid++;
+
+        }
+
+        assertEquals(41, expectedZxid);
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.DataDirTransactionLogFileList;
+import com.zklogtool.data.Transaction;
+import com.zklogtool.data.TransactionLog;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionMonitorBatchTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void batches() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/node", 24);
+
+        TransactionMonitor monitor = new TransactionMonitor(new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory()));
+        monitor.setMaxBatchSize(10);
+        monitor.setMaxBatchDelay(60000);
+
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> batched = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> single = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(2);
+
+        monitor.addBatchListener(new BatchTransactionListener() {
+
+            @Override
+            public void onTransactions(List<Transaction> transactions) {
+
+                batchSizes.add(transactions.size());
+
+                for (Transaction t : transactions) {
+                    batched.add(t.getTxnHeader().getZxid());
+                }
+
+                if (batched.size() == 25) {
+                    done.countDown();
+                }
+
+            }
+
+            @Override
+            public void onPartialTransaction() {
+            }
+
+            @Override
+            public void onCorruption() {
+            }
+
+        });
+
+        monitor.addListener(new TransactionListener() {
+
+            @Override
+            public void onTransaction(Transaction t) {
+
+                single.add(t.getTxnHeader().getZxid());
+
+                if (single.size() == 25) {
+                    done.countDown();
+                }
+
+            }
+
+            @Override
+            public void onPartialTransaction() {
+            }
+
+            @Override
+            public void onCorruption() {
+            }
+
+        });
+
+        monitor.startAtFirstTransaction();
+
+        try {
+            assertTrue(done.await(10, SECONDS));
+        } finally {
+            monitor.stop();
+        }
+
+        assertEquals(3, batchSizes.size());
+        assertEquals(10, (int) batchSizes.get(0));
+        assertEquals(10, (int) batchSizes.get(1));
+        assertEquals(5, (int) batchSizes.get(2));
+
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i + 1, (long) batched.get(i));
+            assertEquals(i + 1, (long) single.get(i));
+        }
+
+    }
+
+}
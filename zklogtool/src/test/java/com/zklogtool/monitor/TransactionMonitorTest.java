@@ -44,6 +44,8 @@ public class TransactionMonitorTest {
     TransactionLog transactionLog;
     @Mock
     TransactionIterator transactionIterator;
+    @Mock
+    TransactionIterator tailIterator;
 
     @Before
     public void setUp() {
@@ -128,17 +130,21 @@ public class TransactionMonitorTest {
     @Test(timeout=3000)
     public void testStartAtLastTransaction() throws InterruptedException {
 
-        when(transactionIterator.nextTransactionState())
-                .thenReturn(TransactionState.OK)
-                .thenReturn(TransactionState.OK)
-                .thenReturn(TransactionState.OK)
-                .thenReturn(TransactionState.OK)
-                .thenReturn(TransactionState.EMPTY)
+        //tail iterator is positioned behind already written transactions 1-4
+        when(tailIterator.next())
+                .thenReturn(new Transaction(new TxnHeader(0, 0, 5, 0, 0), null))
+                .thenReturn(new Transaction(new TxnHeader(0, 0, 6, 0, 0), null))
+                .thenReturn(new Transaction(new TxnHeader(0, 0, 7, 0, 0), null));
+
+        when(tailIterator.nextTransactionState())
                 .thenReturn(TransactionState.OK)
                 .thenReturn(TransactionState.OK)
                 .thenReturn(TransactionState.OK)
                 .thenReturn(TransactionState.EMPTY);
 
+        when(transactionLog.tailIterator())
+                .thenReturn(tailIterator);
+
         final CountDownLatch endSignal = new CountDownLatch(3);
 
         transactionMonitor.addListener(new TransactionListener() {
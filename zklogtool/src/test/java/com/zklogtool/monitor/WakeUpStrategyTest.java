@@ -0,0 +1,226 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.monitor;
+
+import com.zklogtool.data.DataDirTransactionLogFileList;
+import com.zklogtool.data.Transaction;
+import com.zklogtool.data.TransactionLog;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class WakeUpStrategyTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void backoff() {
+
+        BackoffWakeUpStrategy backoff = new BackoffWakeUpStrategy(1, 10);
+
+        assertEquals(2, backoff.nextPeriod(false));
+        assertEquals(4, backoff.nextPeriod(false));
+        assertEquals(8, backoff.nextPeriod(false));
+        assertEquals(10, backoff.nextPeriod(false));
+        assertEquals(10, backoff.nextPeriod(false));
+        assertEquals(1, backoff.nextPeriod(true));
+        assertEquals(2, backoff.nextPeriod(false));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBackoff() {
+
+        new BackoffWakeUpStrategy(10, 1);
+
+    }
+
+    @Test
+    public void missingDirectoryFallsBackToBackoff() {
+
+        WatchWakeUpStrategy watch = new WatchWakeUpStrategy(new File(tempFolder.getRoot(), "missing"));
+
+        assertTrue(!watch.isWatching());
+
+        watch.close();
+
+    }
+
+    @Test
+    public void lateEventsFallBackToBackoff() throws Exception {
+
+        WatchWakeUpStrategy watch = new WatchWakeUpStrategy(tempFolder.newFolder("late"), 10);
+
+        assumeTrue(watch.isWatching());
+
+        //monitor finds new transactions each time wait ends without event
+        watch.await(false);
+
+        for (int i = 1; i < WatchWakeUpStrategy.MAX_MISSED_CHANGES; i++) {
+            watch.await(true);
+            assertTrue(watch.isWatching());
+        }
+
+        watch.await(true);
+
+        assertFalse(watch.isWatching());
+
+        watch.close();
+
+    }
+
+    @Test
+    public void wakeUpEndsAwait() throws Exception {
+
+        assertWakesUp(new SleepWakeUpStrategy(60000));
+        assertWakesUp(new BackoffWakeUpStrategy(60000, 60000));
+        assertWakesUp(new WatchWakeUpStrategy(tempFolder.newFolder("watched"), 60000));
+
+    }
+
+    @Test
+    public void stopDoesNotInterruptMonitor() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+        TransactionMonitor monitor = new TransactionMonitor(transactionLog);
+        final boolean[] interrupted = new boolean[1];
+
+        monitor.setWakeUpStrategy(new SleepWakeUpStrategy(60000) {
+
+            @Override
+            public void await(boolean progress) throws InterruptedException {
+
+                super.await(progress);
+                interrupted[0] |= Thread.currentThread().isInterrupted();
+
+            }
+
+        });
+
+        monitor.startAtFirstTransaction();
+        monitor.stop();
+        monitor.monitorThread.join(10000);
+
+        assertFalse(monitor.monitorThread.isAlive());
+        assertFalse(interrupted[0]);
+
+    }
+
+    @Test
+    public void monitorWithWatchStrategy() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+        TransactionMonitor monitor = new TransactionMonitor(transactionLog);
+        final BlockingQueue<Transaction> received = new LinkedBlockingQueue<>();
+
+        //long max wait so only file events wake monitor up in time
+        monitor.setWakeUpStrategy(new WatchWakeUpStrategy(dataDir, 60000));
+        monitor.addListener(new TransactionListener() {
+
+            @Override
+            public void onTransaction(Transaction t) {
+                received.add(t);
+            }
+
+            @Override
+            public void onPartialTransaction() {
+            }
+
+            @Override
+            public void onCorruption() {
+            }
+
+        });
+
+        monitor.startAtFirstTransaction();
+
+        try {
+
+            assertEquals(1, received.poll(10, SECONDS).getTxnHeader().getZxid());
+
+            generator.createNodes("/node", 1);
+
+            Transaction t = received.poll(10, SECONDS);
+            assertNotNull(t);
+            assertEquals(2, t.getTxnHeader().getZxid());
+
+            generator.rollLog();
+            generator.createNodes("/node", 1);
+
+            t = received.poll(10, SECONDS);
+            assertNotNull(t);
+            assertEquals(3, t.getTxnHeader().getZxid());
+
+        } finally {
+            monitor.stop();
+        }
+
+    }
+
+    private void assertWakesUp(final WakeUpStrategy strategy) throws InterruptedException {
+
+        Thread waiting = new Thread() {
+
+            @Override
+            public void run() {
+
+                try {
+                    strategy.await(false);
+                } catch (InterruptedException e) {
+                    //thread is never interrupted
+                }
+
+            }
+
+        };
+
+        waiting.start();
+        Thread.sleep(100);
+        strategy.wakeUp();
+        waiting.join(10000);
+
+        assertFalse(waiting.isAlive());
+
+        strategy.close();
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import com.zklogtool.data.Transaction;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import static java.nio.file.Files.readAllBytes;
+import java.util.Arrays;
+import org.apache.zookeeper.txn.CreateTxn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class MappedTransactionLogFileReaderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File txnLog;
+    byte[] txnLogBytes;
+
+    @Before
+    public void setUp() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/node", 49);
+        generator.close();
+
+        txnLog = new File(dataDir, "log.1");
+        txnLogBytes = readAllBytes(txnLog.toPath());
+
+    }
+
+    @Test
+    public void sameTransactionsAsRandomAccessFileReader() throws IOException {
+
+        TransactionLogFileReader expected = new TransactionLogFileReader(txnLog);
+        TransactionLogFileReader mapped = new MappedTransactionLogFileReader(txnLog);
+
+        assertEquals(expected.getFileHeader().getDbid(), mapped.getFileHeader().getDbid());
+
+        int counter = 0;
+        Transaction t;
+
+        while ((t = expected.getNextTransaction()) != null) {
+
+            Transaction m = mapped.getNextTransaction();
+
+            assertEquals(t.getTxnHeader(), m.getTxnHeader());
+            assertEquals(t.getTxnRecord(), m.getTxnRecord());
+
+            counter++;
+        }
+
+        assertEquals(50, counter);
+        assertNull(mapped.getNextTransaction());
+        assertNull(mapped.getNextTransaction());
+
+    }
+
+    @Test
+    public void resetTest() throws IOException {
+
+        TransactionLogFileReader reader = new MappedTransactionLogFileReader(txnLog);
+
+        long firstZxid = reader.getNextTransaction().getTxnHeader().getZxid();
+
+        reader.getNextTransaction();
+        reader.getNextTransaction();
+
+        reader.reset();
+        assertEquals(firstZxid, reader.getNextTransaction().getTxnHeader().getZxid());
+
+    }
+
+    @Test
+    public void incompleteTransactionIsNotSkipped() throws IOException {
+
+        int thirdFrameStart = frameStart(2);
+        File partial = tempFolder.newFile("log.partial");
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            out.write(txnLogBytes, 0, thirdFrameStart + 20);
+        }
+
+        TransactionLogFileReader reader = new MappedTransactionLogFileReader(partial);
+
+        assertEquals(1, reader.getNextTransaction().getTxnHeader().getZxid());
+        assertEquals(2, reader.getNextTransaction().getTxnHeader().getZxid());
+
+        try {
+            reader.getNextTransaction();
+            fail();
+        } catch (IncompleteTransactionException e) {
+            //expected
+        }
+
+        try (FileOutputStream out = new FileOutputStream(partial, true)) {
+            out.write(txnLogBytes, thirdFrameStart + 20, frameStart(3) - thirdFrameStart - 20);
+        }
+
+        Transaction t = reader.getNextTransaction();
+
+        assertEquals(3, t.getTxnHeader().getZxid());
+        assertEquals("/node2", ((CreateTxn) t.getTxnRecord()).getPath());
+        assertNull(reader.getNextTransaction());
+
+    }
+
+    @Test
+    public void delimiterNotWritten() throws IOException {
+
+        File partial = tempFolder.newFile("log.delimiter");
+        byte[] bytes = Arrays.copyOf(txnLogBytes, frameStart(3) + 100);
+        bytes[frameStart(2) - 1] = 0;
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            out.write(bytes);
+        }
+
+        TransactionLogFileReader reader = new MappedTransactionLogFileReader(partial);
+
+        reader.getNextTransaction();
+
+        try {
+            reader.getNextTransaction();
+            fail();
+        } catch (IncompleteTransactionException e) {
+            //expected
+        }
+
+    }
+
+    @Test
+    public void crcValidation() throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(txnLog, "rw")) {
+            raf.seek(frameStart(1) + 20);
+            raf.write(0x7f);
+        }
+
+        TransactionLogFileReader reader = new MappedTransactionLogFileReader(txnLog);
+
+        reader.getNextTransaction();
+
+        try {
+            reader.getNextTransaction();
+            fail();
+        } catch (CRCValidationException e) {
+            //expected
+        }
+
+        try {
+            reader.getNextTransaction();
+            fail();
+        } catch (CRCValidationException e) {
+            //file pointer stays in front of corrupted transaction
+        }
+
+    }
+
+    @Test
+    public void skipToEnd() throws IOException {
+
+        File partial = tempFolder.newFile("log.skip");
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            out.write(txnLogBytes, 0, frameStart(2) + 20);
+        }
+
+        for (TransactionLogFileReader reader : new TransactionLogFileReader[]{
+            new TransactionLogFileReader(txnLog), new MappedTransactionLogFileReader(txnLog)}) {
+
+            assertEquals(50, reader.skipToEnd());
+            assertEquals(frameStart(50), reader.getPosition());
+            assertNull(reader.getNextTransaction());
+
+        }
+
+        for (TransactionLogFileReader reader : new TransactionLogFileReader[]{
+            new TransactionLogFileReader(partial), new MappedTransactionLogFileReader(partial)}) {
+
+            assertEquals(2, reader.skipToEnd());
+            assertEquals(frameStart(2), reader.getPosition());
+
+            try {
+                reader.getNextTransaction();
+                fail();
+            } catch (IncompleteTransactionException e) {
+                //skipping stops in front of partial transaction
+            }
+
+        }
+
+    }
+
+    private int frameStart(int frame) {
+
+        return TransactionLogGenerator.frameStart(txnLogBytes, frame);
+
+    }
+
+}
@@ -0,0 +1,250 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import com.zklogtool.data.DataDirTransactionLogFileList;
+import com.zklogtool.data.TransactionLog;
+import com.zklogtool.data.TransactionIterator;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class PooledTransactionLogReaderFactoryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dataDir;
+    File log1;
+    File log2;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/a", 9);
+        generator.rollLog();
+        generator.createNodes("/b", 10);
+        generator.close();
+
+        log1 = new File(dataDir, "log.1");
+        log2 = new File(dataDir, "log.b");
+
+    }
+
+    @Test
+    public void closedReaderIsReused() throws IOException {
+
+        PooledTransactionLogReaderFactory factory = new PooledTransactionLogReaderFactory(false, 4);
+
+        TransactionLogFileReader reader = factory.getReader(log1);
+        TransactionLogFileReader other = factory.getReader(log1);
+
+        assertNotSame(reader, other);
+
+        reader.getNextTransaction();
+        reader.getNextTransaction();
+        reader.close();
+        other.close();
+
+        assertEquals(2, factory.getIdleReaderCount());
+
+        TransactionLogFileReader reused = factory.getReader(log1);
+
+        assertSame(other, reused);
+        assertSame(reader, factory.getReader(log1));
+        assertEquals(1, reader.getNextTransaction().getTxnHeader().getZxid());
+        assertEquals(0, factory.getIdleReaderCount());
+
+    }
+
+    @Test
+    public void leastRecentlyClosedReaderIsEvicted() throws IOException {
+
+        PooledTransactionLogReaderFactory factory = new PooledTransactionLogReaderFactory(false, 1);
+
+        TransactionLogFileReader reader1 = factory.getReader(log1);
+        TransactionLogFileReader reader2 = factory.getReader(log2);
+
+        reader1.close();
+        reader2.close();
+
+        assertEquals(1, factory.getIdleReaderCount());
+        assertClosed(reader1);
+        assertSame(reader2, factory.getReader(log2));
+
+    }
+
+    @Test
+    public void readersOfDeletedFilesAreClosed() throws IOException {
+
+        PooledTransactionLogReaderFactory factory = new PooledTransactionLogReaderFactory(false, 4);
+
+        TransactionLogFileReader reader1 = factory.getReader(log1);
+        TransactionLogFileReader reader2 = factory.getReader(log2);
+
+        reader1.close();
+        log1.delete();
+        reader2.close();
+
+        assertEquals(1, factory.getIdleReaderCount());
+        assertClosed(reader1);
+
+    }
+
+    @Test
+    public void closedFactoryClosesReaders() throws IOException {
+
+        PooledTransactionLogReaderFactory factory = new PooledTransactionLogReaderFactory(true, 4);
+
+        TransactionLogFileReader idle = factory.getReader(log1);
+        TransactionLogFileReader used = factory.getReader(log2);
+
+        idle.close();
+        factory.close();
+
+        assertClosed(idle);
+        assertEquals(11, used.getNextTransaction().getTxnHeader().getZxid());
+
+        used.close();
+
+        assertEquals(0, factory.getIdleReaderCount());
+        assertClosed(used);
+
+    }
+
+    @Test
+    public void iteratorReturnsReaders() throws IOException {
+
+        PooledTransactionLogReaderFactory factory = new PooledTransactionLogReaderFactory(false, 4);
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), factory);
+
+        for (int i = 0; i < 3; i++) {
+
+            TransactionIterator iterator = transactionLog.iterator();
+            int count = 0;
+
+            while (iterator.hasNext()) {
+                iterator.next();
+                count++;
+            }
+
+            assertEquals(20, count);
+            assertEquals(1, factory.getIdleReaderCount());
+
+            ((Closeable) iterator).close();
+
+            assertEquals(2, factory.getIdleReaderCount());
+
+        }
+
+    }
+
+    @Test
+    public void readersClosedByInterruptAreNotReused() throws IOException {
+
+        PooledTransactionLogReaderFactory factory = new PooledTransactionLogReaderFactory(true, 4);
+
+        TransactionLogFileReader idleReader = factory.getReader(log1);
+        TransactionLogFileReader usedReader = factory.getReader(log1);
+
+        idleReader.close();
+
+        assertEquals(1, factory.getIdleReaderCount());
+
+        closeByInterrupt(idleReader);
+        closeByInterrupt(usedReader);
+
+        assertFalse(idleReader.isOpen());
+        assertFalse(usedReader.isOpen());
+
+        //reader closed in use is not kept
+        usedReader.close();
+
+        assertEquals(1, factory.getIdleReaderCount());
+
+        //reader closed while idle is not handed out
+        TransactionLogFileReader reader = factory.getReader(log1);
+
+        assertNotSame(idleReader, reader);
+        assertNotSame(usedReader, reader);
+        assertTrue(reader.isOpen());
+        assertEquals(0, factory.getIdleReaderCount());
+        assertEquals(1, reader.getNextTransaction().getTxnHeader().getZxid());
+
+        reader.close();
+        factory.close();
+
+    }
+
+    @Test
+    public void isOpen() throws IOException {
+
+        TransactionLogFileReader reader = new TransactionLogReaderFactory().getReader(log1);
+
+        assertTrue(reader.isOpen());
+
+        reader.close();
+
+        assertFalse(reader.isOpen());
+
+    }
+
+    //mapped reader touches its channel on first read, interrupt closes it
+    private void closeByInterrupt(TransactionLogFileReader reader) {
+
+        Thread.currentThread().interrupt();
+
+        try {
+            reader.getNextTransaction();
+        } catch (IOException e) {
+            //ClosedByInterruptException
+        } finally {
+            Thread.interrupted();
+        }
+
+    }
+
+    private void assertClosed(TransactionLogFileReader reader) {
+
+        try {
+            reader.reset();
+            reader.getNextTransaction();
+            fail("Reader not closed");
+        } catch (IOException e) {
+            //expected
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class PrefetchingInputStreamTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File file;
+    byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+
+        content = new byte[1000];
+        new Random(7).nextBytes(content);
+
+        file = tempFolder.newFile("data");
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+
+    }
+
+    @Test
+    public void readWithChecksum() throws IOException {
+
+        byte[] read = new byte[content.length];
+        int position = 0;
+
+        try (PrefetchingInputStream in = new PrefetchingInputStream(file, 64, 2)) {
+
+            assertEquals(checksum(0), in.getChecksum());
+
+            while (position < content.length) {
+
+                if (position % 3 == 0) {
+
+                    read[position++] = (byte) in.read();
+
+                } else {
+
+                    int n = in.read(read, position, Math.min(50, content.length - position));
+                    position += n;
+
+                }
+
+                assertEquals(checksum(position), in.getChecksum());
+
+            }
+
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(read, 0, 10));
+            assertEquals(checksum(content.length), in.getChecksum());
+
+        }
+
+        assertArrayEquals(content, read);
+
+    }
+
+    @Test
+    public void bufferSizeIsMultipleOfFileLength() throws IOException {
+
+        byte[] read = new byte[content.length];
+
+        try (PrefetchingInputStream in = new PrefetchingInputStream(file, 100, 3)) {
+
+            int position = 0;
+            int n;
+
+            while ((n = in.read(read, position, read.length - position)) > 0) {
+                position += n;
+            }
+
+            assertEquals(content.length, position);
+            assertEquals(checksum(content.length), in.getChecksum());
+
+        }
+
+        assertArrayEquals(content, read);
+
+    }
+
+    @Test
+    public void closeBeforeEnd() throws IOException {
+
+        PrefetchingInputStream in = new PrefetchingInputStream(file, 16, 2);
+
+        in.read();
+        in.close();
+
+        try {
+
+            in.read();
+            fail();
+
+        } catch (IOException e) {
+            //expected
+        }
+
+    }
+
+    private long checksum(int length) {
+
+        Adler32 adler = new Adler32();
+        adler.update(content, 0, length);
+
+        return adler.getValue();
+
+    }
+
+}
@@ -15,31 +15,53 @@
  */
 package com.zklogtool.reader;
 
+import com.zklogtool.data.DataDirTransactionLogFileList;
 import com.zklogtool.data.DataState;
+import com.zklogtool.data.TransactionIterator;
+import com.zklogtool.data.TransactionLog;
 import com.zklogtool.printer.DataNodePrinter;
 import com.zklogtool.printer.UnicodeDecoder;
+import com.zklogtool.test.TransactionLogGenerator;
 import com.zklogtool.test.UnitTests;
+import com.zklogtool.util.SnapshotPlanner;
 import java.io.File;
 import java.io.IOException;
 import static java.lang.System.lineSeparator;
 import java.net.URL;
+import static java.util.Arrays.asList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.StatPersisted;
 import org.apache.zookeeper.server.DataNode;
+import org.apache.zookeeper.server.DataTree;
+import org.apache.zookeeper.server.persistence.FileSnap;
+import static com.zklogtool.util.Util.readData;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
 @Category({UnitTests.class})
 public class SnapshotFileReaderTest {
 
     Logger logger = getLogger(SnapshotFileReaderTest.class);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
     
     File snap1;
     File snap2;
@@ -143,4 +165,260 @@ public class SnapshotFileReaderTest {
 
     }
 
+    @Test
+    public void visitSnapshotTest() throws IOException {
+
+        final Map<String, DataNode> nodes = new HashMap<String, DataNode>();
+        final Map<Long, Integer> sessions = new HashMap<Long, Integer>();
+        final Set<Long> aclRefs = new HashSet<Long>();
+
+        new SnapshotFileReader(snap1, TS1).readSnapshot(new SnapshotVisitor() {
+
+            @Override
+            public void visitSession(long sessionId, int timeout) {
+                sessions.put(sessionId, timeout);
+            }
+
+            @Override
+            public void visitAcl(long aclRef, List<ACL> acls) {
+                aclRefs.add(aclRef);
+            }
+
+            @Override
+            public void visitNode(String path, StatPersisted stat, long aclRef, byte[] data) {
+
+                assertTrue(aclRef == -1 || aclRefs.contains(aclRef));
+                nodes.put(path, new DataNode(null, data, aclRef, stat));
+
+            }
+
+        });
+
+        DataState fuzzyDataState = new SnapshotFileReader(snap1, TS1).readFuzzySnapshot();
+
+        assertEquals(fuzzyDataState.getSessions(), sessions);
+        //data tree also keeps root under "/"
+        assertEquals(fuzzyDataState.getNodeCount() - 1, nodes.size());
+
+        for (Entry<String, DataNode> entry : fuzzyDataState.getNodes().entrySet()) {
+
+            if (entry.getKey().equals("/")) {
+                continue;
+            }
+
+            DataNode node = nodes.get(entry.getKey());
+
+            assertEquals(entry.getValue().stat, node.stat);
+            assertArrayEquals(readData(entry.getValue()), readData(node));
+
+        }
+
+    }
+
+    @Test
+    public void summarySnapshotTest() throws IOException {
+
+        SnapshotSummary summary = new SnapshotSummary();
+        DataState fuzzyDataState = new SnapshotFileReader(snap1, TS1).readFuzzySnapshot(summary);
+
+        SnapshotSummary streamed = new SnapshotSummary();
+        new SnapshotFileReader(snap1, TS1).readSnapshot(streamed);
+
+        assertEquals(69, fuzzyDataState.getLastZxid());
+        assertEquals(69, summary.getLastZxid());
+        assertEquals(2, summary.getSessionCount());
+        //data tree also keeps root under "/"
+        assertEquals(fuzzyDataState.getNodeCount() - 1, summary.getNodeCount());
+
+        long totalDataBytes = 0;
+        long ephemeralCount = 0;
+
+        for (Entry<String, DataNode> entry : fuzzyDataState.getNodes().entrySet()) {
+
+            if (entry.getKey().equals("/")) {
+                continue;
+            }
+
+            byte[] data = readData(entry.getValue());
+            totalDataBytes += data != null ? data.length : 0;
+
+            if (entry.getValue().stat.getEphemeralOwner() != 0) {
+                ephemeralCount++;
+            }
+
+        }
+
+        assertEquals(totalDataBytes, summary.getTotalDataBytes());
+        assertEquals(ephemeralCount, summary.getEphemeralCount());
+
+        assertEquals(summary.getNodeCount(), streamed.getNodeCount());
+        assertEquals(summary.getLastZxid(), streamed.getLastZxid());
+        assertEquals(summary.getDeepestPath(), streamed.getDeepestPath());
+        assertEquals(summary.getLargestNodes(), streamed.getLargestNodes());
+        assertEquals(summary.getSubtreeDataBytes(), streamed.getSubtreeDataBytes());
+
+    }
+
+    @Test
+    public void prefetchSnapshotTest() throws IOException {
+
+        SnapshotFileReader r = new SnapshotFileReader(snap1, TS1);
+        r.setPrefetch(true);
+
+        SnapshotSummary summary = new SnapshotSummary();
+        DataState fuzzyDataState = r.readFuzzySnapshot(summary);
+
+        DataState expected = new SnapshotFileReader(snap1, TS1).readFuzzySnapshot();
+
+        assertEquals(69, fuzzyDataState.getLastZxid());
+        assertEquals(expected.getSessions(), fuzzyDataState.getSessions());
+        assertEquals(expected.getNodeCount(), fuzzyDataState.getNodeCount());
+
+        SnapshotSummary streamed = new SnapshotSummary();
+        r.readSnapshot(streamed);
+
+        assertEquals(summary.getNodeCount(), streamed.getNodeCount());
+        assertEquals(summary.getTotalDataBytes(), streamed.getTotalDataBytes());
+
+    }
+
+    @Test
+    public void prefetchCorruptedSnapshotTest() throws IOException {
+
+        SnapshotFileReader r = new SnapshotFileReader(snap2, TS2);
+        r.setPrefetch(true);
+
+        try {
+
+            r.readFuzzySnapshot();
+
+            fail();
+
+        } catch (IOException e) {
+
+            assertTrue(e.getMessage().contains("CRC"));
+        }
+
+    }
+
+    @Test
+    public void restoreDataStateToZxidTest() throws Exception {
+
+        File dataDir = tempFolder.newFolder("version-2");
+
+        //session and nodes /n1 to /n29 at zxids 1 to 30
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/n", 29);
+        generator.close();
+
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+        //snapshot started after zxid 10, transactions up to 15 got in
+        SnapshotFileReader r = new SnapshotFileReader(writeSnapshot(transactionLog, dataDir, 10, 15), 10);
+
+        TransactionIterator iterator = transactionLog.iteratorFrom(11);
+        DataState dataState = r.restoreDataState(iterator, 20);
+
+        assertEquals(20, dataState.getLastZxid());
+        assertTrue(dataState.getNodes().containsKey("/n19"));
+        assertNull(dataState.getNode("/n20"));
+        assertEquals(21, iterator.next().getTxnHeader().getZxid());
+
+        assertEquals(15, r.restoreDataState(transactionLog.iteratorFrom(11), 12).getLastZxid());
+        assertEquals(15, r.restoreDataState(transactionLog.iteratorFrom(11)).getLastZxid());
+        assertEquals(30, r.restoreDataState(transactionLog.iteratorFrom(11), Long.MAX_VALUE).getLastZxid());
+
+        //transactions in between reach end of transaction log
+        r = new SnapshotFileReader(writeSnapshot(transactionLog, dataDir, 25, 30), 25);
+
+        dataState = r.restoreDataState(transactionLog.iteratorFrom(26));
+
+        assertEquals(30, dataState.getLastZxid());
+        assertTrue(dataState.getNodes().containsKey("/n29"));
+
+    }
+
+    @Test
+    public void restoreDataStateWithoutLaterTransactionsTest() throws Exception {
+
+        File dataDir = tempFolder.newFolder("version-2");
+
+        //snapshots at 0xa and 0x1e, transaction log ends at 0x1e
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/n", 29);
+        generator.close();
+
+        TransactionLog transactionLog = new TransactionLog(new DataDirTransactionLogFileList(dataDir), new TransactionLogReaderFactory());
+
+        File first = writeSnapshot(transactionLog, dataDir, 10, 10);
+        File last = writeSnapshot(transactionLog, dataDir, 30, 30);
+
+        //files are given explicitly, so planner does not depend on directory catalog refresh
+        SnapshotPlanner.Plan plan = new SnapshotPlanner(asList(first, last), asList(new File(dataDir, "log.1"))).plan(Long.MAX_VALUE);
+
+        assertEquals(last, plan.getSnapshot());
+
+        SnapshotFileReader r = new SnapshotFileReader(plan.getSnapshot(), plan.getSnapshotZxid());
+
+        DataState dataState = r.restoreDataState(transactionLog.iteratorFrom(31), Long.MAX_VALUE);
+
+        assertEquals(30, dataState.getLastZxid());
+        assertTrue(dataState.getNodes().containsKey("/n29"));
+
+        //iterator is rewound to end
+        assertEquals(30, r.restoreDataState(transactionLog.iterator()).getLastZxid());
+
+    }
+
+    @Test
+    public void visitCorruptedSnapshotTest() throws IOException {
+
+        SnapshotVisitor visitor = new SnapshotVisitor() {
+
+            @Override
+            public void visitSession(long sessionId, int timeout) {
+            }
+
+            @Override
+            public void visitAcl(long aclRef, List<ACL> acls) {
+            }
+
+            @Override
+            public void visitNode(String path, StatPersisted stat, long aclRef, byte[] data) {
+            }
+
+        };
+
+        try {
+
+            new SnapshotFileReader(snap2, TS2).readSnapshot(visitor);
+
+            fail();
+
+        } catch (CRCValidationException e) {
+
+            assertTrue(e.getMessage().contains("CRC"));
+        }
+
+    }
+
+    private File writeSnapshot(TransactionLog transactionLog, File dataDir, long TS, long lastZxid) throws IOException {
+
+        DataTree dataTree = new DataTree();
+        DataState dataState = new DataState(dataTree, new HashMap<Long, Integer>(), 0);
+        TransactionIterator iterator = transactionLog.iterator(1, lastZxid);
+
+        while (iterator.hasNext()) {
+            dataState.processTransaction(iterator.next());
+        }
+
+        File snapshot = new File(dataDir, "snapshot." + Long.toHexString(TS));
+        new FileSnap(dataDir).serialize(dataTree, dataState.getSessions(), snapshot);
+
+        return snapshot;
+
+    }
+
 }
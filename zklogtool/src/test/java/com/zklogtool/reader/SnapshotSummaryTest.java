@@ -0,0 +1,89 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import com.zklogtool.test.UnitTests;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashMap;
+import java.util.Map;
+import static java.util.Arrays.asList;
+import org.apache.zookeeper.data.StatPersisted;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({UnitTests.class})
+public class SnapshotSummaryTest {
+
+    @Test
+    public void summary() {
+
+        SnapshotSummary summary = new SnapshotSummary(2);
+
+        summary.visitSession(1, 3000);
+        visitNode(summary, "", 0, 1, null);
+        visitNode(summary, "/a", 0, 2, new byte[10]);
+        visitNode(summary, "/a/b", 7, 9, new byte[30]);
+        visitNode(summary, "/a/b/c", 0, 4, new byte[5]);
+        visitNode(summary, "/d", 7, 5, new byte[20]);
+        visitNode(summary, "/e", 0, 3, new byte[0]);
+
+        assertEquals(1, summary.getSessionCount());
+        assertEquals(6, summary.getNodeCount());
+        assertEquals(2, summary.getEphemeralCount());
+        assertEquals(65, summary.getTotalDataBytes());
+        assertEquals(9, summary.getLastZxid());
+        assertEquals("/a/b/c", summary.getDeepestPath());
+        assertEquals(3, summary.getDeepestDepth());
+
+        assertEquals(asList(new SimpleImmutableEntry<String, Integer>("/a/b", 30),
+                new SimpleImmutableEntry<String, Integer>("/d", 20)), summary.getLargestNodes());
+
+        Map<String, Long> subtrees = new HashMap<String, Long>();
+        subtrees.put("/a", 45L);
+        subtrees.put("/d", 20L);
+        subtrees.put("/e", 0L);
+
+        assertEquals(subtrees, summary.getSubtreeDataBytes());
+
+    }
+
+    @Test
+    public void emptySummary() {
+
+        SnapshotSummary summary = new SnapshotSummary();
+
+        assertEquals(0, summary.getNodeCount());
+        assertEquals(-1, summary.getLastZxid());
+        assertNull(summary.getDeepestPath());
+        assertEquals(0, summary.getLargestNodes().size());
+
+    }
+
+    private void visitNode(SnapshotSummary summary, String path, long ephemeralOwner, long zxid, byte[] data) {
+
+        StatPersisted stat = new StatPersisted();
+        stat.setCzxid(zxid);
+        stat.setMzxid(zxid);
+        stat.setPzxid(zxid);
+        stat.setEphemeralOwner(ephemeralOwner);
+
+        summary.visitNode(path, stat, -1, data);
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.reader;
+
+import com.zklogtool.data.Transaction;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import static java.nio.file.Files.readAllBytes;
+import java.util.Arrays;
+import org.apache.zookeeper.txn.CreateTxn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class TransactionLogFileReaderGeneratedTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    byte[] txnLogBytes;
+
+    @Before
+    public void setUp() throws Exception {
+
+        File dataDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(dataDir);
+        generator.createSession();
+        generator.createNodes("/node", 49);
+        generator.close();
+
+        txnLogBytes = readAllBytes(new File(dataDir, "log.1").toPath());
+
+    }
+
+    @Test
+    public void partialTransactionIsResumed() throws IOException {
+
+        int thirdFrameStart = frameStart(2);
+        File partial = tempFolder.newFile("log.resume");
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            out.write(txnLogBytes, 0, thirdFrameStart + 40);
+        }
+
+        TransactionLogFileReader reader = new TransactionLogFileReader(partial);
+
+        reader.getNextTransaction();
+        reader.getNextTransaction();
+
+        try {
+            reader.getNextTransaction();
+            fail();
+        } catch (IncompleteTransactionException e) {
+            assertEquals(thirdFrameStart, reader.getPosition());
+        }
+
+        //already read bytes are not read again, so overwriting them has no effect
+        try (RandomAccessFile raf = new RandomAccessFile(partial, "rw")) {
+            raf.seek(thirdFrameStart + 30);
+            raf.write(0x7f);
+            raf.seek(thirdFrameStart + 40);
+            raf.write(txnLogBytes, thirdFrameStart + 40, frameStart(3) - thirdFrameStart - 40);
+        }
+
+        Transaction t = reader.getNextTransaction();
+
+        assertEquals(3, t.getTxnHeader().getZxid());
+        assertEquals(frameStart(3), reader.getPosition());
+        assertNull(reader.getNextTransaction());
+
+    }
+
+    @Test
+    public void stalePartialTransactionIsReadAgain() throws IOException {
+
+        int thirdFrameStart = frameStart(2);
+        File partial = tempFolder.newFile("log.preallocated");
+
+        //preallocated file where only header of third transaction is written
+        byte[] bytes = Arrays.copyOf(txnLogBytes, frameStart(3) + 100);
+        Arrays.fill(bytes, thirdFrameStart + 12, bytes.length, (byte) 0);
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            out.write(bytes);
+        }
+
+        TransactionLogFileReader reader = new TransactionLogFileReader(partial);
+
+        reader.getNextTransaction();
+        reader.getNextTransaction();
+
+        try {
+            reader.getNextTransaction();
+            fail();
+        } catch (IncompleteTransactionException e) {
+            //delimiter byte not set
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(partial, "rw")) {
+            raf.seek(thirdFrameStart + 12);
+            raf.write(txnLogBytes, thirdFrameStart + 12, frameStart(3) - thirdFrameStart - 12);
+        }
+
+        Transaction t = reader.getNextTransaction();
+
+        assertEquals(3, t.getTxnHeader().getZxid());
+        assertEquals("/node2", ((CreateTxn) t.getTxnRecord()).getPath());
+        assertNull(reader.getNextTransaction());
+
+    }
+
+    @Test
+    public void endIsNotReadAgainUntilFileChanges() throws IOException {
+
+        File preallocated = tempFolder.newFile("log.end");
+
+        //zero padding behind second transaction
+        byte[] bytes = Arrays.copyOf(txnLogBytes, frameStart(4) + 100);
+        Arrays.fill(bytes, frameStart(2), bytes.length, (byte) 0);
+
+        try (FileOutputStream out = new FileOutputStream(preallocated)) {
+            out.write(bytes);
+        }
+
+        long lastModified = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+        preallocated.setLastModified(lastModified);
+
+        TransactionLogFileReader reader = new TransactionLogFileReader(preallocated);
+
+        reader.getNextTransaction();
+        reader.getNextTransaction();
+        assertNull(reader.getNextTransaction());
+
+        //length and modification time stay same, so file is not read
+        try (RandomAccessFile raf = new RandomAccessFile(preallocated, "rw")) {
+            raf.seek(frameStart(2));
+            raf.write(txnLogBytes, frameStart(2), frameStart(3) - frameStart(2));
+        }
+
+        preallocated.setLastModified(lastModified);
+        assertNull(reader.getNextTransaction());
+
+        preallocated.setLastModified(lastModified + 1000);
+        assertEquals(3, reader.getNextTransaction().getTxnHeader().getZxid());
+        assertNull(reader.getNextTransaction());
+
+        //file that was modified recently is always read
+        try (RandomAccessFile raf = new RandomAccessFile(preallocated, "rw")) {
+            raf.seek(frameStart(3));
+            raf.write(txnLogBytes, frameStart(3), frameStart(4) - frameStart(3));
+        }
+
+        preallocated.setLastModified(System.currentTimeMillis());
+        assertEquals(4, reader.getNextTransaction().getTxnHeader().getZxid());
+
+    }
+
+    private int frameStart(int frame) {
+
+        return TransactionLogGenerator.frameStart(txnLogBytes, frame);
+
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.test;
+
+import com.zklogtool.data.Transaction;
+import com.zklogtool.data.TransactionIterator;
+import com.zklogtool.data.TransactionState;
+import java.io.Closeable;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Assertions shared by tests of different <code>TransactionIterator</code>
+ * implementations.
+ *
+ */
+public class TransactionAssert {
+
+    private TransactionAssert() {
+    }
+
+    /**
+     * Asserts that <code>actual</code> returns same <code>count</code>
+     * transactions as <code>expected</code> and then stops in same state.
+     * <code>actual</code> is closed if it is <code>Closeable</code>.
+     *
+     * @param expected Iterator returning expected transactions.
+     * @param actual Iterator under test.
+     * @param count Expected number of transactions.
+     * @throws IOException Thrown if there is a problem closing
+     * <code>actual</code>.
+     */
+    public static void assertSameTransactions(TransactionIterator expected, TransactionIterator actual, int count) throws IOException {
+
+        int counter = 0;
+
+        try {
+
+            while (expected.hasNext()) {
+
+                Transaction e = expected.next();
+
+                assertEquals(TransactionState.OK, actual.nextTransactionState());
+
+                Transaction a = actual.next();
+
+                assertEquals(e.getTxnHeader(), a.getTxnHeader());
+                assertEquals(e.getTxnRecord(), a.getTxnRecord());
+                assertEquals(e.getNextOffset(), a.getNextOffset());
+
+                counter++;
+
+            }
+
+            assertEquals(count, counter);
+            assertEquals(expected.nextTransactionState(), actual.nextTransactionState());
+
+        } finally {
+
+            if (actual instanceof Closeable) {
+                ((Closeable) actual).close();
+            }
+
+        }
+
+    }
+
+    /**
+     * Asserts that <code>iterator</code> returns transactions with
+     * consecutive zxids starting at <code>firstZxid</code> for as long as it
+     * has next transaction.
+     *
+     * @param iterator Iterator under test.
+     * @param firstZxid Expected zxid of first transaction.
+     * @return Zxid expected after last returned transaction.
+     */
+    public static long assertConsecutive(TransactionIterator iterator, long firstZxid) {
+
+        long expectedZxid = firstZxid;
+
+        while (iterator.hasNext()) {
+            assertEquals(expectedZxid++, iterator.next().getTxnHeader().getZxid());
+        }
+
+        return expectedZxid;
+
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.test;
+
+import com.zklogtool.data.Transaction;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.persistence.FileTxnLog;
+import org.apache.zookeeper.txn.CreateSessionTxn;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.TxnHeader;
+
+/**
+ * Writes Zookeeper transaction log files using Zookeeper's own
+ * <code>FileTxnLog</code>, so tests do not need running Zookeeper server.
+ * Zxids start at 1 and transaction time is <code>START_TIME</code> plus one
+ * second per zxid.
+ *
+ */
+public class TransactionLogGenerator {
+
+    public final static long START_TIME = 1400000000000L;
+    public final static long SESSION_ID = 0x1234L;
+
+    private final FileTxnLog txnLog;
+    private long zxid = 0;
+
+    public TransactionLogGenerator(File dataDir) {
+
+        FileTxnLog.setPreallocSize(64 * 1024);
+        txnLog = new FileTxnLog(dataDir);
+
+    }
+
+    public long append(int type, Record record) throws IOException {
+
+        zxid++;
+        txnLog.append(new TxnHeader(SESSION_ID, (int) zxid, zxid, START_TIME + zxid * 1000, type), record);
+        txnLog.commit();
+
+        return zxid;
+
+    }
+
+    public long createSession() throws IOException {
+
+        return append(ZooDefs.OpCode.createSession, new CreateSessionTxn(30000));
+
+    }
+
+    public long createNodes(String prefix, int count) throws IOException {
+
+        for (int i = 0; i < count; i++) {
+            append(ZooDefs.OpCode.create, new CreateTxn(prefix + zxid, ("data" + zxid).getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, false, 0));
+        }
+
+        return zxid;
+
+    }
+
+    public void rollLog() throws IOException {
+
+        txnLog.rollLog();
+
+    }
+
+    public void close() throws IOException {
+
+        txnLog.close();
+
+    }
+
+    /**
+     * Flips one byte in data of transaction written right after
+     * <code>previous</code>, so its CRC no longer matches.
+     *
+     * @param previous Transaction in front of transaction to corrupt.
+     * @throws IOException Thrown if there is a problem writing transaction
+     * log file.
+     */
+    public static void corruptNext(Transaction previous) throws IOException {
+
+        //frame header is crc and length, followed by 32 bytes of txn header
+        long position = previous.getNextOffset() + 12 + 40;
+
+        try (RandomAccessFile raf = new RandomAccessFile(previous.getTransactionLogFile(), "rw")) {
+
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0x7f);
+
+        }
+
+    }
+
+    /**
+     *
+     * @param txnLogBytes Content of transaction log file.
+     * @param frame Number of transactions in front of frame.
+     * @return Offset of frame of transaction behind <code>frame</code>
+     * transactions.
+     */
+    public static int frameStart(byte[] txnLogBytes, int frame) {
+
+        int position = 16;
+
+        for (int i = 0; i < frame; i++) {
+            position += 12 + ByteBuffer.wrap(txnLogBytes, position + 8, 4).getInt() + 1;
+        }
+
+        return position;
+
+    }
+
+    public long getLastZxid() {
+        return zxid;
+    }
+
+}
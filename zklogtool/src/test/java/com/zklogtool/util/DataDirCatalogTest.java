@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.util;
+
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class DataDirCatalogTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dir;
+
+    @Before
+    public void setUp() throws IOException {
+
+        dir = tempFolder.newFolder("version-2");
+
+        for (String name : new String[]{"log.88", "log.1", "log.46", "snapshot.44", "snapshot.0",
+            "log.1.idx", "logfile", "snapshot.xyz", "acceptedEpoch"}) {
+            new File(dir, name).createNewFile();
+        }
+
+    }
+
+    @Test
+    public void catalog() {
+
+        DataDirCatalog catalog = DataDirCatalog.getCatalog(dir);
+
+        assertSame(catalog, DataDirCatalog.getCatalog(new File(dir.getPath())));
+
+        assertEquals(3, catalog.getTransactionLogs().size());
+        assertEquals("log.1", catalog.getTransactionLogs().get(0).getName());
+        assertEquals("log.46", catalog.getTransactionLogs().get(1).getName());
+        assertEquals("log.88", catalog.getTransactionLogs().get(2).getName());
+
+        assertEquals(2, catalog.getSnapshots().size());
+        assertEquals("snapshot.0", catalog.getSnapshots().get(0).getName());
+        assertEquals("snapshot.44", catalog.getSnapshots().get(1).getName());
+
+        assertEquals("log.1", catalog.getFirstTransactionLog().getName());
+        assertEquals("log.88", catalog.getLastTransactionLog().getName());
+        assertEquals("log.46", catalog.getTransactionLogAfter(1).getName());
+        assertEquals("log.46", catalog.getTransactionLogAfter(0x45).getName());
+        assertNull(catalog.getTransactionLogAfter(0x88));
+        assertEquals("snapshot.44", catalog.getSnapshotAtOrBefore(0x50).getName());
+        assertEquals("snapshot.0", catalog.getSnapshotAtOrBefore(0x43).getName());
+
+    }
+
+    @Test
+    public void watchedCatalogIsRefreshed() throws Exception {
+
+        DataDirCatalog catalog = DataDirCatalog.getCatalog(dir);
+
+        assertEquals(3, catalog.getTransactionLogs().size());
+
+        new File(dir, "log.b6").createNewFile();
+        new File(dir, "log.1").delete();
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (catalog.getTransactionLogs().size() != 3 || !catalog.getLastTransactionLog().getName().equals("log.b6")) {
+
+            assertTrue("Catalog not refreshed", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+
+        }
+
+        assertEquals("log.46", catalog.getFirstTransactionLog().getName());
+        assertEquals("log.b6", catalog.getTransactionLogAfter(0x88).getName());
+
+    }
+
+    @Test
+    public void newFileIsSeenWithoutWaitingForEvent() throws Exception {
+
+        DataDirCatalog catalog = DataDirCatalog.getCatalog(dir);
+
+        assertEquals("log.88", catalog.getLastTransactionLog().getName());
+
+        new File(dir, "log.b6").createNewFile();
+        new File(dir, "snapshot.b5").createNewFile();
+
+        //modification time resolution of file system does not matter
+        dir.setLastModified(dir.lastModified() + 2000);
+
+        assertEquals("log.b6", catalog.getLastTransactionLog().getName());
+        assertEquals(4, catalog.getTransactionLogs().size());
+        assertEquals("snapshot.b5", catalog.getSnapshots().get(2).getName());
+
+    }
+
+    @Test
+    public void leastRecentlyUsedCatalogStopsWatching() throws Exception {
+
+        DataDirCatalog catalog = DataDirCatalog.getCatalog(dir);
+
+        assumeTrue(catalog.isWatched());
+
+        for (int i = 0; i < DataDirCatalog.MAX_CATALOGS; i++) {
+            DataDirCatalog.getCatalog(tempFolder.newFolder("dir" + i));
+        }
+
+        assertFalse(catalog.isWatched());
+        assertEquals("log.88", catalog.getLastTransactionLog().getName());
+
+        DataDirCatalog again = DataDirCatalog.getCatalog(dir);
+
+        assertNotSame(catalog, again);
+        assertTrue(again.isWatched());
+
+    }
+
+    @Test
+    public void unwatchedCatalogIsListedOnEveryAccess() throws IOException {
+
+        DataDirCatalog catalog = new DataDirCatalog(dir, false);
+
+        assertEquals("log.88", catalog.getLastTransactionLog().getName());
+
+        new File(dir, "log.b6").createNewFile();
+
+        assertEquals("log.b6", catalog.getLastTransactionLog().getName());
+        assertEquals(4, catalog.getTransactionLogs().size());
+
+    }
+
+}
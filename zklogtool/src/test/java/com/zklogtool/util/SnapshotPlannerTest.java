@@ -0,0 +1,186 @@
+/* 
+ * Copyright 2014 Alen Caljkusic.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zklogtool.util;
+
+import com.zklogtool.index.TransactionLogIndex;
+import com.zklogtool.index.TransactionLogIndexer;
+import com.zklogtool.reader.TransactionLogReaderFactory;
+import com.zklogtool.test.TransactionLogGenerator;
+import com.zklogtool.test.UnitTests;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+@Category({UnitTests.class})
+public class SnapshotPlannerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    File dir;
+    List<File> snapshots;
+    List<File> transactionLogs;
+
+    @Before
+    public void setUp() throws IOException {
+
+        dir = tempFolder.newFolder("version-2");
+
+        //zxids 1-100, 101-200, 201-
+        transactionLogs = asList(file("log.1", 1000), file("log.65", 1000), file("log.c9", 1000));
+        //zxids 0, 50, 150, 250
+        snapshots = asList(file("snapshot.0", 10), file("snapshot.32", 100), file("snapshot.96", 200), file("snapshot.fa", 300));
+
+    }
+
+    @Test
+    public void planLast() {
+
+        SnapshotPlanner.Plan plan = new SnapshotPlanner(snapshots, transactionLogs).plan(Long.MAX_VALUE);
+
+        assertEquals("snapshot.fa", plan.getSnapshot().getName());
+        assertEquals(0xfa, plan.getSnapshotZxid());
+        assertEquals(0, plan.getReplayBytes());
+        assertEquals(300, plan.getCost());
+
+    }
+
+    @Test
+    public void planZxid() throws IOException {
+
+        SnapshotPlanner planner = new SnapshotPlanner(snapshots, transactionLogs);
+
+        //snapshot.96 may hold transactions behind 0xa0
+        SnapshotPlanner.Plan plan = planner.plan(0xa0);
+
+        assertEquals("snapshot.32", plan.getSnapshot().getName());
+        assertEquals(500 + 600, plan.getReplayBytes());
+
+        assertEquals("snapshot.0", planner.plan(0x40).getSnapshot().getName());
+        assertEquals("snapshot.96", planner.plan(0xfa).getSnapshot().getName());
+        assertNull(planner.plan(0x20));
+
+        //replaying more transaction log is cheaper than reading large snapshot
+        try (RandomAccessFile f = new RandomAccessFile(snapshots.get(1), "rw")) {
+            f.setLength(2000);
+        }
+
+        plan = planner.plan(0xa0);
+
+        assertEquals("snapshot.0", plan.getSnapshot().getName());
+        assertEquals(1000 + 600, plan.getReplayBytes());
+
+    }
+
+    @Test
+    public void planFirst() {
+
+        assertEquals("snapshot.0", new SnapshotPlanner(snapshots, transactionLogs).planFirst().getSnapshot().getName());
+
+    }
+
+    @Test
+    public void transactionsAfterSnapshotMustBeInLog() {
+
+        SnapshotPlanner planner = new SnapshotPlanner(snapshots, transactionLogs.subList(1, 3));
+
+        assertEquals("snapshot.96", planner.planFirst().getSnapshot().getName());
+        assertEquals("snapshot.fa", planner.plan(Long.MAX_VALUE).getSnapshot().getName());
+        assertNull(planner.plan(0xa0));
+
+        assertNull(new SnapshotPlanner(snapshots, transactionLogs.subList(0, 0)).plan(Long.MAX_VALUE));
+
+    }
+
+    @Test
+    public void paddingIsNotReplayed() throws IOException {
+
+        //preallocated log with 1000 bytes of data
+        try (RandomAccessFile f = new RandomAccessFile(transactionLogs.get(2), "rw")) {
+            f.setLength(64 * 1024);
+        }
+
+        SnapshotPlanner planner = new SnapshotPlanner(snapshots, transactionLogs);
+
+        assertEquals(1000, SnapshotPlanner.findDataEnd(transactionLogs.get(2)));
+
+        //half of log.65 and all data of log.c9
+        SnapshotPlanner.Plan plan = planner.plan(0xfa);
+
+        assertEquals("snapshot.96", plan.getSnapshot().getName());
+        assertEquals(500 + 1000, plan.getReplayBytes());
+
+    }
+
+    @Test
+    public void storedIndexTellsDataLength() throws Exception {
+
+        File logDir = tempFolder.newFolder("log");
+
+        TransactionLogGenerator generator = new TransactionLogGenerator(logDir);
+        generator.createSession();
+        generator.createNodes("/node", 9);
+        generator.close();
+
+        File transactionLog = new File(logDir, "log.1");
+        TransactionLogIndexer indexer = new TransactionLogIndexer(tempFolder.newFolder("index"), 10);
+        TransactionLogIndex index = indexer.getIndex(transactionLog, new TransactionLogReaderFactory());
+
+        SnapshotPlanner planner = new SnapshotPlanner(asList(file("snapshot.0", 10)), asList(transactionLog));
+        planner.setTransactionLogIndexer(indexer);
+
+        assertEquals(index.getEndOffset(), planner.plan(Long.MAX_VALUE).getReplayBytes());
+        assertTrue(index.getEndOffset() < transactionLog.length());
+
+    }
+
+    @Test
+    public void planFromDirectories() {
+
+        SnapshotPlanner.Plan plan = new SnapshotPlanner(dir, dir).plan(0xa0);
+
+        assertEquals("snapshot.32", plan.getSnapshot().getName());
+
+    }
+
+    private File file(String name, long length) throws IOException {
+
+        File file = new File(dir, name);
+
+        //data without zero padding
+        byte[] data = new byte[(int) length];
+        Arrays.fill(data, (byte) 1);
+
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.write(data);
+        }
+
+        return file;
+
+    }
+
+}
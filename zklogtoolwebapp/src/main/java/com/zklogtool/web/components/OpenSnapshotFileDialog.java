@@ -65,6 +65,7 @@ public class OpenSnapshotFileDialog extends CustomComponent {
                 File snapshot = new File(snapshotFileLabel.getValue());
 
                 SnapshotFileReader snapReader = new SnapshotFileReader(snapshot, 0);
+                snapReader.setPrefetch(true);
 
                 SnapshotView snapshotView;
 
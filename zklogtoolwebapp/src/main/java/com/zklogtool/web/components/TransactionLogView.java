@@ -15,10 +15,10 @@
  */
 package com.zklogtool.web.components;
 
+import java.io.Closeable;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.zookeeper.ZooDefs.OpCode;
@@ -54,12 +54,11 @@ import com.zklogtool.data.DataState;
 import com.zklogtool.data.Transaction;
 import com.zklogtool.data.TransactionIterator;
 import com.zklogtool.data.TransactionLog;
-import com.zklogtool.data.TransactionState;
 import com.zklogtool.printer.TransactionPrinter;
 import com.zklogtool.printer.UnicodeDecoder;
 import com.zklogtool.reader.SnapshotFileReader;
-import com.zklogtool.reader.TransactionLogReaderFactory;
-import com.zklogtool.util.DataDirHelper;
+import com.zklogtool.reader.PooledTransactionLogReaderFactory;
+import com.zklogtool.util.SnapshotPlanner;
 import com.zklogtool.util.Util;
 
 public class TransactionLogView extends CustomComponent {
@@ -78,6 +77,9 @@ public class TransactionLogView extends CustomComponent {
     @AutoGenerated
     private FilterTable filterTable;
 
+    //readers are shared by all views, so repeated reconstructions reuse open files
+    private final static PooledTransactionLogReaderFactory readerFactory = new PooledTransactionLogReaderFactory();
+
     public TransactionLogView(final File transactionLogFile, final File snapshotDir, final boolean follow, final boolean startFromLast, final TabSheet displayTabSheet, final String name) {
         buildMainLayout();
         setCompositionRoot(mainLayout);
@@ -131,21 +133,19 @@ public class TransactionLogView extends CustomComponent {
         if (transactionLogFile.isFile()) {
 
             transactionLog = new TransactionLog(transactionLogFile,
-                    new TransactionLogReaderFactory());
+                    readerFactory);
         } else {
 
             transactionLog = new TransactionLog(new DataDirTransactionLogFileList(transactionLogFile),
-                    new TransactionLogReaderFactory());
+                    readerFactory);
         }
 
-        iterator = transactionLog.iterator();
-
         if (startFromLast) {
 
-            while (iterator.hasNext()) {
+            iterator = transactionLog.tailIterator();
+        } else {
 
-                iterator.next();
-            }
+            iterator = transactionLog.iterator();
         }
 
         final Runnable fillData = new Runnable() {
@@ -259,68 +259,38 @@ public class TransactionLogView extends CustomComponent {
             @Override
             public void buttonClick(com.vaadin.ui.Button.ClickEvent event) {
 
-                DataDirHelper dataDirHelper = new DataDirHelper(transactionLogFile, snapshotDir);
-                List<File> snapshots = dataDirHelper.getSortedSnapshotList();
                 DataDirTransactionLogFileList l = new DataDirTransactionLogFileList(transactionLogFile);
-                TransactionLog transactionLog = new TransactionLog(l, new TransactionLogReaderFactory());
+                TransactionLog transactionLog = new TransactionLog(l, readerFactory);
 
-                File snapFile = null;
                 DataState dataState = null;
 
                 long currentZxid = Long.parseLong(filterTable.getValue().toString(), 16);
 
-                int i = snapshots.size() - 1;
-                while (i >= 0) {
-
-                    long snapZxid = Util.getZxidFromName(snapshots.get(i).getName());
-
-                    if (snapZxid <= currentZxid) {
-
-                        if (i == 0) {
-                            snapFile = snapshots.get(0);
-                        } else {
-                            snapFile = snapshots.get(i - 1);
-                        }
+                SnapshotPlanner.Plan plan = new SnapshotPlanner(transactionLogFile, snapshotDir).plan(currentZxid);
 
-                        break;
-
-                    }
-
-                    i--;
-
-                }
-
-                if(snapFile==null){
+                if (plan == null) {
                     dispalyNotEnoughDataErrorMessage();
                     return;
                 }
-                
-                long TS = Util.getZxidFromName(snapFile.getName());
+
+                File snapFile = plan.getSnapshot();
+                long TS = plan.getSnapshotZxid();
 
                 //catch this exception and print error
                 SnapshotFileReader snapReader = new SnapshotFileReader(snapFile, TS);
+                snapReader.setPrefetch(true);
+
+                TransactionIterator restoreIterator = transactionLog.iteratorFrom(TS + 1);
 
                 try {
-                    dataState = snapReader.restoreDataState(transactionLog.iterator());
+                    dataState = snapReader.restoreDataState(restoreIterator, currentZxid);
                 } catch (Exception ex) {
                     //dispay error dialog
                     //not enough information
                     dispalyNotEnoughDataErrorMessage();
                     return;
-                }
-
-                //set iterator to last zxid
-                TransactionIterator iterator = transactionLog.iterator();
-                Transaction t;
-
-                do {
-
-                    t = iterator.next();
-
-                } while (t.getTxnHeader().getZxid() < TS);
-
-                while (iterator.nextTransactionState() == TransactionState.OK && dataState.getLastZxid() < currentZxid) {
-                    dataState.processTransaction(iterator.next());
+                } finally {
+                    close(restoreIterator);
                 }
 
                 HorizontalLayout horizontalLayout = new HorizontalLayout();
@@ -334,6 +304,15 @@ public class TransactionLogView extends CustomComponent {
 
             }
 
+            //returns reader of last file to shared pool
+            void close(TransactionIterator iterator) {
+
+                if (iterator instanceof Closeable) {
+                    Util.closeQuietly((Closeable) iterator);
+                }
+
+            }
+
             void dispalyNotEnoughDataErrorMessage() {
 
                 final Window window = new Window("Error");